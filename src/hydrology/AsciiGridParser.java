@@ -0,0 +1,736 @@
+package hydrology;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * ESRI ASCII Grid 解析器。
+ * 头部只解析一次；数据体按内存映射读取，切分为以空白字符对齐的块后并行解析，
+ * 数值解析为手写实现，逐值不分配对象。.asc.gz 文件按流顺序解压解析。
+ * 解析时统计取值特征（是否全为整数、范围、能否无损存为单精度），据此选择能无损容纳数据的最窄存储类型：
+ * 内存映射的文件先按空白字符计数定位各块，每个数值只解析一次，写入双精度栅格后再收窄；
+ * .asc.gz 与窗口读取先统计、再写入。
+ */
+public class AsciiGridParser {
+
+    private static final int BLOCK_SIZE = 1 << 16;        // 每个解析线程的复制缓冲区大小
+    private static final long MIN_CHUNK = 1L << 20;       // 块大小下限（1MB）
+    private static final long MAX_CHUNK = 1L << 30;       // 单次映射的上限
+
+    private AsciiGridParser() {}
+
+    /**
+     * 头部解析结果：头部信息以及数据体在（解压后）字节流中的起始偏移。
+     */
+    static class HeaderInfo {
+        final GridHeader header;
+        final long dataOffset;
+
+        HeaderInfo(GridHeader header, long dataOffset) {
+            this.header = header;
+            this.dataOffset = dataOffset;
+        }
+    }
+
+    /**
+     * 判断文件是否为gzip压缩的栅格。
+     */
+    static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * 只读取头部信息，不触碰数据体。
+     */
+    public static GridHeader readHeader(Path file) throws IOException {
+        try (InputStream in = openStream(file)) {
+            return parseHeader(in, file).header;
+        }
+    }
+
+    /**
+     * 读取整个栅格，存储类型为能无损容纳全部数值的最窄类型。
+     */
+    public static WritableGrid read(Path file) throws IOException {
+        HeaderInfo info;
+        try (InputStream in = openStream(file)) {
+            info = parseHeader(in, file);
+        }
+        if (isGzip(file)) {
+            return readStream(file, info.header);
+        }
+        return readMapped(file, info);
+    }
+
+    /**
+     * 只读取子窗口，存储类型为能无损容纳窗口内数值的最窄类型，头部坐标按窗口修正。
+     * 窗口之前的数值只按字节统计个数、不做解析；窗口最后一行之后的数据不再读取。
+     */
+    public static WritableGrid readWindow(Path file, GridWindow window) throws IOException {
+        HeaderInfo info;
+        try (InputStream in = openStream(file)) {
+            info = parseHeader(in, file);
+        }
+        if (isGzip(file)) {
+            return readStreamWindow(file, info.header, window);
+        }
+        return readMappedWindow(file, info, window);
+    }
+
+    /**
+     * 按行顺序流式解析数据体，每解析完一行即交给 sink，内存占用为一行。
+     * 不统计取值特征、不创建栅格，适合在读入的同时逐行处理任意大小的DEM。
+     */
+    public static GridHeader readRows(Path file, RowSink sink) throws IOException {
+        GridHeader header = readHeader(file);
+        ValueParser parser = new ValueParser(header, sink);
+        feedStream(file, parser);
+        checkCount(file, header, parser.stats.count);
+        return header;
+    }
+
+    private static InputStream openStream(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (isGzip(file)) {
+            in = new GZIPInputStream(in, BLOCK_SIZE);
+        }
+        return new BufferedInputStream(in, BLOCK_SIZE);
+    }
+
+    /**
+     * 解析头部的 "关键字 值" 行，遇到首字符为数字或符号的行即视为数据体开始。
+     * 读取结束后输入流恰好停在数据体的第一个字节。
+     */
+    private static HeaderInfo parseHeader(InputStream in, Path file) throws IOException {
+        int nrows = -1, ncols = -1;
+        double xll = Double.NaN, yll = Double.NaN, cellsize = Double.NaN;
+        double NODATA_value = -9999;
+        boolean xCenter = false, yCenter = false;
+
+        long offset = 0;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            in.mark(1);
+            int b = in.read();
+            if (b < 0) {
+                break;
+            }
+            // 行首为数字、符号或小数点时，表示头部结束
+            if (line.length() == 0 && (b == '-' || b == '+' || b == '.' || (b >= '0' && b <= '9'))) {
+                in.reset();
+                break;
+            }
+            offset++;
+            if (line.length() == 0 && b <= ' ') {
+                continue; // 跳过行首空白
+            }
+            if (b != '\n') {
+                line.append((char) b);
+                continue;
+            }
+            String text = line.toString().trim();
+            line.setLength(0);
+            if (text.isEmpty()) {
+                continue;
+            }
+            String[] parts = text.split("\\s+");
+            if (parts.length < 2) {
+                throw new IOException("无法识别的头部行: " + text + " (" + file + ")");
+            }
+            String key = parts[0].toLowerCase();
+            try {
+                switch (key) {
+                    case "ncols": ncols = Integer.parseInt(parts[1]); break;
+                    case "nrows": nrows = Integer.parseInt(parts[1]); break;
+                    case "xllcorner": xll = Double.parseDouble(parts[1]); break;
+                    case "yllcorner": yll = Double.parseDouble(parts[1]); break;
+                    case "xllcenter": xll = Double.parseDouble(parts[1]); xCenter = true; break;
+                    case "yllcenter": yll = Double.parseDouble(parts[1]); yCenter = true; break;
+                    case "cellsize": cellsize = Double.parseDouble(parts[1]); break;
+                    case "nodata_value": NODATA_value = Double.parseDouble(parts[1]); break;
+                    default:
+                        System.out.println("忽略未识别的头部行: " + text);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("头部数值格式错误: " + text + " (" + file + ")", e);
+            }
+        }
+
+        if (nrows <= 0 || ncols <= 0 || Double.isNaN(cellsize) || Double.isNaN(xll) || Double.isNaN(yll)) {
+            throw new IOException("DEM头部信息不完整: " + file);
+        }
+        // 中心点坐标换算为左下角坐标
+        if (xCenter) xll -= cellsize / 2;
+        if (yCenter) yll -= cellsize / 2;
+
+        return new HeaderInfo(new GridHeader(nrows, ncols, xll, yll, cellsize, NODATA_value), offset);
+    }
+
+    /**
+     * 内存映射并行解析：第一遍只按空白字符统计每块的数值个数，前缀和得到每块的起始单元；
+     * 第二遍从正确的位置解析各块，写入双精度栅格并同时统计取值特征，最后收窄为能无损容纳数据的最窄类型。
+     * 每个数值只解析一次，出错时报告的行列为整幅栅格中的位置；收窄前短暂占用每像元 8 字节。
+     */
+    private static WritableGrid readMapped(Path file, HeaderInfo info) throws IOException {
+        GridHeader header = info.header;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = splitChunks(channel, info.dataOffset, channel.size());
+            int chunks = bounds.length - 1;
+
+            long[] tokens = new long[chunks];
+            runParallel(chunks, i -> tokens[i] = countTokens(map(channel, bounds[i], bounds[i + 1])));
+            long[] firstCell = new long[chunks];
+            long total = 0;
+            for (int i = 0; i < chunks; i++) {
+                firstCell[i] = total;
+                total += tokens[i];
+            }
+            checkCount(file, header, total);
+
+            WritableGrid wide = Grids.create(DataType.FLOAT64, header);
+            ValueStats[] chunkStats = new ValueStats[chunks];
+            try {
+                runParallel(chunks, i -> {
+                    ValueParser parser = new ValueParser(header, wide, firstCell[i]);
+                    parser.parse(map(channel, bounds[i], bounds[i + 1]));
+                    chunkStats[i] = parser.stats;
+                });
+            } catch (IOException | RuntimeException e) {
+                Grids.release(wide);
+                throw e;
+            }
+            ValueStats stats = new ValueStats();
+            for (ValueStats chunkStat : chunkStats) {
+                stats.merge(chunkStat);
+            }
+            return narrow(wide, chooseType(stats, header.getNODATA_value()));
+        }
+    }
+
+    /**
+     * 把双精度栅格按行并行复制为 type 类型（数值均可无损容纳），并释放原栅格；type 为双精度时原样返回。
+     */
+    private static WritableGrid narrow(WritableGrid wide, DataType type) {
+        if (type == DataType.FLOAT64) {
+            return wide;
+        }
+        WritableGrid grid = Grids.create(type, wide.getHeader());
+        int cols = wide.cols();
+        IntStream.range(0, wide.rows()).parallel().forEach(i -> {
+            double[] row = new double[cols];
+            wide.readRow(i, row);
+            for (int j = 0; j < cols; j++) {
+                grid.setDouble(i, j, row[j]);
+            }
+        });
+        Grids.release(wide);
+        return grid;
+    }
+
+    /**
+     * 窗口读取：各块先并行统计数值个数（只判断空白字符），按前缀和定位与窗口行范围相交的块，
+     * 只解析这些块。统计按批进行，累计个数越过窗口末行即停止，不再扫描文件剩余部分。
+     */
+    private static WritableGrid readMappedWindow(Path file, HeaderInfo info, GridWindow window) throws IOException {
+        GridHeader header = info.header;
+        long startCell = (long) window.getRow0() * header.getNcols();
+        long endCell = (long) (window.getRow0() + window.getNrows()) * header.getNcols();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = splitChunks(channel, info.dataOffset, channel.size());
+            int chunks = bounds.length - 1;
+            long[] tokens = new long[chunks];
+            int wave = Runtime.getRuntime().availableProcessors() * 4;
+            long counted = 0;
+            int scanned = 0;
+            while (scanned < chunks && counted < endCell) {
+                int from = scanned;
+                int to = Math.min(chunks, from + wave);
+                IntStream.range(from, to).parallel()
+                        .forEach(i -> tokens[i] = countTokens(map(channel, bounds[i], bounds[i + 1])));
+                for (int i = from; i < to; i++) {
+                    counted += tokens[i];
+                }
+                scanned = to;
+            }
+            if (counted < endCell) {
+                throw new IOException("DEM数据个数不足：窗口需要前 " + endCell + " 个，实际 " + counted + " (" + file + ")");
+            }
+
+            // 与窗口行范围相交的块
+            List<Integer> selected = new ArrayList<>();
+            long[] firstCell = new long[chunks];
+            long cell = 0;
+            for (int i = 0; i < scanned; i++) {
+                firstCell[i] = cell;
+                cell += tokens[i];
+                if (cell > startCell && firstCell[i] < endCell) {
+                    selected.add(i);
+                }
+            }
+
+            ValueStats[] chunkStats = new ValueStats[selected.size()];
+            runParallel(selected.size(), k -> {
+                int i = selected.get(k);
+                ValueParser parser = new ValueParser(header, null, firstCell[i], window);
+                parser.parse(map(channel, bounds[i], bounds[i + 1]));
+                chunkStats[k] = parser.stats;
+            });
+            ValueStats stats = new ValueStats();
+            for (ValueStats chunkStat : chunkStats) {
+                stats.merge(chunkStat);
+            }
+
+            WritableGrid grid = Grids.create(chooseType(stats, header.getNODATA_value()), window.apply(header));
+            runParallel(selected.size(), k -> {
+                int i = selected.get(k);
+                ValueParser parser = new ValueParser(header, grid, firstCell[i], window);
+                parser.parse(map(channel, bounds[i], bounds[i + 1]));
+            });
+            return grid;
+        }
+    }
+
+    /**
+     * 统计块内的数值个数：只按空白字符切分，不解析数值。块边界总落在空白字符上。
+     */
+    private static long countTokens(MappedByteBuffer buffer) {
+        byte[] block = new byte[BLOCK_SIZE];
+        long count = 0;
+        boolean inToken = false;
+        while (buffer.hasRemaining()) {
+            int n = Math.min(block.length, buffer.remaining());
+            buffer.get(block, 0, n);
+            for (int i = 0; i < n; i++) {
+                boolean space = block[i] <= ' ';
+                if (!space && !inToken) {
+                    count++;
+                }
+                inToken = !space;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * gzip 窗口读取：按流顺序解压，窗口之前的数值只计数不解析，越过窗口末行即停止解压。
+     */
+    private static WritableGrid readStreamWindow(Path file, GridHeader header, GridWindow window) throws IOException {
+        ValueParser scanner = new ValueParser(header, null, 0, window);
+        feedStream(file, scanner);
+        long endCell = (long) (window.getRow0() + window.getNrows()) * header.getNcols();
+        if (scanner.stats.count < endCell) {
+            throw new IOException("DEM数据个数不足：窗口需要前 " + endCell + " 个，实际 " + scanner.stats.count + " (" + file + ")");
+        }
+
+        WritableGrid grid = Grids.create(chooseType(scanner.stats, header.getNODATA_value()), window.apply(header));
+        feedStream(file, new ValueParser(header, grid, 0, window));
+        return grid;
+    }
+
+    /**
+     * gzip 数据体无法随机访问，按流顺序解压两遍：第一遍统计，第二遍写入。
+     */
+    private static WritableGrid readStream(Path file, GridHeader header) throws IOException {
+        ValueParser scanner = new ValueParser(header, null, 0);
+        feedStream(file, scanner);
+        checkCount(file, header, scanner.stats.count);
+
+        WritableGrid grid = Grids.create(chooseType(scanner.stats, header.getNODATA_value()), header);
+        feedStream(file, new ValueParser(header, grid, 0));
+        return grid;
+    }
+
+    private static void feedStream(Path file, ValueParser parser) throws IOException {
+        try (InputStream in = openStream(file)) {
+            parseHeader(in, file);
+            byte[] block = new byte[BLOCK_SIZE];
+            int n;
+            while (!parser.isStopped() && (n = in.read(block)) > 0) {
+                parser.feed(block, n);
+            }
+            parser.finish();
+        }
+    }
+
+    private static void checkCount(Path file, GridHeader header, long count) throws IOException {
+        if (count != header.cellCount()) {
+            throw new IOException("DEM数据个数不符：期望 " + header.cellCount() + "，实际 " + count + " (" + file + ")");
+        }
+    }
+
+    /**
+     * 选择能无损容纳全部数值（含 NODATA 值）的最窄存储类型。
+     */
+    static DataType chooseType(ValueStats stats, double NODATA_value) {
+        double min = Math.min(stats.min, NODATA_value);
+        double max = Math.max(stats.max, NODATA_value);
+        if (stats.integral && NODATA_value == Math.rint(NODATA_value)) {
+            DataType type = Grids.narrowestIntegral((long) min, (long) max);
+            if (type != DataType.FLOAT64) {
+                return type;
+            }
+        }
+        if (stats.floatSafe && (float) NODATA_value == NODATA_value) {
+            return DataType.FLOAT32;
+        }
+        return DataType.FLOAT64;
+    }
+
+    /**
+     * 将数据体切分为若干块，每个块的边界都落在空白字符上，保证数值不会跨块。
+     */
+    private static long[] splitChunks(FileChannel channel, long start, long end) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long length = end - start;
+        // 每个线程约分到4块，便于负载均衡
+        long chunkSize = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, length / (parallelism * 4L) + 1));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        long pos = start + chunkSize;
+        while (pos < end) {
+            long boundary = nextWhitespace(channel, pos, end, probe);
+            if (boundary >= end) {
+                break;
+            }
+            bounds.add(boundary);
+            pos = boundary + chunkSize;
+        }
+        bounds.add(end);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextWhitespace(FileChannel channel, long pos, long end, ByteBuffer probe) throws IOException {
+        while (pos < end) {
+            probe.clear();
+            int n = channel.read(probe, pos);
+            if (n <= 0) {
+                return end;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) <= ' ') {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long from, long to) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 并行执行各块任务，并将包装的 IO 异常还原抛出。
+     */
+    private static void runParallel(int chunks, ChunkTask task) throws IOException {
+        try {
+            IntStream.range(0, chunks).parallel().forEach(i -> {
+                try {
+                    task.run(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    /**
+     * 数值的取值特征，NODATA 单元不参与统计。
+     */
+    static class ValueStats {
+        long count;                 // 数值总个数（含 NODATA）
+        boolean integral = true;    // 是否全为整数
+        boolean floatSafe = true;   // 能否无损存为单精度（按原文本精度还原）
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void merge(ValueStats other) {
+            count += other.count;
+            integral &= other.integral;
+            floatSafe &= other.floatSafe;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * 逐字节的数值解析状态机，可跨缓冲区边界续接，逐值不分配对象。
+     * 解析的同时统计取值特征；target 不为 null 时写入目标栅格，指定 rows 时改为逐行交给 rows。
+     * 指定窗口时只解析窗口内的数值（其余只计数），越过窗口末行后停止。
+     */
+    private static class ValueParser {
+        private static final int MAX_TOKEN = 64;
+        private static final double[] POW10 = new double[23];
+        private static final long[] POW10_LONG = new long[19];
+
+        static {
+            POW10[0] = 1;
+            for (int i = 1; i < POW10.length; i++) {
+                POW10[i] = POW10[i - 1] * 10;
+            }
+            POW10_LONG[0] = 1;
+            for (int i = 1; i < POW10_LONG.length; i++) {
+                POW10_LONG[i] = POW10_LONG[i - 1] * 10;
+            }
+        }
+
+        private final WritableGrid target;
+        private final RowSink rows;
+        private final double[] rowValues;
+        private final GridWindow window;
+        private final double NODATA_value;
+        private final int ncols;
+        private final long limit;
+        private final long stopCell;
+        private boolean stopped;
+        final ValueStats stats = new ValueStats();
+        private long cell;          // 下一个待写入的单元序号
+        private int row;
+        private int col;
+
+        private final byte[] token = new byte[MAX_TOKEN];
+        private int tokenLength;    // 当前数值已读入的字节数，0 表示不在数值内
+        private boolean tooLong;
+
+        // 最近一次解析的数值特征
+        private boolean lastIntegral;
+        private boolean lastFloatSafe;
+
+        ValueParser(GridHeader header, WritableGrid target, long firstCell) {
+            this(header, target, firstCell, null);
+        }
+
+        ValueParser(GridHeader header, RowSink rows) {
+            this(header, null, rows, 0, null);
+        }
+
+        ValueParser(GridHeader header, WritableGrid target, long firstCell, GridWindow window) {
+            this(header, target, null, firstCell, window);
+        }
+
+        private ValueParser(GridHeader header, WritableGrid target, RowSink rows, long firstCell, GridWindow window) {
+            this.target = target;
+            this.rows = rows;
+            this.rowValues = rows == null ? null : new double[header.getNcols()];
+            this.window = window;
+            this.NODATA_value = header.getNODATA_value();
+            this.ncols = header.getNcols();
+            this.limit = header.cellCount();
+            this.stopCell = window == null ? limit : (long) (window.getRow0() + window.getNrows()) * ncols;
+            this.cell = firstCell;
+            this.row = (int) (firstCell / ncols);
+            this.col = (int) (firstCell % ncols);
+        }
+
+        void parse(MappedByteBuffer buffer) throws IOException {
+            byte[] block = new byte[BLOCK_SIZE];
+            while (!stopped && buffer.hasRemaining()) {
+                int n = Math.min(block.length, buffer.remaining());
+                buffer.get(block, 0, n);
+                feed(block, n);
+            }
+            finish();
+        }
+
+        boolean isStopped() {
+            return stopped;
+        }
+
+        void feed(byte[] block, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                byte b = block[i];
+                if (b <= ' ') {
+                    if (tokenLength > 0) {
+                        emit();
+                        if (cell >= stopCell && window != null) {
+                            stopped = true;
+                            return;
+                        }
+                    }
+                } else if (tokenLength < MAX_TOKEN) {
+                    token[tokenLength++] = b;
+                } else {
+                    tooLong = true;
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (tokenLength > 0 && !stopped) {
+                emit();
+            }
+        }
+
+        private void emit() throws IOException {
+            if (cell >= limit) {
+                throw new IOException("DEM数据个数超过头部声明的 " + limit + " 个");
+            }
+            if (window != null && !window.contains(row, col)) {
+                // 窗口外的数值只计数
+                skip();
+                return;
+            }
+            double value = parseToken();
+            if (rows != null) {
+                rowValues[col] = value;
+                if (col == ncols - 1) {
+                    rows.writeRow(row, rowValues);
+                }
+            } else if (target != null) {
+                if (window == null) {
+                    target.setDouble(row, col, value); // 按行列写入，超大的分块栅格也不受 int 下标范围限制
+                } else {
+                    target.setDouble(window.index(row, col), value);
+                }
+            }
+            if (value != NODATA_value) {
+                stats.integral &= lastIntegral;
+                stats.floatSafe &= lastFloatSafe;
+                if (value < stats.min) stats.min = value;
+                if (value > stats.max) stats.max = value;
+            }
+            skip();
+        }
+
+        private void skip() {
+            stats.count++;
+
+            cell++;
+            if (++col == ncols) {
+                col = 0;
+                row++;
+            }
+            tokenLength = 0;
+            tooLong = false;
+        }
+
+        /**
+         * 解析 [+-]digits[.digits][(e|E)[+-]digits]。
+         * 有效数字不超过 15 位且十进制指数在 ±22 以内时，尾数与 10 的幂都能精确表示为 double，
+         * 一次乘除即得到正确舍入的结果；其余情况退回 Double.parseDouble。
+         */
+        private double parseToken() throws IOException {
+            byte[] t = token;
+            int len = tokenLength;
+            if (tooLong) {
+                throw invalid();
+            }
+            int i = 0;
+            boolean negative = false;
+            if (t[0] == '-' || t[0] == '+') {
+                negative = t[0] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int significant = 0, scale = 0, dropped = 0, exponent = 0;
+            boolean dot = false, digits = false;
+            for (; i < len; i++) {
+                int b = t[i];
+                if (b >= '0' && b <= '9') {
+                    digits = true;
+                    if (significant < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) significant++;
+                        if (dot) scale++;
+                    } else if (!dot) {
+                        dropped++;
+                    }
+                } else if (b == '.' && !dot) {
+                    dot = true;
+                } else if ((b == 'e' || b == 'E') && digits) {
+                    exponent = parseExponent(t, i + 1, len);
+                    break;
+                } else {
+                    throw invalid();
+                }
+            }
+            if (!digits) {
+                throw invalid();
+            }
+
+            int e10 = exponent + dropped - scale;
+            double value;
+            if (significant <= 15 && e10 >= -22 && e10 <= 22) {
+                value = e10 >= 0 ? mantissa * POW10[e10] : mantissa / POW10[-e10];
+                if (e10 >= 0) {
+                    lastIntegral = true;
+                } else {
+                    lastIntegral = -e10 <= 18 ? mantissa % POW10_LONG[-e10] == 0 : mantissa == 0;
+                }
+                if (lastIntegral) {
+                    lastFloatSafe = (float) value == value;
+                } else {
+                    // 单精度值按原文本的小数位数舍入后能还原出原尾数，即视为无损
+                    lastFloatSafe = Math.round((double) (float) value * POW10[-e10]) == mantissa;
+                }
+            } else {
+                value = Double.parseDouble(new String(t, 0, len, StandardCharsets.US_ASCII));
+                lastIntegral = value == Math.rint(value);
+                lastFloatSafe = (float) value == value;
+                return value;
+            }
+            return negative ? -value : value;
+        }
+
+        private int parseExponent(byte[] t, int from, int len) throws IOException {
+            int i = from;
+            boolean negative = false;
+            if (i < len && (t[i] == '-' || t[i] == '+')) {
+                negative = t[i] == '-';
+                i++;
+            }
+            if (i == len) {
+                throw invalid();
+            }
+            int exponent = 0;
+            for (; i < len; i++) {
+                int b = t[i];
+                if (b < '0' || b > '9') {
+                    throw invalid();
+                }
+                if (exponent < 1000) {
+                    exponent = exponent * 10 + (b - '0');
+                }
+            }
+            return negative ? -exponent : exponent;
+        }
+
+        private IOException invalid() {
+            String text = new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+            return new IOException("非数值数据在行 " + row + " 列 " + col + ": " + text + (tooLong ? "..." : ""));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package hydrology;
+
+import java.util.function.DoublePredicate;
+import java.util.stream.IntStream;
+
+/**
+ * 按位压缩的像元掩膜：每个 long 存 64 个像元，按行优先的一维下标（row * cols + col）编址，
+ * 内存为 UINT8 分类栅格的 1/8。与、或、差与计数按整字运算。
+ * <p>
+ * 并行构建时以字为单位划分任务，不同线程不会写同一个 long；set/clear 本身不是线程安全的。
+ */
+public class BitMask {
+    private final GridHeader header;
+    private final int rows;
+    private final int cols;
+    private final long cells;
+    private final long[] words;
+
+    public BitMask(GridHeader header) {
+        this.header = header;
+        this.rows = header.getNrows();
+        this.cols = header.getNcols();
+        this.cells = header.cellCount();
+        long count = (cells + 63) >>> 6;
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("栅格过大，无法建立掩膜: " + rows + " x " + cols);
+        }
+        this.words = new long[(int) count];
+    }
+
+    /**
+     * 取值等于 value 的有效像元为 1（例如 {@code of(isSteep, TerrainClassify.STEEP)}），按字并行构建。
+     */
+    public static BitMask of(Grid grid, int value) {
+        return where(grid, v -> v == value);
+    }
+
+    /**
+     * 满足条件的有效像元为 1，NODATA 像元为 0，按字并行构建。
+     */
+    public static BitMask where(Grid grid, DoublePredicate predicate) {
+        return build(grid.getHeader(), (row, col) -> !grid.isNoData(row, col) && predicate.test(grid.getDouble(row, col)));
+    }
+
+    /**
+     * 按字并行构建：每个任务求出一个 long 的 64 个像元。
+     */
+    static BitMask build(GridHeader header, CellPredicate predicate) {
+        BitMask mask = new BitMask(header);
+        int cols = mask.cols;
+        IntStream.range(0, mask.words.length).parallel().forEach(w -> {
+            long first = (long) w << 6;
+            int n = (int) Math.min(64, mask.cells - first);
+            int row = (int) (first / cols);
+            int col = (int) (first % cols);
+            long word = 0;
+            for (int b = 0; b < n; b++) {
+                if (predicate.test(row, col)) {
+                    word |= 1L << b;
+                }
+                if (++col == cols) {
+                    col = 0;
+                    row++;
+                }
+            }
+            mask.words[w] = word;
+        });
+        return mask;
+    }
+
+    @FunctionalInterface
+    interface CellPredicate {
+        boolean test(int row, int col);
+    }
+
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public boolean get(int row, int col) {
+        return get((long) row * cols + col);
+    }
+
+    public boolean get(long index) {
+        return (words[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    public void set(int row, int col) {
+        long index = (long) row * cols + col;
+        words[(int) (index >>> 6)] |= 1L << index;
+    }
+
+    public void clear(int row, int col) {
+        long index = (long) row * cols + col;
+        words[(int) (index >>> 6)] &= ~(1L << index);
+    }
+
+    /**
+     * 与另一掩膜按位与，结果写入本掩膜并返回本掩膜。
+     */
+    public BitMask and(BitMask other) {
+        checkSize(other);
+        for (int w = 0; w < words.length; w++) {
+            words[w] &= other.words[w];
+        }
+        return this;
+    }
+
+    /**
+     * 与另一掩膜按位或，结果写入本掩膜并返回本掩膜。
+     */
+    public BitMask or(BitMask other) {
+        checkSize(other);
+        for (int w = 0; w < words.length; w++) {
+            words[w] |= other.words[w];
+        }
+        return this;
+    }
+
+    /**
+     * 去掉另一掩膜为 1 的像元，结果写入本掩膜并返回本掩膜。
+     */
+    public BitMask andNot(BitMask other) {
+        checkSize(other);
+        for (int w = 0; w < words.length; w++) {
+            words[w] &= ~other.words[w];
+        }
+        return this;
+    }
+
+    /**
+     * 逐位取反（末字中栅格以外的位保持为 0），返回本掩膜。
+     */
+    public BitMask invert() {
+        for (int w = 0; w < words.length; w++) {
+            words[w] = ~words[w];
+        }
+        int tail = (int) (cells & 63);
+        if (tail != 0) {
+            words[words.length - 1] &= (1L << tail) - 1;
+        }
+        return this;
+    }
+
+    /**
+     * 值为 1 的像元个数。
+     */
+    public long cardinality() {
+        long count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public BitMask copy() {
+        BitMask copy = new BitMask(header);
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        return copy;
+    }
+
+    /**
+     * 展开为 UINT8 栅格（1 / 0），用于输出或可视化。
+     */
+    public WritableGrid toGrid() {
+        WritableGrid grid = Grids.create(DataType.UINT8, header.withNODATA_value(255));
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                grid.setDouble(i, j, get(i, j) ? 1 : 0);
+            }
+        });
+        return grid;
+    }
+
+    private void checkSize(BitMask other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new IllegalArgumentException("掩膜大小不一致: " + rows + " x " + cols + " 与 "
+                    + other.rows + " x " + other.cols);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package hydrology;
+
+/**
+ * 8 位无符号整型栅格（0~255），按行优先存储在一维数组中，用于分类、掩膜和 D8 流向等编码结果。
+ */
+public class ByteGrid implements WritableGrid {
+    private final GridHeader header;
+    private final int ncols;
+    private final byte[] data;
+
+    public ByteGrid(GridHeader header) {
+        this(header, new byte[Grids.checkedSize(header)]);
+    }
+
+    public ByteGrid(GridHeader header, byte[] data) {
+        if (data.length != header.cellCount()) {
+            throw new IllegalArgumentException("数组长度 " + data.length + " 与栅格大小 " + header.cellCount() + " 不符");
+        }
+        this.header = header;
+        this.ncols = header.getNcols();
+        this.data = data;
+    }
+
+    @Override
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.UINT8;
+    }
+
+    public int get(int row, int col) {
+        return data[row * ncols + col] & 0xFF;
+    }
+
+    public void set(int row, int col, int value) {
+        data[row * ncols + col] = (byte) value;
+    }
+
+    public int get(int index) {
+        return data[index] & 0xFF;
+    }
+
+    public void set(int index, int value) {
+        data[index] = (byte) value;
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return data[row * ncols + col] & 0xFF;
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return data[index] & 0xFF;
+    }
+
+    @Override
+    public void setDouble(int row, int col, double value) {
+        data[row * ncols + col] = (byte) (int) value;
+    }
+
+    @Override
+    public void setDouble(int index, double value) {
+        data[index] = (byte) (int) value;
+    }
+
+    @Override
+    public void readRow(int row, double[] dst) {
+        int offset = row * ncols;
+        for (int j = 0; j < ncols; j++) {
+            dst[j] = data[offset + j] & 0xFF;
+        }
+    }
+
+    /**
+     * 底层数组（行优先，按无符号解释）。
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,148 @@
+package hydrology;
+
+import java.util.Arrays;
+
+/**
+ * 按高程出队的像元优先队列（最低者先出），元素为一维下标，全部用原始类型数组存放，入队不分配对象。
+ * <p>
+ * 整型高程用桶队列：每个高程一个桶，桶内为数组实现的单链表，入队与出队均为 O(1)；
+ * 浮点高程或高程跨度远大于像元数时退回二叉堆。
+ */
+interface CellQueue {
+
+    void push(int cell, double elevation);
+
+    /**
+     * 取出高程最低的像元（同一高程的像元之间顺序不定），队列为空时调用结果未定义。
+     */
+    int pop();
+
+    boolean isEmpty();
+
+    /**
+     * 为高程范围 [min, max] 内的至多 capacity 次入队选择队列实现。
+     */
+    static CellQueue create(boolean integral, double min, double max, int capacity) {
+        if (integral && min <= max) {
+            long range = (long) max - (long) min + 1;
+            if (range <= Math.max(4096, 4L * capacity)) { // 桶数组不超过入队次数的常数倍
+                return new Bucket((long) min, (int) range, capacity);
+            }
+        }
+        return new Heap(capacity);
+    }
+
+    /**
+     * 整型高程的桶队列。出队指针只在有更低高程入队时回退，优先级洪泛中入队高程不低于当前高程，整体为线性时间。
+     */
+    final class Bucket implements CellQueue {
+        private final long base;
+        private final int[] heads;  // 各桶链表头的元素号，-1 为空桶
+        private final int[] cells;
+        private final int[] next;
+        private int used;
+        private int size;
+        private int current;
+
+        Bucket(long base, int buckets, int capacity) {
+            this.base = base;
+            this.heads = new int[buckets];
+            Arrays.fill(heads, -1);
+            this.cells = new int[capacity];
+            this.next = new int[capacity];
+        }
+
+        @Override
+        public void push(int cell, double elevation) {
+            int bucket = (int) ((long) elevation - base);
+            int entry = used++;
+            cells[entry] = cell;
+            next[entry] = heads[bucket];
+            heads[bucket] = entry;
+            if (bucket < current) {
+                current = bucket;
+            }
+            size++;
+        }
+
+        @Override
+        public int pop() {
+            while (heads[current] < 0) {
+                current++;
+            }
+            int entry = heads[current];
+            heads[current] = next[entry];
+            size--;
+            return cells[entry];
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * 二叉最小堆，高程与像元分别存于并行数组。
+     */
+    final class Heap implements CellQueue {
+        private double[] keys;
+        private int[] cells;
+        private int size;
+
+        Heap(int capacity) {
+            this.keys = new double[Math.max(16, capacity)];
+            this.cells = new int[keys.length];
+        }
+
+        @Override
+        public void push(int cell, double elevation) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                cells = Arrays.copyOf(cells, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= elevation) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                cells[i] = cells[parent];
+                i = parent;
+            }
+            keys[i] = elevation;
+            cells[i] = cell;
+        }
+
+        @Override
+        public int pop() {
+            int top = cells[0];
+            size--;
+            double key = keys[size];
+            int cell = cells[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                cells[i] = cells[child];
+                i = child;
+            }
+            keys[i] = key;
+            cells[i] = cell;
+            return top;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
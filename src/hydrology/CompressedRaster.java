@@ -0,0 +1,303 @@
+package hydrology;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * 按行块压缩的二进制栅格文件（.hgz），用于替代逐像元格式化的 CSV 结果输出。
+ * <p>
+ * 格式（小端序）：128 字节文件头，之后依次为各行块的压缩数据，文件末尾为块索引（每块 8 字节偏移 + 4 字节长度）。
+ * 每块包含若干整行，原始字节先按字节位重排（同一数值的第 k 个字节放在一起，浮点数的符号与指数集中后更易压缩），
+ * 再用 LZ4 或 Zstd 压缩。写出时各块并行压缩、按顺序落盘；读取时各块并行解压。
+ */
+public class CompressedRaster {
+
+    public static final String SUFFIX = ".hgz";
+    static final int MAGIC = 0x5A524748; // "HGRZ"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    private static final int BLOCK_BYTES = 1 << 20; // 每块约 1MB 原始数据
+    private static final int INDEX_ENTRY = 12;
+
+    /**
+     * 压缩算法：LZ4 速度最快，Zstd 压缩率更高。
+     */
+    public enum Codec {
+        LZ4(0),
+        ZSTD(1);
+
+        private final int code;
+
+        Codec(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        static Codec fromCode(int code) throws IOException {
+            for (Codec codec : values()) {
+                if (codec.code == code) {
+                    return codec;
+                }
+            }
+            throw new IOException("未知的压缩算法编码: " + code);
+        }
+
+        Compressor compressor() {
+            return this == LZ4 ? new Lz4Compressor() : new ZstdCompressor();
+        }
+
+        Decompressor decompressor() {
+            return this == LZ4 ? new Lz4Decompressor() : new ZstdDecompressor();
+        }
+    }
+
+    private CompressedRaster() {}
+
+    /**
+     * 写出栅格；toFloat32 为 true 时双精度栅格按单精度存储（其他类型不变）。
+     */
+    public static void write(Path path, Grid grid, Codec codec, boolean toFloat32) throws IOException {
+        DataType type = toFloat32 && grid.getType() == DataType.FLOAT64 ? DataType.FLOAT32 : grid.getType();
+        GridHeader header = grid.getHeader();
+        int nrows = header.getNrows();
+        int rowBytes = header.getNcols() * type.getBytes();
+        int rowsPerBlock = Math.max(1, Math.min(nrows, BLOCK_BYTES / Math.max(1, rowBytes)));
+        int blocks = (nrows + rowsPerBlock - 1) / rowsPerBlock;
+        long[] offsets = new long[blocks];
+        int[] lengths = new int[blocks];
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = HEADER_SIZE;
+            // 每批并行压缩若干块，再按顺序写出，内存占用为一批块的大小
+            int batch = Math.max(1, Runtime.getRuntime().availableProcessors() * 2);
+            for (int first = 0; first < blocks; first += batch) {
+                int from = first;
+                int to = Math.min(blocks, first + batch);
+                ByteBuffer[] compressed = new ByteBuffer[to - from];
+                IntStream.range(from, to).parallel().forEach(b ->
+                        compressed[b - from] = compressBlock(grid, type, codec, b * rowsPerBlock,
+                                Math.min(rowsPerBlock, nrows - b * rowsPerBlock)));
+                for (int b = from; b < to; b++) {
+                    ByteBuffer block = compressed[b - from];
+                    offsets[b] = position;
+                    lengths[b] = block.remaining();
+                    position += writeFully(channel, block, position);
+                }
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = 0; b < blocks; b++) {
+                index.putLong(offsets[b]).putInt(lengths[b]);
+            }
+            index.flip();
+            long indexOffset = position;
+            writeFully(channel, index, indexOffset);
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            head.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, type.getCode())
+                    .putInt(12, nrows).putInt(16, header.getNcols())
+                    .putDouble(24, header.getXllcorner()).putDouble(32, header.getYllcorner())
+                    .putDouble(40, header.getCellsize()).putDouble(48, header.getNODATA_value())
+                    .putInt(56, codec.getCode()).putInt(60, rowsPerBlock).putInt(64, blocks)
+                    .putLong(72, indexOffset);
+            writeFully(channel, head, 0);
+        }
+    }
+
+    private static ByteBuffer compressBlock(Grid grid, DataType type, Codec codec, int row0, int rows) {
+        int ncols = grid.cols();
+        int bytes = type.getBytes();
+        ByteBuffer raw = ByteBuffer.allocate(rows * ncols * bytes).order(ByteOrder.LITTLE_ENDIAN);
+        double[] row = new double[ncols];
+        for (int i = 0; i < rows; i++) {
+            grid.readRow(row0 + i, row);
+            for (double value : row) {
+                putValue(raw, type, value);
+            }
+        }
+        byte[] shuffled = shuffle(raw.array(), bytes);
+        Compressor compressor = codec.compressor();
+        byte[] out = new byte[compressor.maxCompressedLength(shuffled.length)];
+        int length = compressor.compress(shuffled, 0, shuffled.length, out, 0, out.length);
+        return ByteBuffer.wrap(out, 0, length);
+    }
+
+    private static void putValue(ByteBuffer out, DataType type, double value) {
+        switch (type) {
+            case UINT8: out.put((byte) (int) value); break;
+            case INT16: out.putShort((short) value); break;
+            case INT32: out.putInt((int) value); break;
+            case FLOAT32: out.putFloat((float) value); break;
+            default: out.putDouble(value);
+        }
+    }
+
+    /**
+     * 读取整个栅格，各块并行解压，存储位置取 Grids 的当前设定。
+     */
+    public static WritableGrid read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, head, 0, path);
+            if (head.getInt(0) != MAGIC) {
+                throw new IOException("不是有效的压缩栅格文件: " + path);
+            }
+            if (head.getInt(4) != VERSION) {
+                throw new IOException("不支持的压缩栅格文件版本 " + head.getInt(4) + ": " + path);
+            }
+            DataType type = DataType.fromCode(head.getInt(8));
+            GridHeader header = new GridHeader(head.getInt(12), head.getInt(16), head.getDouble(24),
+                    head.getDouble(32), head.getDouble(40), head.getDouble(48));
+            Codec codec = Codec.fromCode(head.getInt(56));
+            int rowsPerBlock = head.getInt(60);
+            int blocks = head.getInt(64);
+
+            ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, index, head.getLong(72), path);
+            long[] offsets = new long[blocks];
+            int[] lengths = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                offsets[b] = index.getLong(b * INDEX_ENTRY);
+                lengths[b] = index.getInt(b * INDEX_ENTRY + 8);
+            }
+
+            WritableGrid grid = Grids.create(type, header);
+            int nrows = header.getNrows();
+            try {
+                IntStream.range(0, blocks).parallel().forEach(b -> {
+                    try {
+                        int row0 = b * rowsPerBlock;
+                        int rows = Math.min(rowsPerBlock, nrows - row0);
+                        ByteBuffer compressed = ByteBuffer.allocate(lengths[b]);
+                        readFully(channel, compressed, offsets[b], path);
+                        byte[] shuffled = new byte[rows * header.getNcols() * type.getBytes()];
+                        int n = codec.decompressor().decompress(compressed.array(), 0, lengths[b],
+                                shuffled, 0, shuffled.length);
+                        if (n != shuffled.length) {
+                            throw new IOException("第 " + b + " 块解压后长度不符: " + n + " / " + shuffled.length);
+                        }
+                        byte[] raw = unshuffle(shuffled, type.getBytes());
+                        decodeRows(ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN), grid, row0, rows);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (MalformedInputException e) {
+                        throw new UncheckedIOException(new IOException("压缩数据损坏: " + path, e));
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                Grids.release(grid);
+                throw e.getCause();
+            }
+            return grid;
+        }
+    }
+
+    private static void decodeRows(ByteBuffer raw, WritableGrid grid, int row0, int rows) {
+        int ncols = grid.cols();
+        int offset = row0 * ncols;
+        int count = rows * ncols;
+        if (grid instanceof ByteGrid) {
+            raw.get(((ByteGrid) grid).getData(), offset, count);
+        } else if (grid instanceof ShortGrid) {
+            raw.asShortBuffer().get(((ShortGrid) grid).getData(), offset, count);
+        } else if (grid instanceof IntGrid) {
+            raw.asIntBuffer().get(((IntGrid) grid).getData(), offset, count);
+        } else if (grid instanceof FloatGrid) {
+            raw.asFloatBuffer().get(((FloatGrid) grid).getData(), offset, count);
+        } else if (grid instanceof DoubleGrid) {
+            raw.asDoubleBuffer().get(((DoubleGrid) grid).getData(), offset, count);
+        } else if (grid instanceof OffHeapGrid) {
+            int rowBytes = ncols * grid.getType().getBytes();
+            for (int i = 0; i < rows; i++) {
+                raw.limit((i + 1) * rowBytes).position(i * rowBytes);
+                ((OffHeapGrid) grid).putRowBytes(row0 + i, raw);
+            }
+        } else {
+            DataType type = grid.getType();
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < ncols; j++) {
+                    double value;
+                    switch (type) {
+                        case UINT8: value = raw.get() & 0xFF; break;
+                        case INT16: value = raw.getShort(); break;
+                        case INT32: value = raw.getInt(); break;
+                        case FLOAT32: value = raw.getFloat(); break;
+                        default: value = raw.getDouble();
+                    }
+                    grid.setDouble(row0 + i, j, value);
+                }
+            }
+        }
+    }
+
+    // 字节位重排：n 个宽度为 width 的数值，输出中第 k 段依次为各数值的第 k 个字节
+    static byte[] shuffle(byte[] raw, int width) {
+        if (width == 1) {
+            return raw;
+        }
+        int n = raw.length / width;
+        byte[] out = new byte[raw.length];
+        for (int k = 0; k < width; k++) {
+            int base = k * n;
+            for (int i = 0; i < n; i++) {
+                out[base + i] = raw[i * width + k];
+            }
+        }
+        return out;
+    }
+
+    static byte[] unshuffle(byte[] shuffled, int width) {
+        if (width == 1) {
+            return shuffled;
+        }
+        int n = shuffled.length / width;
+        byte[] out = new byte[shuffled.length];
+        for (int k = 0; k < width; k++) {
+            int base = k * n;
+            for (int i = 0; i < n; i++) {
+                out[i * width + k] = shuffled[base + i];
+            }
+        }
+        return out;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path path) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("压缩栅格文件被截断: " + path);
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,173 @@
+package hydrology;
+
+import java.util.Arrays;
+
+/**
+ * 洼地开挖（breaching）：作为填洼的替代，从洼地内向出口开挖一条通道，而不是把整个洼地抬平。
+ * 路堤、桥涵等造成的假水库在填洼后会变成大片平地，开挖只改动通道上的少数像元。
+ * <p>
+ * 与 {@link DEMFiller} 相同，从出口（栅格边缘与邻接 NODATA 的像元）开始按高程由低到高做优先级洪泛，
+ * 并为每个像元记下洪泛到达它的方向（回溯链，1 字节）。沿回溯链到出口的路径是最大高程最低的路径，
+ * 遇到低于当前水位的洼地像元时，沿这条路径把高于它的像元下挖到它的高程。
+ * 回溯在超出最大开挖长度或深度时立即停止，改为把该像元填到水位（与填洼相同），并把它标记为已填平；
+ * 回溯遇到已填平的像元即停止并同样填平，因此洼地其余部分随洪泛直接填平，不再逐个回溯（同 Priority-Flood+）。
+ * 不限制时每个像元至多被下挖一次；限制开挖时每次失败的回溯至多走到限制处，通常为最大开挖长度以内，
+ * 整体接近一次洪泛的时间。
+ * <p>
+ * 开挖通道与填平部分均为等高平地，需要时用 {@link FlatResolver} 解析其流向。
+ */
+public class DEMBreacher {
+    private static final byte UNVISITED = -2;
+    private static final byte OUTLET = -1;
+    private static final byte FILLED = -3; // 超出开挖限制而填平，回溯到此即停止
+
+    private final Grid dem; // 原始DEM数据
+    private final int rows;
+    private final int cols;
+    private double maxDepth = Double.POSITIVE_INFINITY;
+    private int maxLength = Integer.MAX_VALUE;
+    private long breachedCells;
+    private long filledCells;
+
+    public DEMBreacher(Grid dem) {
+        this.dem = dem;
+        this.rows = dem.rows();
+        this.cols = dem.cols();
+    }
+
+    /**
+     * 设置最大开挖深度（像元相对原始高程的最大下挖量），默认不限。
+     */
+    public void setMaxBreachDepth(double maxDepth) {
+        if (!(maxDepth >= 0)) {
+            throw new IllegalArgumentException("最大开挖深度不能为负: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * 设置一次开挖最多下挖的像元数，默认不限；为 0 时等同于填洼。
+     */
+    public void setMaxBreachLength(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("最大开挖长度不能为负: " + maxLength);
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * 执行开挖，超出限制的洼地改为填平。
+     * @return 返回处理后的DEM数据副本（存储类型与原始DEM一致）。
+     */
+    public WritableGrid breach() {
+        WritableGrid result = Grids.copy(dem);
+        int stride = result.stride();
+        int[] offsets = Neighborhood.offsets(stride);
+        boolean integral = dem.getType() != DataType.FLOAT32 && dem.getType() != DataType.FLOAT64;
+        breachedCells = 0;
+        filledCells = 0;
+
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (!result.isNoData(i, j)) {
+                    double z = result.getDouble(i, j);
+                    min = Math.min(min, z);
+                    max = Math.max(max, z);
+                }
+            }
+        }
+        int size = rows * stride;
+        CellQueue open = CellQueue.create(integral, min, max, size);
+        byte[] link = new byte[size]; // 指向洪泛来源邻居的方向
+        Arrays.fill(link, UNVISITED);
+
+        // 出口：栅格边缘以及与 NODATA 相邻的有效像元
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int index = i * stride + j;
+                if (result.isNoData(index)) {
+                    continue;
+                }
+                boolean outlet = !Neighborhood.isInterior(i, j, rows, cols);
+                for (int k = 0; k < Neighborhood.SIZE && !outlet; k++) {
+                    outlet = result.isNoData(index + offsets[k]);
+                }
+                if (outlet) {
+                    link[index] = OUTLET;
+                    open.push(index, result.getDouble(index));
+                }
+            }
+        }
+
+        // 主循环
+        while (!open.isEmpty()) {
+            int index = open.pop();
+            double height = result.getDouble(index);
+            int row = index / stride;
+            int col = index % stride;
+            for (int k = 0; k < Neighborhood.SIZE; k++) {
+                int newRow = row + Neighborhood.ROW[k];
+                int newCol = col + Neighborhood.COL[k];
+                if (newRow < 0 || newRow >= rows || newCol < 0 || newCol >= cols) {
+                    continue;
+                }
+                int neighbor = index + offsets[k];
+                if (link[neighbor] != UNVISITED || result.isNoData(neighbor)) {
+                    continue;
+                }
+                link[neighbor] = (byte) Neighborhood.opposite(k);
+                double z = result.getDouble(neighbor);
+                if (z < height && !carve(result, link, offsets, index, z)) {
+                    // 超出开挖限制，填到水位
+                    result.setDouble(neighbor, height);
+                    link[neighbor] = FILLED;
+                    filledCells++;
+                    z = height;
+                }
+                open.push(neighbor, z);
+            }
+        }
+        return result;
+    }
+
+    // 从 start 沿回溯链把高于 target 的像元下挖到 target；超出长度或深度限制、或经过已填平的像元时不做修改并返回 false
+    private boolean carve(WritableGrid result, byte[] link, int[] offsets, int start, double target) {
+        int length = 0;
+        int cell = start;
+        while (result.getDouble(cell) > target) {
+            if (link[cell] == FILLED || ++length > maxLength || dem.getDouble(cell) - target > maxDepth) {
+                return false;
+            }
+            if (link[cell] == OUTLET) {
+                break;
+            }
+            cell += offsets[link[cell]];
+        }
+
+        cell = start;
+        while (result.getDouble(cell) > target) {
+            result.setDouble(cell, target);
+            if (link[cell] == OUTLET) {
+                break;
+            }
+            cell += offsets[link[cell]];
+        }
+        breachedCells += length;
+        return true;
+    }
+
+    /**
+     * 最近一次开挖中被下挖的像元次数（同一像元被多次下挖时重复计数）。
+     */
+    public long getBreachedCells() {
+        return breachedCells;
+    }
+
+    /**
+     * 最近一次开挖中因超出限制而改为填平的洼地像元数。
+     */
+    public long getFilledCells() {
+        return filledCells;
+    }
+}
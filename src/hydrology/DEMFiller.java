@@ -1,170 +1,535 @@
 package hydrology;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
 import java.io.IOException;
-import java.util.PriorityQueue;
-import java.util.Comparator;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveTask;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 public class DEMFiller {
-    private static int[][] dem; // 原始DEM数据
-    private static int NODATA_value;
-    private static int rows;
-    private static int cols;
+    public static final int DEFAULT_TILE_SIZE = 512;
+    public static final int NO_DIRECTION = 255; // 流向栅格的 NODATA
+    private static final int OUTLET = 0; // 溢出图中出口的编号
+
+    private final Grid dem; // 原始DEM数据
+    private final int rows;
+    private final int cols;
+    private int tileSize = DEFAULT_TILE_SIZE;
 
-    public DEMFiller(int[][] dem, int NODATA_value) {
+    public DEMFiller(Grid dem) {
         this.dem = dem;
-        this.NODATA_value = NODATA_value;
-        this.rows = dem.length;
-        this.cols = dem[0].length;
+        this.rows = dem.rows();
+        this.cols = dem.cols();
     }
 
     /**
-     * 执行洼地填充算法。
-     * @return 返回填洼后的DEM数据副本。
+     * 执行洼地填充算法（分块并行的优先级洪泛），结果与对整幅DEM做一次优先级洪泛（{@link #fillSerial}）逐位相同。
+     * <p>
+     * 第一遍各分块独立洪泛：栅格边缘与邻接 NODATA 的像元为真正的出口，其余分块边界像元各自作为一个集水区的种子，
+     * 记录相邻集水区之间（含跨分块相邻的边界像元之间）的最低溢出高程，构成溢出图。
+     * 在溢出图上从出口做一次最小瓶颈路径求解，得到每个分块边界像元的最终水位；
+     * 第二遍各分块以该水位为边界种子的初始水位再洪泛一次，写出最终结果。
+     * @return 返回填洼后的DEM数据副本（存储类型与原始DEM一致）。
      */
-    public static int[][] fill() {
-        int[][] filledDEM = new int[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            System.arraycopy(dem[i], 0, filledDEM[i], 0, cols);
+    public WritableGrid fill() {
+        WritableGrid filledDEM = Grids.copy(dem);
+        int tilesDown = (rows + tileSize - 1) / tileSize;
+        int tilesAcross = (cols + tileSize - 1) / tileSize;
+        if (tilesDown * tilesAcross == 1) {
+            floodTile(new Tile(0, rows, 0, cols, 0), null, null, filledDEM);
+            return filledDEM;
         }
 
-        ForkJoinPool pool = new ForkJoinPool();
-        FillTask task = new FillTask(filledDEM, 0, rows - 1, 0, cols - 1, rows, cols);
-        pool.invoke(task);
+        // 分块边界像元依次编号，0 号为出口
+        Tile[] tiles = new Tile[tilesDown * tilesAcross];
+        int nodes = 1;
+        for (int tr = 0; tr < tilesDown; tr++) {
+            for (int tc = 0; tc < tilesAcross; tc++) {
+                int row0 = tr * tileSize;
+                int col0 = tc * tileSize;
+                Tile tile = new Tile(row0, Math.min(tileSize, rows - row0), col0, Math.min(tileSize, cols - col0), nodes);
+                tiles[tr * tilesAcross + tc] = tile;
+                nodes += tile.perimeterLength();
+            }
+        }
 
+        SpillEdges[] tileEdges = new SpillEdges[tiles.length];
+        IntStream.range(0, tiles.length).parallel().forEach(t -> {
+            tileEdges[t] = new SpillEdges();
+            floodTile(tiles[t], null, tileEdges[t], null);
+        });
+        SpillEdges crossEdges = new SpillEdges();
+        for (int tc = 1; tc < tilesAcross; tc++) {
+            int col = tc * tileSize;
+            for (int row = 0; row < rows; row++) {
+                for (int d = -1; d <= 1; d++) {
+                    addCrossEdge(crossEdges, tiles, tilesAcross, row, col - 1, row + d, col);
+                }
+            }
+        }
+        for (int tr = 1; tr < tilesDown; tr++) {
+            int row = tr * tileSize;
+            for (int col = 0; col < cols; col++) {
+                for (int d = -1; d <= 1; d++) {
+                    addCrossEdge(crossEdges, tiles, tilesAcross, row - 1, col, row, col + d);
+                }
+            }
+        }
+
+        double[] spill = solveSpillGraph(nodes, tileEdges, crossEdges);
+        IntStream.range(0, tiles.length).parallel().forEach(t -> floodTile(tiles[t], spill, null, filledDEM));
+        return filledDEM;
+    }
+
+    /**
+     * 对整幅DEM做一次串行的优先级洪泛，结果作为 {@link #fill} 的对照；内存约为每像元 21 字节。
+     */
+    public WritableGrid fillSerial() {
+        WritableGrid filledDEM = Grids.copy(dem);
+        floodTile(new Tile(0, rows, 0, cols, 0), null, null, filledDEM);
         return filledDEM;
     }
 
-    private static class FillTask extends RecursiveTask<Void> {
-        private final int[][] dem;
-        private final int startRow, endRow;
-        private final int startCol, endCol;
-        private final int rows, cols;
-
-        public FillTask(int[][] dem, int startRow, int endRow, int startCol, int endCol, int rows, int cols) {
-            this.dem = dem;
-            this.startRow = startRow;
-            this.endRow = endRow;
-            this.startCol = startCol;
-            this.endCol = endCol;
-            this.rows = rows;
-            this.cols = cols;
-        }
-
-        @Override
-        protected Void compute() {
-            if ((endRow - startRow + 1) * (endCol - startCol + 1) <= 1000) { // 如果子区域足够小，则直接处理
-                processRegion(startRow, endRow, startCol, endCol);
-            } else {
-                int midRow = (startRow + endRow) / 2;
-                int midCol = (startCol + endCol) / 2;
-
-                invokeAll(
-                        new FillTask(dem, startRow, midRow, startCol, midCol, rows, cols),
-                        new FillTask(dem, startRow, midRow, midCol + 1, endCol, rows, cols),
-                        new FillTask(dem, midRow + 1, endRow, startCol, midCol, rows, cols),
-                        new FillTask(dem, midRow + 1, endRow, midCol + 1, endCol, rows, cols)
-                );
-            }
-            return null;
-        }
-
-        private void processRegion(int startRow, int endRow, int startCol, int endCol) {
-            PriorityQueue<int[]> queue = new PriorityQueue<>(new Comparator<int[]>() {
-                @Override
-                public int compare(int[] o1, int[] o2) {
-                    return Integer.compare(o1[2], o2[2]);
+    /**
+     * 填洼并同时给出 D8 流向，只做一次洪泛，不再为流向单独读一遍DEM。
+     * <p>
+     * 每个像元流向洪泛到达它的那个邻居（最先出队、水位最低的邻居），洼地与平坦区内的像元也沿洪泛路径流向出口，
+     * 不会出现无流向或环路。流向编码见 {@link Neighborhood#D8_CODES}，出口像元（栅格边缘与邻接 NODATA）为 0，
+     * NODATA 为 {@value #NO_DIRECTION}。填洼结果与 {@link #fill} 逐位相同。
+     */
+    public FillResult fillWithDirections() {
+        WritableGrid filledDEM = Grids.copy(dem);
+        WritableGrid directions = Grids.create(DataType.UINT8, dem.getHeader().withNODATA_value(NO_DIRECTION));
+        int stride = filledDEM.stride();
+        int[] offsets = Neighborhood.offsets(stride);
+        boolean integral = dem.getType() != DataType.FLOAT32 && dem.getType() != DataType.FLOAT64;
+
+        // 流向栅格兼作访问标记：NO_DIRECTION 为尚未到达
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                directions.setDouble(i, j, NO_DIRECTION);
+                if (!filledDEM.isNoData(i, j)) {
+                    double z = filledDEM.getDouble(i, j);
+                    min = Math.min(min, z);
+                    max = Math.max(max, z);
                 }
-            });
+            }
+        }
+        int cells = rows * stride;
+        CellQueue open = CellQueue.create(integral, min, max, cells);
+        int[] pit = new int[cells];
+        int pitHead = 0, pitTail = 0;
 
-            // 将非NODATA_value的边界网格插入优先队列
-            for (int i = startRow; i <= endRow; i++) {
-                for (int j = startCol; j <= endCol; j++) {
-                    if ((i == startRow || i == endRow || j == startCol || j == endCol) && dem[i][j] != NODATA_value) {
-                        queue.add(new int[]{i, j, dem[i][j]});
+        // 出口：栅格边缘以及与 NODATA 相邻的有效像元
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int index = i * stride + j;
+                if (filledDEM.isNoData(index)) {
+                    continue;
+                }
+                boolean outlet = !Neighborhood.isInterior(i, j, rows, cols);
+                for (int k = 0; k < Neighborhood.SIZE && !outlet; k++) {
+                    outlet = filledDEM.isNoData(index + offsets[k]);
+                }
+                if (outlet) {
+                    directions.setDouble(index, 0);
+                    open.push(index, filledDEM.getDouble(index));
+                }
+            }
+        }
+
+        // 主循环（Priority-Flood+）
+        while (pitHead < pitTail || !open.isEmpty()) {
+            int index = pitHead < pitTail ? pit[pitHead++] : open.pop();
+            double height = filledDEM.getDouble(index);
+            int row = index / stride;
+            int col = index % stride;
+            for (int k = 0; k < Neighborhood.SIZE; k++) {
+                int newRow = row + Neighborhood.ROW[k];
+                int newCol = col + Neighborhood.COL[k];
+                if (newRow < 0 || newRow >= rows || newCol < 0 || newCol >= cols) {
+                    continue;
+                }
+                int neighbor = index + offsets[k];
+                if (directions.getDouble(neighbor) != NO_DIRECTION || filledDEM.isNoData(neighbor)) {
+                    continue;
+                }
+                directions.setDouble(neighbor, Neighborhood.D8_CODES[Neighborhood.opposite(k)]);
+                double z = filledDEM.getDouble(neighbor);
+                if (z <= height) {
+                    if (z < height) {
+                        filledDEM.setDouble(neighbor, height);
                     }
+                    pit[pitTail++] = neighbor;
+                } else {
+                    open.push(neighbor, z);
                 }
             }
+        }
+        return new FillResult(filledDEM, directions);
+    }
 
-            // 主循环
-            while (!queue.isEmpty()) {
-                int[] current = queue.poll();
-                int row = current[0];
-                int col = current[1];
-                int height = current[2];
+    /**
+     * {@link #fillWithDirections} 的结果：填洼后的DEM与 UINT8 的 D8 流向栅格。
+     */
+    public static final class FillResult {
+        private final WritableGrid filledDEM;
+        private final WritableGrid directions;
+
+        FillResult(WritableGrid filledDEM, WritableGrid directions) {
+            this.filledDEM = filledDEM;
+            this.directions = directions;
+        }
+
+        public WritableGrid getFilledDEM() {
+            return filledDEM;
+        }
+
+        public WritableGrid getDirections() {
+            return directions;
+        }
+    }
+
+    /**
+     * 设置并行填洼的分块边长（像元），默认 {@value #DEFAULT_TILE_SIZE}。
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize < 2) {
+            throw new IllegalArgumentException("分块边长至少为 2: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
 
-                // 遍历邻接网格
-                for (int[] direction : getDirections(rows, cols)) {
-                    int newRow = row + direction[0];
-                    int newCol = col + direction[1];
+    // 分块：行 [row0, row0 + height)，列 [col0, col0 + width)；边界像元按行优先顺序编号为 nodeBase 起的连续整数
+    private static final class Tile {
+        final int row0, height, col0, width;
+        final int nodeBase;
+
+        Tile(int row0, int height, int col0, int width, int nodeBase) {
+            this.row0 = row0;
+            this.height = height;
+            this.col0 = col0;
+            this.width = width;
+            this.nodeBase = nodeBase;
+        }
+
+        int perimeterLength() {
+            return height == 1 ? width : 2 * width + (height - 2) * Math.min(width, 2);
+        }
+
+        // 块内第 i 行第 j 列的边界像元的编号
+        int node(int i, int j) {
+            if (i == 0) {
+                return nodeBase + j;
+            }
+            int middle = Math.min(width, 2);
+            if (i < height - 1) {
+                return nodeBase + width + (i - 1) * middle + (j == 0 ? 0 : 1);
+            }
+            return nodeBase + width + (height - 2) * middle + j;
+        }
+    }
+
+    /**
+     * 在一个分块内做优先级洪泛（Priority-Flood+）。低于当前水位的邻居抬升到水位后进入先进先出队列，不再经过优先队列；
+     * 整型高程的优先队列为桶队列。
+     * <p>
+     * 种子为与 NODATA 或栅格边缘相邻的像元（初始水位为自身高程）和其余分块边界像元（初始水位为自身高程与 spill 中
+     * 对应水位的较大者，spill 为 null 时为自身高程）。edges 不为 null 时记录各种子集水区之间的最低溢出高程；
+     * out 不为 null 时写出块内水位。
+     */
+    private void floodTile(Tile tile, double[] spill, SpillEdges edges, WritableGrid out) {
+        // 外扩一圈读入，栅格外与 NODATA 为 NaN；level 先存高程，像元入队时改为水位
+        int stride = tile.width + 2;
+        int size = stride * (tile.height + 2);
+        int[] offsets = Neighborhood.offsets(stride);
+        double[] level = new double[size];
+        boolean[] closed = new boolean[size];
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = -1; i <= tile.height; i++) {
+            int row = tile.row0 + i;
+            for (int j = -1; j <= tile.width; j++) {
+                int col = tile.col0 + j;
+                int p = (i + 1) * stride + j + 1;
+                boolean inside = row >= 0 && row < rows && col >= 0 && col < cols && !dem.isNoData(row, col);
+                level[p] = inside ? dem.getDouble(row, col) : Double.NaN;
+                // 外扩的一圈只用于判断出口，不参与洪泛
+                closed[p] = !inside || i < 0 || i == tile.height || j < 0 || j == tile.width;
+                if (!closed[p]) {
+                    min = Math.min(min, level[p]);
+                    max = Math.max(max, level[p]);
+                }
+            }
+        }
+        int[] label = null;
+        if (edges != null) {
+            label = new int[size];
+            Arrays.fill(label, -1);
+        }
 
-                    if (isValidCell(newRow, newCol, startRow, endRow, startCol, endCol) && dem[newRow][newCol] != NODATA_value) {
-                        int newHeight = Math.max(dem[newRow][newCol], height);
-                        if (dem[newRow][newCol] < newHeight) { // 只有当新高度大于当前高度时才更新
-                            dem[newRow][newCol] = newHeight;
-                            queue.add(new int[]{newRow, newCol, newHeight});
-                        }
+        int cells = tile.height * tile.width;
+        int[] pit = new int[cells];
+        int pitHead = 0, pitTail = 0;
+        int seeds = 0;
+        for (int i = 0; i < tile.height; i++) {
+            for (int j = 0; j < tile.width; j++) {
+                int p = (i + 1) * stride + j + 1;
+                if (closed[p]) {
+                    continue;
+                }
+                boolean outlet = false;
+                for (int k = 0; k < Neighborhood.SIZE && !outlet; k++) {
+                    outlet = Double.isNaN(level[p + offsets[k]]);
+                }
+                int node = OUTLET;
+                if (!outlet) {
+                    if (i != 0 && i != tile.height - 1 && j != 0 && j != tile.width - 1) {
+                        continue;
+                    }
+                    node = tile.node(i, j);
+                    if (spill != null) {
+                        level[p] = Math.max(level[p], spill[node]);
+                        max = Math.max(max, level[p]);
                     }
                 }
+                if (label != null) {
+                    label[p] = node;
+                }
+                closed[p] = true;
+                pit[seeds++] = p; // 暂存种子
             }
         }
+        boolean integral = dem.getType() != DataType.FLOAT32 && dem.getType() != DataType.FLOAT64;
+        CellQueue open = CellQueue.create(integral, min, max, cells);
+        for (int s = 0; s < seeds; s++) {
+            open.push(pit[s], level[pit[s]]);
+        }
 
-        // 获取8个方向的偏移量
-        private static int[][] getDirections(int rows, int cols) {
-            return new int[][]{
-                    {-1, 0}, {1, 0}, {0, -1}, {0, 1},
-                    {-1, -1}, {-1, 1}, {1, -1}, {1, 1}
-            };
+        // 主循环
+        while (pitHead < pitTail || !open.isEmpty()) {
+            int p = pitHead < pitTail ? pit[pitHead++] : open.pop();
+            double height = level[p];
+            for (int k = 0; k < Neighborhood.SIZE; k++) {
+                int n = p + offsets[k];
+                if (closed[n]) {
+                    // 两个集水区在此相接，溢出高程为两侧水位的较大者
+                    if (label != null && label[n] >= 0 && label[n] != label[p]) {
+                        edges.add(label[p], label[n], Math.max(height, level[n]));
+                    }
+                    continue;
+                }
+                closed[n] = true;
+                if (label != null) {
+                    label[n] = label[p];
+                }
+                if (level[n] <= height) {
+                    level[n] = height; // 低于当前水位的抬升到水位
+                    pit[pitTail++] = n;
+                } else {
+                    open.push(n, level[n]);
+                }
+            }
+        }
+
+        if (out != null) {
+            for (int i = 0; i < tile.height; i++) {
+                for (int j = 0; j < tile.width; j++) {
+                    double value = level[(i + 1) * stride + j + 1];
+                    if (!Double.isNaN(value)) {
+                        out.setDouble(tile.row0 + i, tile.col0 + j, value);
+                    }
+                }
+            }
         }
+    }
 
-        // 检查坐标是否有效
-        private boolean isValidCell(int row, int col, int startRow, int endRow, int startCol, int endCol) {
-            return row >= startRow && row <= endRow && col >= startCol && col <= endCol;
+    // 跨分块相邻的两个边界像元之间的溢出边（均为有效像元时）
+    private void addCrossEdge(SpillEdges edges, Tile[] tiles, int tilesAcross, int row1, int col1, int row2, int col2) {
+        if (row2 < 0 || row2 >= rows || col2 < 0 || col2 >= cols || dem.isNoData(row1, col1) || dem.isNoData(row2, col2)) {
+            return;
         }
+        double spill = Math.max(dem.getDouble(row1, col1), dem.getDouble(row2, col2));
+        edges.add(perimeterNode(tiles, tilesAcross, row1, col1), perimeterNode(tiles, tilesAcross, row2, col2), spill);
+    }
+
+    // 分块边界像元的编号，与栅格边缘或 NODATA 相邻的为出口
+    private int perimeterNode(Tile[] tiles, int tilesAcross, int row, int col) {
+        for (int k = 0; k < Neighborhood.SIZE; k++) {
+            int r = row + Neighborhood.ROW[k];
+            int c = col + Neighborhood.COL[k];
+            if (r < 0 || r >= rows || c < 0 || c >= cols || dem.isNoData(r, c)) {
+                return OUTLET;
+            }
+        }
+        Tile tile = tiles[(row / tileSize) * tilesAcross + col / tileSize];
+        return tile.node(row - tile.row0, col - tile.col0);
+    }
+
+    // 溢出图上从出口出发的最小瓶颈路径：每个节点的水位为其到出口各条路径上最大溢出高程的最小值
+    private static double[] solveSpillGraph(int nodes, SpillEdges[] tileEdges, SpillEdges crossEdges) {
+        SpillEdges[] all = Arrays.copyOf(tileEdges, tileEdges.length + 1);
+        all[tileEdges.length] = crossEdges;
+        int[] start = new int[nodes + 1];
+        for (SpillEdges edges : all) {
+            edges.forEach((a, b, w) -> {
+                start[a + 1]++;
+                start[b + 1]++;
+            });
+        }
+        for (int v = 0; v < nodes; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] fill = Arrays.copyOf(start, nodes);
+        int[] target = new int[start[nodes]];
+        double[] weight = new double[start[nodes]];
+        for (SpillEdges edges : all) {
+            edges.forEach((a, b, w) -> {
+                target[fill[a]] = b;
+                weight[fill[a]++] = w;
+                target[fill[b]] = a;
+                weight[fill[b]++] = w;
+            });
+        }
+
+        double[] spill = new double[nodes];
+        Arrays.fill(spill, Double.POSITIVE_INFINITY);
+        spill[OUTLET] = Double.NEGATIVE_INFINITY;
+        boolean[] done = new boolean[nodes];
+        CellQueue queue = new CellQueue.Heap(nodes);
+        queue.push(OUTLET, spill[OUTLET]);
+        while (!queue.isEmpty()) {
+            int u = queue.pop();
+            if (done[u]) {
+                continue;
+            }
+            done[u] = true;
+            for (int e = start[u]; e < start[u + 1]; e++) {
+                int v = target[e];
+                double candidate = Math.max(spill[u], weight[e]);
+                if (candidate < spill[v]) {
+                    spill[v] = candidate;
+                    queue.push(v, candidate);
+                }
+            }
+        }
+        return spill;
     }
 
     /**
-     * 输出填洼后的DEM到文件，并打印最低值和最高值。
+     * 溢出图的边集：无向边 (a, b) 只保留最低的溢出高程。开放寻址散列表，键为两端编号拼成的 long。
      */
-    public static void outputFilledDEM() {
-        int[][] filledDEM = fill();
+    private static final class SpillEdges {
+        interface Visitor {
+            void visit(int a, int b, double spill);
+        }
 
-        // 计算最低值和最高值
-        int min = Integer.MAX_VALUE;
-        int max = Integer.MIN_VALUE;
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (filledDEM[i][j] != NODATA_value) {
-                    if (filledDEM[i][j] < min) {
-                        min = filledDEM[i][j];
+        private long[] keys = new long[64]; // 0 为空位（a < b，键不会为 0）
+        private double[] spills = new double[64];
+        private int size;
+
+        void add(int a, int b, double spill) {
+            long key = a < b ? (long) a << 32 | b : (long) b << 32 | a;
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    if (spill < spills[slot]) {
+                        spills[slot] = spill;
                     }
-                    if (filledDEM[i][j] > max) {
-                        max = filledDEM[i][j];
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            spills[slot] = spill;
+            if (++size * 2 > keys.length) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            double[] oldSpills = spills;
+            keys = new long[oldKeys.length * 2];
+            spills = new double[keys.length];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
                     }
+                    keys[slot] = oldKeys[i];
+                    spills[slot] = oldSpills[i];
                 }
             }
         }
 
-        // 输出结果到文件
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("./result/output.txt"))) {
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
-                    writer.write(filledDEM[i][j] == NODATA_value ? "NODATA" : String.valueOf(filledDEM[i][j]));
-                    writer.write(j == cols - 1 ? "\n" : " ");
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        void forEach(Visitor visitor) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    visitor.visit((int) (keys[i] >>> 32), (int) keys[i], spills[i]);
                 }
             }
-            // 写入最低值和最高值
-            writer.write("Min Value: " + min + "\n");
-            writer.write("Max Value: " + max + "\n");
+        }
+    }
+
+    /**
+     * 输出填洼后的DEM到文件，并打印最低值和最高值。
+     */
+    public void outputFilledDEM() {
+        WritableGrid filledDEM = fill();
+
+        // 计算最低值和最高值
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int cells = rows * cols;
+        for (int index = 0; index < cells; index++) {
+            if (!filledDEM.isNoData(index)) {
+                double value = filledDEM.getDouble(index);
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+        }
+
+        // 输出结果到文件，末尾写入最低值和最高值
+        GridTextWriter writer = new GridTextWriter();
+        String minText = writer.format(min, filledDEM);
+        String maxText = writer.format(max, filledDEM);
+        try {
+            writer.writeText(Path.of("./result/output.txt"), filledDEM, "NODATA",
+                    "Min Value: " + minText + "\nMax Value: " + maxText + "\n");
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         // 打印最低值和最高值
-        System.out.println("Min Value: " + min);
-        System.out.println("Max Value: " + max);
+        System.out.println("Min Value: " + minText);
+        System.out.println("Max Value: " + maxText);
+    }
+
+    /**
+     * 将填洼后的DEM以二进制栅格格式（.hgr）输出。
+     */
+    public static void outputFilledRaster(Grid filledDEM, Path path) throws IOException {
+        RasterFile.write(path, filledDEM);
+    }
+
+    /**
+     * 将填洼后的DEM以分块压缩的GeoTIFF输出，crs 为 null 时沿用输入DEM的坐标系，未知时不写坐标系。
+     */
+    public static void outputFilledGeoTiff(Grid filledDEM, Path path, CoordinateReferenceSystem crs) throws IOException {
+        GeoTiffIO.write(path, filledDEM, crs);
     }
-}
\ No newline at end of file
+}
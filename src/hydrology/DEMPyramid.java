@@ -0,0 +1,181 @@
+package hydrology;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 多分辨率DEM金字塔：把原始DEM按 f x f 的块聚合为粗分辨率层级（均值、最小值或最大值），
+ * 用于只需要 180 m、360 m 结果的筛查计算。
+ * <p>
+ * 每个层级都是普通的 {@link Grid}，填洼、坡度、流向等各阶段直接对其运行即可；
+ * f 倍层级的像元数约为原始的 1/f²，2x、4x、8x 层级的计算量分别约为原始分辨率的 1/4、1/16、1/64。
+ * 层级按左上角对齐，右侧与底部不足 f 行列的块只聚合实际存在的像元，块内全为 NODATA 时为 NODATA。
+ * <p>
+ * 粗层级的结果可以反过来指导精细层级的计算：{@link #fineWindow} 把粗层级上的感兴趣区域换算为原始DEM的窗口，
+ * 只读取、只计算该窗口（见 {@link DEMReader#readWindow}）；{@link #upsample} 把粗层级结果按最近邻展开到原始分辨率，
+ * 作为精细计算的初值或先验。
+ */
+public class DEMPyramid {
+    public static final int[] DEFAULT_FACTORS = {2, 4, 8};
+
+    /**
+     * 块内聚合方式。最小值与最大值保持原始存储类型；均值为单精度（原始为双精度时为双精度）。
+     */
+    public enum Aggregation {
+        MEAN,
+        MIN,
+        MAX
+    }
+
+    private final Grid dem;
+    private final Aggregation aggregation;
+    private final Map<Integer, WritableGrid> levels = new HashMap<>();
+
+    public DEMPyramid(Grid dem, Aggregation aggregation) {
+        this.dem = dem;
+        this.aggregation = aggregation;
+    }
+
+    /**
+     * 一次构建默认的 2x、4x、8x 层级。
+     */
+    public void build() {
+        for (int factor : DEFAULT_FACTORS) {
+            getLevel(factor);
+        }
+    }
+
+    /**
+     * 取 factor 倍的层级（首次调用时构建并缓存），factor 为 1 时返回原始DEM。
+     */
+    public synchronized Grid getLevel(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("聚合倍数必须为正: " + factor);
+        }
+        if (factor == 1) {
+            return dem;
+        }
+        WritableGrid level = levels.get(factor);
+        if (level == null) {
+            level = aggregate(factor);
+            levels.put(factor, level);
+        }
+        return level;
+    }
+
+    /**
+     * factor 倍层级的头部信息：行列数向上取整，像元大小乘以 factor，与原始DEM的左上角对齐。
+     */
+    public GridHeader levelHeader(int factor) {
+        GridHeader header = dem.getHeader();
+        int nrows = (header.getNrows() + factor - 1) / factor;
+        int ncols = (header.getNcols() + factor - 1) / factor;
+        double cellsize = header.getCellsize() * factor;
+        double top = header.getYllcorner() + header.getNrows() * header.getCellsize();
+        return new GridHeader(nrows, ncols, header.getXllcorner(), top - nrows * cellsize, cellsize,
+                header.getNODATA_value(), header.getCrs());
+    }
+
+    /**
+     * 释放已构建的层级（堆外存储时立即归还内存）。
+     */
+    public synchronized void release() {
+        for (WritableGrid level : levels.values()) {
+            Grids.release(level);
+        }
+        levels.clear();
+    }
+
+    private WritableGrid aggregate(int factor) {
+        GridHeader header = levelHeader(factor);
+        DataType type = aggregation != Aggregation.MEAN ? dem.getType()
+                : dem.getType() == DataType.FLOAT64 ? DataType.FLOAT64 : DataType.FLOAT32;
+        WritableGrid level = Grids.create(type, header);
+        int rows = dem.rows();
+        int cols = dem.cols();
+        int coarseCols = header.getNcols();
+        double nodata = header.getNODATA_value();
+        IntStream.range(0, header.getNrows()).parallel().forEach(ci -> {
+            double[] row = new double[cols];
+            double[] value = new double[coarseCols];
+            int[] count = new int[coarseCols];
+            for (int i = ci * factor; i < Math.min(rows, (ci + 1) * factor); i++) {
+                dem.readRow(i, row);
+                for (int j = 0; j < cols; j++) {
+                    double z = row[j];
+                    if (z == nodata || Double.isNaN(z)) {
+                        continue;
+                    }
+                    int cj = j / factor;
+                    if (count[cj]++ == 0) {
+                        value[cj] = z;
+                    } else if (aggregation == Aggregation.MEAN) {
+                        value[cj] += z;
+                    } else if (aggregation == Aggregation.MIN ? z < value[cj] : z > value[cj]) {
+                        value[cj] = z;
+                    }
+                }
+            }
+            for (int cj = 0; cj < coarseCols; cj++) {
+                double v = count[cj] == 0 ? nodata
+                        : aggregation == Aggregation.MEAN ? value[cj] / count[cj] : value[cj];
+                level.setDouble(ci, cj, v);
+            }
+        });
+        return level;
+    }
+
+    /**
+     * 把 factor 倍层级上的掩膜（例如粗分辨率累积流超过阈值的区域）换算为原始DEM上的窗口：
+     * 取掩膜的外包矩形，四周各扩展 margin 个粗像元，超出栅格的部分被裁掉。
+     */
+    public GridWindow fineWindow(int factor, BitMask coarseMask, int margin) {
+        GridHeader header = levelHeader(factor);
+        if (coarseMask.rows() != header.getNrows() || coarseMask.cols() != header.getNcols()) {
+            throw new IllegalArgumentException("掩膜大小与 " + factor + " 倍层级不一致: "
+                    + coarseMask.rows() + " x " + coarseMask.cols());
+        }
+        int minRow = Integer.MAX_VALUE, maxRow = -1, minCol = Integer.MAX_VALUE, maxCol = -1;
+        for (int i = 0; i < header.getNrows(); i++) {
+            for (int j = 0; j < header.getNcols(); j++) {
+                if (coarseMask.get(i, j)) {
+                    minRow = Math.min(minRow, i);
+                    maxRow = Math.max(maxRow, i);
+                    minCol = Math.min(minCol, j);
+                    maxCol = Math.max(maxCol, j);
+                }
+            }
+        }
+        if (maxRow < 0) {
+            throw new IllegalArgumentException("掩膜为空，无法确定窗口");
+        }
+        int row0 = Math.max(0, (minRow - margin) * factor);
+        int col0 = Math.max(0, (minCol - margin) * factor);
+        int row1 = (int) Math.min(dem.rows(), (long) (maxRow + 1 + margin) * factor);
+        int col1 = (int) Math.min(dem.cols(), (long) (maxCol + 1 + margin) * factor);
+        return GridWindow.ofCells(dem.getHeader(), row0, col0, row1 - row0, col1 - col0);
+    }
+
+    /**
+     * 把 factor 倍层级上的结果按最近邻展开到原始DEM的分辨率（存储类型与 NODATA 值不变）。
+     */
+    public WritableGrid upsample(Grid coarse, int factor) {
+        GridHeader header = levelHeader(factor);
+        if (coarse.rows() != header.getNrows() || coarse.cols() != header.getNcols()) {
+            throw new IllegalArgumentException("栅格大小与 " + factor + " 倍层级不一致: "
+                    + coarse.rows() + " x " + coarse.cols());
+        }
+        int cols = dem.cols();
+        WritableGrid fine = Grids.create(coarse.getType(),
+                dem.getHeader().withNODATA_value(coarse.getHeader().getNODATA_value()));
+        IntStream.range(0, dem.rows()).parallel().forEach(i -> {
+            double[] row = new double[coarse.cols()];
+            coarse.readRow(i / factor, row);
+            for (int j = 0; j < cols; j++) {
+                fine.setDouble(i, j, row[j / factor]);
+            }
+        });
+        return fine;
+    }
+}
@@ -1,110 +1,166 @@
 package hydrology;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class DEMReader {
     private int nrows;
     private int ncols;
-    int cellsize;
-    int NODATA_value;
+    double cellsize;
+    double NODATA_value;
     double xllcorner;
     double yllcorner;
-    private int[][] dem;
-
-    public DEMReader() {}
-
-    // 读取DEM头部信息并初始化对象
-    public static DEMReader readHeader(File file) throws FileNotFoundException {
-        try (Scanner inDEM = new Scanner(file)) {
-            int nrows = 0, ncols = 0, cellsize = 0, NODATA_value = -9999; // 设置一个默认值
-            double xllcorner = 0, yllcorner = 0;
-
-            while (inDEM.hasNext()) {
-                String key = inDEM.next();
-                if (key.startsWith("ncols")) ncols = inDEM.nextInt();
-                else if (key.startsWith("nrows")) nrows = inDEM.nextInt();
-                else if (key.startsWith("xllcorner")) xllcorner = inDEM.nextDouble();
-                else if (key.startsWith("yllcorner")) yllcorner = inDEM.nextDouble();
-                else if (key.startsWith("cellsize")) cellsize = (int) inDEM.nextDouble();
-                else if (key.startsWith("NODATA_value")) NODATA_value = inDEM.nextInt();
-                else inDEM.nextLine(); // 忽略未识别的行
-            }
+    private final File file;
+    private final GridHeader header;
+    private Grid grid;
+
+    // 只读取DEM头部信息并初始化对象（不解析数据体），支持 ESRI ASCII（.asc/.asc.gz）与 GeoTIFF（.tif）
+    public static DEMReader readHeader(File file) throws IOException {
+        Path path = file.toPath();
+        GridHeader header = GeoTiffIO.isGeoTiff(path) ? GeoTiffIO.readHeader(path) : AsciiGridParser.readHeader(path);
+        System.out.println("数据信息：\nnrows=" + header.getNrows() + "\nncols=" + header.getNcols()
+                + "\nxllcorner=" + header.getXllcorner() + "\nyllcorner=" + header.getYllcorner());
+        return new DEMReader(file, header);
+    }
 
-            System.out.println("数据信息：\nnrows=" + nrows + "\nncols=" + ncols + "\nxllcorner=" + xllcorner + "\nyllcorner=" + yllcorner);
+    // 读取DEM头部与数据；存在未过期的二进制副本时直接读取副本
+    // 栅格的存储位置（堆、直接内存、映射文件或分块文件）由 Grids.setStorage 决定，不再使用时调用 Grids.release 释放
+    public static DEMReader read(File file) throws IOException {
+        return read(file, true);
+    }
 
-            return new DEMReader(nrows, ncols, cellsize, NODATA_value, xllcorner, yllcorner);
+    // 读取DEM头部与数据，useCache 为 false 时总是解析文本并且不生成副本
+    public static DEMReader read(File file, boolean useCache) throws IOException {
+        Path source = file.toPath();
+        Path sidecar = RasterFile.sidecarOf(source);
+        if (useCache && RasterFile.isFresh(sidecar, source)) {
+            long start = System.nanoTime();
+            try (RasterFile raster = RasterFile.open(sidecar, crsOf(source))) {
+                DEMReader reader = new DEMReader(file, raster.getHeader());
+                reader.grid = loadSidecar(raster);
+                System.out.printf("从二进制副本读取DEM %s，耗时 %.2f s%n", sidecar, (System.nanoTime() - start) / 1e9);
+                return reader;
+            }
         }
-    }
 
-    // 构造函数用于创建具有指定参数的新实例
-    private DEMReader(int nrows, int ncols, int cellsize, int NODATA_value, double xllcorner, double yllcorner) {
-        this.nrows = nrows;
-        this.ncols = ncols;
-        this.cellsize = cellsize;
-        this.NODATA_value = NODATA_value;
-        this.xllcorner = xllcorner;
-        this.yllcorner = yllcorner;
-        initializeArrays();
-        System.out.println("初始化数组完成");
-    }
-
-    // 初始化数组
-    private void initializeArrays() {
-        dem = new int[nrows][ncols];
-        for (int i = 0; i < nrows; i++) {
-            for (int j = 0; j < ncols; j++) {
-                dem[i][j] = NODATA_value;
+        DEMReader reader = readHeader(file);
+        reader.readDEM();
+        if (useCache) {
+            try {
+                RasterFile.writeSidecar(sidecar, source, reader.grid);
+                System.out.println("已生成DEM二进制副本: " + sidecar);
+            } catch (IOException e) {
+                // 副本只是加速手段，写入失败不影响本次读取
+                System.err.println("无法写入DEM二进制副本: " + e.getMessage());
             }
         }
+        return reader;
     }
 
-    // 读取DEM数据（跳过头部信息）
-    public void readDEM(Scanner inDEM) {
-        // 跳过头部信息
-        for (int i = 0; i < 6 && inDEM.hasNextLine(); i++) {
-            String line = inDEM.nextLine();
-            System.out.println("Header line " + i + ": " + line); // 打印头部信息以便验证
-        }
+    // 只读取行列范围内的子窗口（row0、col0 从左上角起算），返回的头部信息与栅格的左下角坐标已按窗口修正
+    // 存在未过期的二进制副本时按偏移直接读取窗口各行；ASCII 窗口之前的数据只计数不解析；不生成副本
+    public static DEMReader readWindow(File file, int row0, int col0, int nrows, int ncols) throws IOException {
+        DEMReader full = readHeader(file);
+        return readWindow(file, full.header, GridWindow.ofCells(full.header, row0, col0, nrows, ncols));
+    }
+
+    // 只读取与地图坐标范围相交的子窗口，超出DEM的部分被裁掉
+    public static DEMReader readBounds(File file, double minX, double minY, double maxX, double maxY)
+            throws IOException {
+        DEMReader full = readHeader(file);
+        return readWindow(file, full.header, GridWindow.ofBounds(full.header, minX, minY, maxX, maxY));
+    }
 
-        // 正常初始化dem数组
-        for (int i = 0; i < nrows && inDEM.hasNextLine(); i++) {
-            String line = inDEM.nextLine().trim(); // 读取一行并去除首尾空白
-            if (line.isEmpty()) continue; // 忽略空行
-            Scanner lineScanner = new Scanner(line);
-            lineScanner.useDelimiter("\\s+"); // 使用一个或多个空白字符作为分隔符
-
-            for (int j = 0; j < ncols && lineScanner.hasNext(); j++) {
-                try {
-                    dem[i][j] = lineScanner.nextInt();
-                } catch (NumberFormatException e) {
-                    System.out.println("非数字数据在行 " + i + " 列 " + j + ": " + lineScanner.next());
-                    dem[i][j] = NODATA_value;
-                }
-
-//                // 调试信息：打印指定范围的数据
-//                if (i >= 5000 && i <= 5020 && j >= 4500 && j <= 4520) {
-//                    System.out.printf(" [%d][%d] = %d\n", i, j, dem[i][j]);
-//                }
+    private static DEMReader readWindow(File file, GridHeader header, GridWindow window) throws IOException {
+        long start = System.nanoTime();
+        Path source = file.toPath();
+        Path sidecar = RasterFile.sidecarOf(source);
+        Grid grid;
+        if (RasterFile.isFresh(sidecar, source)) {
+            try (RasterFile raster = RasterFile.open(sidecar, header.getCrs())) {
+                grid = raster.readWindow(window);
             }
-            lineScanner.close();
+        } else if (GeoTiffIO.isGeoTiff(source)) {
+            grid = GeoTiffIO.readGridWindow(source, header, window);
+        } else {
+            grid = AsciiGridParser.readWindow(source, window);
+        }
+        DEMReader reader = new DEMReader(file, grid.getHeader());
+        reader.grid = grid;
+        System.out.printf("读取DEM窗口（%s），耗时 %.2f s，存储类型 %s%n", window,
+                (System.nanoTime() - start) / 1e9, grid.getType());
+        return reader;
+    }
+
+    // 副本不记录坐标系，GeoTIFF 源文件的坐标系只读文件头取得；ASCII 不带坐标系
+    private static String crsOf(Path source) throws IOException {
+        return GeoTiffIO.isGeoTiff(source) ? GeoTiffIO.readHeader(source).getCrs() : null;
+    }
+
+    // MAPPED 模式下直接只读映射副本，不复制像元；TILED 模式下逐个分块行导入临时分块文件（不受 int 下标范围限制）
+    private static Grid loadSidecar(RasterFile raster) throws IOException {
+        switch (Grids.getStorage()) {
+            case MAPPED:
+                return raster.mapGrid();
+            case TILED:
+                return TiledGrid.importTemp(raster, Grids.getMappedDirectory());
+            default:
+                return raster.readGrid();
         }
-        //System.out.println("DEM 数据读取完成");
     }
 
-    // 获取DEM数据
-    public int[][] getDEM() {
-        return dem;
+    // 构造函数用于创建具有指定参数的新实例
+    private DEMReader(File file, GridHeader header) {
+        this.file = file;
+        this.header = header;
+        this.nrows = header.getNrows();
+        this.ncols = header.getNcols();
+        this.cellsize = header.getCellsize();
+        this.NODATA_value = header.getNODATA_value();
+        this.xllcorner = header.getXllcorner();
+        this.yllcorner = header.getYllcorner();
+    }
+
+    // 读取DEM数据（ASCII：内存映射 + 并行解析，.asc.gz 顺序解析；GeoTIFF：按分块解码）
+    // 高程与像元大小可以是小数，存储类型取能无损容纳数据的最窄类型
+    public void readDEM() throws IOException {
+        long start = System.nanoTime();
+        Path path = file.toPath();
+        grid = GeoTiffIO.isGeoTiff(path) ? GeoTiffIO.readGrid(path) : AsciiGridParser.read(path);
+        System.out.printf("DEM 数据解析耗时 %.2f s，存储类型 %s%n", (System.nanoTime() - start) / 1e9, grid.getType());
+    }
+
+    // 将整型DEM替换为分块压缩的只读表示（PackedGrid），原栅格随即释放，返回压缩后的栅格
+    // 填洼、坡度等只读取DEM的计算可直接使用；浮点DEM不能压缩
+    public Grid pack() {
+        long start = System.nanoTime();
+        PackedGrid packed = PackedGrid.pack(grid);
+        Grids.release(grid);
+        grid = packed;
+        System.out.printf("DEM 已压缩为分块表示，耗时 %.2f s：%.1f MB（压缩比 %.1f），解码缓存上限 %.1f MB%n",
+                (System.nanoTime() - start) / 1e9, packed.getPackedBytes() / 1048576.0,
+                packed.getCompressionRatio(), packed.getCacheBytes() / 1048576.0);
+        return packed;
+    }
+
+    // 获取DEM栅格
+    public Grid getGrid() {
+        return grid;
+    }
+
+    // 获取DEM头部信息
+    public GridHeader getHeader() {
+        return header;
     }
 
     // 获取DEM的元数据
     public String getMetadata() {
-        return String.format("nrows=%d, ncols=%d, cellsize=%d, NODATA_value=%d, xllcorner=%.2f, yllcorner=%.2f",
+        return String.format("nrows=%d, ncols=%d, cellsize=%s, NODATA_value=%s, xllcorner=%.2f, yllcorner=%.2f",
                 nrows, ncols, cellsize, NODATA_value, xllcorner, yllcorner);
     }
 
-    public int getCellSize() {
+    public double getCellSize() {
         return cellsize;
     }
 
@@ -116,7 +172,7 @@ public class DEMReader {
         return yllcorner;
     }
 
-    public int getNODATA_value() {
+    public double getNODATA_value() {
         return NODATA_value;
     }
-}
\ No newline at end of file
+}
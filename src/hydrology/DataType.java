@@ -0,0 +1,43 @@
+package hydrology;
+
+/**
+ * 栅格像元的存储类型。
+ */
+public enum DataType {
+    INT16(1, 2),
+    INT32(2, 4),
+    FLOAT32(3, 4),
+    FLOAT64(4, 8),
+    UINT8(5, 1);
+
+    private final int code;
+    private final int bytes;
+
+    DataType(int code, int bytes) {
+        this.code = code;
+        this.bytes = bytes;
+    }
+
+    /**
+     * 写入文件头的类型编码。
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * 每个像元占用的字节数。
+     */
+    public int getBytes() {
+        return bytes;
+    }
+
+    public static DataType fromCode(int code) {
+        for (DataType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("未知的栅格数据类型编码: " + code);
+    }
+}
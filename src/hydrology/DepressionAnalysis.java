@@ -0,0 +1,345 @@
+package hydrology;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 洼地清单与嵌套层次（合并树），在决定填洼还是开挖之前统计每个洼地的深度、面积、容积和溢出点。
+ * <p>
+ * 先找出所有洼底（无更低邻居、也不与同高程出路相连的等高像元群），与出口（栅格边缘、邻接 NODATA 的像元）一起作为种子
+ * 按高程由低到高洪泛，把每个像元分到一个汇水区。洪泛水位到达两个汇水区之间的最低溢出点时用并查集合并：
+ * 两个洼地相接时合并为一个上层洼地，洼地与出口相接时即为顶层洼地。整体为一次洪泛加近似线性的并查集操作。
+ * <p>
+ * 洼地编号从 1 开始，1~{@link #getPitCount()} 为叶子洼地（各自含一个洼底），其后为合并产生的上层洼地，
+ * 子洼地的编号总小于父洼地。洼地的范围是其子树内所有汇水区中低于其溢出高程的像元。
+ */
+public class DepressionAnalysis {
+    private static final byte NODATA = 0;
+    private static final byte OUTLET = 1;
+    private static final byte NO_LOWER = 2; // 没有更低的邻居
+    private static final byte NORMAL = 3;
+
+    private static final int OCEAN = 0; // 汇水区编号：排向出口
+    private static final int NONE = -1;
+
+    private final Grid dem;
+    private final int rows;
+    private final int cols;
+
+    private int pits;
+    private int depressions;
+    private int[] parent;      // 上层洼地，顶层为 NONE
+    private int[] overflow;    // 溢出时流入的洼地，流出栅格为 0
+    private int[] pitCell;
+    private double[] pitElevation;
+    private int[] spillCell;
+    private double[] spillElevation;
+    private long[] cellCount;
+    private double[] volume;
+    private int[] innermost;   // 每个像元所在的最内层洼地，0 为不在洼地内，NODATA 为 -1
+
+    public DepressionAnalysis(Grid dem) {
+        this.dem = dem;
+        this.rows = dem.rows();
+        this.cols = dem.cols();
+    }
+
+    /**
+     * 执行分析，之后可读取洼地表与标记栅格。
+     */
+    public void analyze() {
+        pits = 0;
+        int cells = rows * cols;
+        int[] offsets = Neighborhood.offsets(cols);
+        byte[] state = new byte[cells];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                state[i * cols + j] = classify(i, j);
+            }
+        });
+
+        // 汇水区编号：-1 未到达，-2 为有同高程出路的平坦区（不是洼底）
+        int[] label = new int[cells];
+        Arrays.fill(label, -1);
+        boolean integral = dem.getType() != DataType.FLOAT32 && dem.getType() != DataType.FLOAT64;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int cell = 0; cell < cells; cell++) {
+            if (state[cell] != NODATA) {
+                double z = elevation(cell);
+                min = Math.min(min, z);
+                max = Math.max(max, z);
+            }
+        }
+        CellQueue open = CellQueue.create(integral, min, max, cells);
+        int[] group = new int[cells];
+        int[] pitCells = new int[16];
+        double[] pitZ = new double[16];
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (state[cell] == OUTLET) {
+                label[cell] = OCEAN;
+                open.push(cell, elevation(cell));
+            } else if (state[cell] == NO_LOWER && label[cell] == -1) {
+                // 同高程且都没有更低邻居的连通像元构成一个洼底，相邻有同高程的出路时不算
+                double z = elevation(cell);
+                int size = 0;
+                boolean exit = false;
+                label[cell] = -2;
+                group[size++] = cell;
+                for (int head = 0; head < size; head++) {
+                    int c = group[head];
+                    int row = c / cols, col = c % cols;
+                    for (int k = 0; k < Neighborhood.SIZE; k++) {
+                        int n = c + offsets[k];
+                        if (!isInside(row + Neighborhood.ROW[k], col + Neighborhood.COL[k])
+                                || state[n] == NODATA || elevation(n) != z) {
+                            continue;
+                        }
+                        if (state[n] != NO_LOWER) {
+                            exit = true;
+                        } else if (label[n] == -1) {
+                            label[n] = -2;
+                            group[size++] = n;
+                        }
+                    }
+                }
+                if (exit) {
+                    continue;
+                }
+                if (++pits == pitCells.length) {
+                    pitCells = Arrays.copyOf(pitCells, pits * 2);
+                    pitZ = Arrays.copyOf(pitZ, pits * 2);
+                }
+                pitCells[pits] = cell;
+                pitZ[pits] = z;
+                for (int g = 0; g < size; g++) {
+                    label[group[g]] = pits;
+                    open.push(group[g], z);
+                }
+            }
+        }
+
+        // 按高程由低到高洪泛划分汇水区。像元严格按高程出队，两个汇水区在当前水位相接时即按溢出高程由低到高的顺序合并
+        // （Kruskal），不必先收集再排序；相接处较高的像元（当前出队像元）即为溢出点
+        allocate(pitCells, pitZ);
+        int[] root = new int[2 * pits + 1]; // 并查集，0 为出口
+        for (int d = 0; d < root.length; d++) {
+            root[d] = d;
+        }
+        innermost = label; // 出队时改记当时所属的最上层洼地（0 为已与出口连通），之后就地改为最内层洼地
+        while (!open.isEmpty()) {
+            int c = open.pop();
+            double height = elevation(c);
+            int row = c / cols, col = c % cols;
+            for (int k = 0; k < Neighborhood.SIZE; k++) {
+                int n = c + offsets[k];
+                if (!isInside(row + Neighborhood.ROW[k], col + Neighborhood.COL[k]) || state[n] == NODATA) {
+                    continue;
+                }
+                if (label[n] < 0) {
+                    label[n] = label[c];
+                    open.push(n, Math.max(elevation(n), height));
+                } else if (label[n] != label[c] && elevation(n) <= height) {
+                    // 较高一侧尚未出队时，待它出队再合并
+                    merge(root, find(root, label[c]), find(root, label[n]), height, c);
+                }
+            }
+            label[c] = find(root, label[c]);
+        }
+        measure();
+    }
+
+    private void allocate(int[] pitCells, double[] pitZ) {
+        int capacity = 2 * pits + 1;
+        parent = new int[capacity];
+        overflow = new int[capacity];
+        pitCell = Arrays.copyOf(pitCells, capacity);
+        pitElevation = Arrays.copyOf(pitZ, capacity);
+        spillCell = new int[capacity];
+        spillElevation = new double[capacity];
+        Arrays.fill(parent, NONE);
+        Arrays.fill(spillCell, NONE);
+        Arrays.fill(spillElevation, Double.POSITIVE_INFINITY);
+        depressions = pits;
+    }
+
+    // 两个洼地（或洼地与出口）在 spill 高程处相接：与出口相接的成为顶层洼地，否则合并为新的上层洼地
+    private void merge(int[] root, int a, int b, double spill, int cell) {
+        if (a == b) {
+            return;
+        }
+        if (a == OCEAN || b == OCEAN) {
+            int d = a == OCEAN ? b : a;
+            spillElevation[d] = spill;
+            spillCell[d] = cell;
+            overflow[d] = OCEAN;
+            root[d] = OCEAN;
+            return;
+        }
+        int merged = ++depressions;
+        spillElevation[a] = spillElevation[b] = spill;
+        spillCell[a] = spillCell[b] = cell;
+        parent[a] = parent[b] = merged;
+        root[a] = root[b] = merged;
+        overflow[a] = b;
+        overflow[b] = a;
+        boolean lower = pitElevation[a] <= pitElevation[b];
+        pitCell[merged] = lower ? pitCell[a] : pitCell[b];
+        pitElevation[merged] = lower ? pitElevation[a] : pitElevation[b];
+    }
+
+    private static int find(int[] root, int d) {
+        while (root[d] != d) {
+            root[d] = root[root[d]]; // 路径减半
+            d = root[d];
+        }
+        return d;
+    }
+
+    // 出队时所属的洼地溢出高程不低于像元高程；恰好相等（同一水位上稍后才合并）时再向上找第一个高于它的。
+    // 各洼地的像元数与高程和自下而上累加到上层洼地，子洼地编号总小于父洼地
+    private void measure() {
+        int nodes = depressions + 1;
+        cellCount = new long[nodes];
+        double[] sumZ = new double[nodes];
+        for (int cell = 0; cell < innermost.length; cell++) {
+            int d = innermost[cell];
+            if (d < 0) {
+                innermost[cell] = -1; // NODATA
+                continue;
+            }
+            double z = elevation(cell);
+            while (d > 0 && spillElevation[d] <= z) {
+                d = parent[d] == NONE ? 0 : parent[d];
+            }
+            innermost[cell] = d;
+            if (d > 0) {
+                cellCount[d]++;
+                sumZ[d] += z;
+            }
+        }
+        volume = new double[nodes];
+        double cellArea = dem.getHeader().getCellsize() * dem.getHeader().getCellsize();
+        for (int d = 1; d < nodes; d++) {
+            if (parent[d] != NONE) {
+                cellCount[parent[d]] += cellCount[d];
+                sumZ[parent[d]] += sumZ[d];
+            }
+            volume[d] = (cellCount[d] * spillElevation[d] - sumZ[d]) * cellArea;
+        }
+    }
+
+    private byte classify(int row, int col) {
+        if (dem.isNoData(row, col)) {
+            return NODATA;
+        }
+        double center = dem.getDouble(row, col);
+        boolean lower = false;
+        for (int k = 0; k < Neighborhood.SIZE; k++) {
+            int r = row + Neighborhood.ROW[k];
+            int c = col + Neighborhood.COL[k];
+            if (!isInside(r, c) || dem.isNoData(r, c)) {
+                return OUTLET;
+            }
+            lower |= dem.getDouble(r, c) < center;
+        }
+        return lower ? NORMAL : NO_LOWER;
+    }
+
+    private double elevation(int cell) {
+        return dem.getDouble(cell / cols, cell % cols);
+    }
+
+    private boolean isInside(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * 叶子洼地（洼底）个数。
+     */
+    public int getPitCount() {
+        return pits;
+    }
+
+    /**
+     * 洼地总数（叶子洼地与上层洼地）。
+     */
+    public int getDepressionCount() {
+        return depressions;
+    }
+
+    /**
+     * 上层洼地编号，顶层洼地返回 0。
+     */
+    public int getParent(int id) {
+        return parent[id] == NONE ? 0 : parent[id];
+    }
+
+    public double getPitElevation(int id) {
+        return pitElevation[id];
+    }
+
+    public double getSpillElevation(int id) {
+        return spillElevation[id];
+    }
+
+    public double getDepth(int id) {
+        return spillElevation[id] - pitElevation[id];
+    }
+
+    /**
+     * 低于溢出高程的像元数。
+     */
+    public long getCellCount(int id) {
+        return cellCount[id];
+    }
+
+    /**
+     * 填到溢出高程所需的容积（高程单位 x 像元面积）。
+     */
+    public double getVolume(int id) {
+        return volume[id];
+    }
+
+    /**
+     * 每个像元所在的最内层洼地编号（INT32），不在任何洼地内为 0，NODATA 为 -1。
+     */
+    public WritableGrid getLabels() {
+        WritableGrid labels = Grids.create(DataType.INT32, dem.getHeader().withNODATA_value(-1));
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                labels.setDouble(i, j, innermost[i * cols + j]);
+            }
+        });
+        return labels;
+    }
+
+    /**
+     * 输出洼地表（CSV），每行一个洼地：编号、上层洼地、溢出时流入的洼地（0 为流出栅格）、洼底与溢出点的行列号及高程、
+     * 深度、像元数、面积和容积。
+     */
+    public void writeTable(Path path) throws IOException {
+        double cellArea = dem.getHeader().getCellsize() * dem.getHeader().getCellsize();
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("id,parent,overflow,pit_row,pit_col,pit_elevation,spill_row,spill_col,spill_elevation,"
+                    + "depth,cells,area,volume\n");
+            StringBuilder line = new StringBuilder();
+            for (int d = 1; d <= depressions; d++) {
+                line.setLength(0);
+                line.append(d).append(',').append(getParent(d)).append(',').append(overflow[d]).append(',')
+                        .append(pitCell[d] / cols).append(',').append(pitCell[d] % cols).append(',')
+                        .append(pitElevation[d]).append(',')
+                        .append(spillCell[d] / cols).append(',').append(spillCell[d] % cols).append(',')
+                        .append(spillElevation[d]).append(',')
+                        .append(getDepth(d)).append(',').append(cellCount[d]).append(',')
+                        .append(cellCount[d] * cellArea).append(',').append(volume[d]).append('\n');
+                writer.write(line.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package hydrology;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 填洼后平坦区的流向解析（Barnes 等 2014：远离高地的梯度与趋向低地的梯度叠加）。
+ * <p>
+ * 填洼得到的湖面、谷底完全水平，D8 在这些像元上没有下坡方向。本类为每个平坦区内的像元计算一个整数增量：
+ * 离出口（低边缘）越远、离周围高地（高边缘）越近，增量越大。按增量取下降方向即可把水流引向出口且不形成环路；
+ * 也可以把 ε·增量 加到高程上（ε 小于最小非零高差除以最大增量）后再交给任意流向算法。
+ * <p>
+ * 全部状态存放在按像元下标的紧凑数组中，各步均为广度优先遍历，总耗时 O(像元数)；标记平坦区后，
+ * 各平坦区的梯度互不相关，并行计算。与栅格边缘或 NODATA 相邻且无下坡邻居的像元视为向栅格外排水的出口，与填洼一致。
+ */
+public class FlatResolver {
+
+    private static final byte NODATA = -2;
+    private static final byte NO_FLOW = -1;
+    private static final byte OUTSIDE = 8; // 向栅格外排水
+
+    private final Grid dem;
+    private final int rows;
+    private final int cols;
+
+    private byte[] directions; // 0~7 为 Neighborhood 的方向序号
+    private int[] labels;      // 平坦区编号，0 为不属于任何可排水的平坦区
+    private int[] increments;
+    private int flats;
+
+    public FlatResolver(Grid filledDEM) {
+        this.dem = filledDEM;
+        this.rows = filledDEM.rows();
+        this.cols = filledDEM.cols();
+    }
+
+    /**
+     * 计算平坦区增量栅格（INT32）：平坦区及其低边缘像元为正整数，其余有效像元为 0，NODATA 为 -1。
+     */
+    public WritableGrid calculateIncrements() {
+        resolve();
+        WritableGrid result = Grids.create(DataType.INT32, dem.getHeader().withNODATA_value(-1));
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                int cell = i * cols + j;
+                result.setDouble(i, j, directions[cell] == NODATA ? -1 : increments[cell]);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 计算 D8 流向（INT32，编码见 {@link Neighborhood#D8_CODES}）：有下坡邻居的像元取最陡下降方向，
+     * 平坦区内的像元按增量取下降方向；向栅格外排水或无法排水的像元为 0，NODATA 为 -1。
+     */
+    public WritableGrid resolveDirections() {
+        resolve();
+        int[] offsets = Neighborhood.offsets(cols);
+        WritableGrid result = Grids.create(DataType.INT32, dem.getHeader().withNODATA_value(-1));
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                int cell = i * cols + j;
+                int dir = directions[cell];
+                if (dir == NO_FLOW && labels[cell] != 0) {
+                    // 流向同一平坦区内增量最小且小于自身的邻居
+                    int lowest = increments[cell];
+                    for (int k = 0; k < Neighborhood.SIZE; k++) {
+                        int neighbor = cell + offsets[k];
+                        if (isInside(i + Neighborhood.ROW[k], j + Neighborhood.COL[k])
+                                && labels[neighbor] == labels[cell] && increments[neighbor] < lowest) {
+                            lowest = increments[neighbor];
+                            dir = k;
+                        }
+                    }
+                }
+                int code;
+                if (dir == NODATA) {
+                    code = -1;
+                } else if (dir == NO_FLOW || dir == OUTSIDE) {
+                    code = 0;
+                } else {
+                    code = Neighborhood.D8_CODES[dir];
+                }
+                result.setDouble(i, j, code);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 可排水的平坦区个数。
+     */
+    public int getFlatCount() {
+        resolve();
+        return flats;
+    }
+
+    private synchronized void resolve() {
+        if (increments != null) {
+            return;
+        }
+        int cells = rows * cols;
+        int[] offsets = Neighborhood.offsets(cols);
+        directions = new byte[cells];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                directions[i * cols + j] = steepestDescent(i, j);
+            }
+        });
+
+        // 从每个低边缘（有出路且邻接同高程无流向像元）出发，给同高程连通区域编号
+        labels = new int[cells];
+        int[] queue = new int[cells];
+        int[] sizes = new int[16];
+        int label = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (labels[cell] != 0 || !isLowEdge(cell, offsets)) {
+                continue;
+            }
+            if (++label == sizes.length) {
+                sizes = Arrays.copyOf(sizes, label * 2);
+            }
+            double z = elevation(cell);
+            int head = 0, tail = 0;
+            labels[cell] = label;
+            queue[tail++] = cell;
+            while (head < tail) {
+                int c = queue[head++];
+                int row = c / cols, col = c % cols;
+                for (int k = 0; k < Neighborhood.SIZE; k++) {
+                    int n = c + offsets[k];
+                    if (isInside(row + Neighborhood.ROW[k], col + Neighborhood.COL[k]) && labels[n] == 0
+                            && directions[n] != NODATA && elevation(n) == z) {
+                        labels[n] = label;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+            sizes[label] = tail;
+        }
+        flats = label;
+
+        // 按平坦区归集低边缘与高边缘（计数排序），每个平坦区的 BFS 队列与之同构，只用 queue 中属于自己的一段
+        int[] lowStart = new int[flats + 2];
+        int[] highStart = new int[flats + 2];
+        for (int cell = 0; cell < cells; cell++) {
+            if (labels[cell] != 0) {
+                if (isLowEdge(cell, offsets)) {
+                    lowStart[labels[cell] + 1]++;
+                } else if (isHighEdge(cell, offsets)) {
+                    highStart[labels[cell] + 1]++;
+                }
+            }
+        }
+        int[] queueStart = new int[flats + 2];
+        for (int f = 1; f <= flats; f++) {
+            lowStart[f + 1] += lowStart[f];
+            highStart[f + 1] += highStart[f];
+            queueStart[f + 1] = queueStart[f] + sizes[f];
+        }
+        int[] low = new int[lowStart[flats + 1]];
+        int[] high = new int[highStart[flats + 1]];
+        int[] lowFill = lowStart.clone();
+        int[] highFill = highStart.clone();
+        for (int cell = 0; cell < cells; cell++) {
+            if (labels[cell] != 0) {
+                if (isLowEdge(cell, offsets)) {
+                    low[lowFill[labels[cell]]++] = cell;
+                } else if (isHighEdge(cell, offsets)) {
+                    high[highFill[labels[cell]]++] = cell;
+                }
+            }
+        }
+
+        increments = new int[cells];
+        IntStream.rangeClosed(1, flats).parallel().forEach(f -> buildGradients(f, queue, queueStart[f],
+                low, lowStart[f], lowStart[f + 1], high, highStart[f], highStart[f + 1], offsets));
+    }
+
+    // 单个平坦区：先从高边缘出发得到远离高地的步数，再从低边缘出发叠加趋向低地的梯度（权重为 2，保证后者占优）
+    private void buildGradients(int flat, int[] queue, int base, int[] low, int lowFrom, int lowTo,
+                                int[] high, int highFrom, int highTo, int[] offsets) {
+        int tail = base;
+        for (int h = highFrom; h < highTo; h++) {
+            increments[high[h]] = 1;
+            queue[tail++] = high[h];
+        }
+        tail = bfs(flat, queue, base, tail, offsets, true, 0);
+        int flatHeight = tail > base ? increments[queue[tail - 1]] : 0; // 最后入队的像元离高边缘最远
+
+        // 取负作为“远离高地的梯度尚未叠加”的标记
+        for (int c = base; c < tail; c++) {
+            increments[queue[c]] = -increments[queue[c]];
+        }
+        tail = base;
+        for (int l = lowFrom; l < lowTo; l++) {
+            increments[low[l]] = 2;
+            queue[tail++] = low[l];
+        }
+        bfs(flat, queue, base, tail, offsets, false, flatHeight);
+    }
+
+    // 分层广度优先遍历，只经过本平坦区内无流向的像元；返回遍历结束时的队尾
+    private int bfs(int flat, int[] queue, int base, int tail, int[] offsets, boolean away, int flatHeight) {
+        int head = base;
+        int levelEnd = tail;
+        int level = 1;
+        while (head < tail) {
+            if (head == levelEnd) {
+                level++;
+                levelEnd = tail;
+            }
+            int c = queue[head++];
+            int row = c / cols, col = c % cols;
+            for (int k = 0; k < Neighborhood.SIZE; k++) {
+                int n = c + offsets[k];
+                if (!isInside(row + Neighborhood.ROW[k], col + Neighborhood.COL[k]) || labels[n] != flat
+                        || directions[n] != NO_FLOW) {
+                    continue;
+                }
+                if (away) {
+                    if (increments[n] == 0) {
+                        increments[n] = level + 1;
+                        queue[tail++] = n;
+                    }
+                } else if (increments[n] <= 0) {
+                    int towards = 2 * (level + 1);
+                    increments[n] = increments[n] < 0 ? flatHeight + increments[n] + towards : towards;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return tail;
+    }
+
+    // 最陡下降方向（按高差）；没有更低的邻居时，栅格边缘或邻接 NODATA 的像元向外排水，其余为无流向
+    private byte steepestDescent(int row, int col) {
+        if (dem.isNoData(row, col)) {
+            return NODATA;
+        }
+        double center = dem.getDouble(row, col);
+        double maxDrop = 0;
+        byte dir = NO_FLOW;
+        boolean edge = false;
+        for (int k = 0; k < Neighborhood.SIZE; k++) {
+            int r = row + Neighborhood.ROW[k];
+            int c = col + Neighborhood.COL[k];
+            if (!isInside(r, c) || dem.isNoData(r, c)) {
+                edge = true;
+                continue;
+            }
+            double drop = center - dem.getDouble(r, c);
+            if (drop > maxDrop) {
+                maxDrop = drop;
+                dir = (byte) k;
+            }
+        }
+        return dir == NO_FLOW && edge ? OUTSIDE : dir;
+    }
+
+    private boolean isLowEdge(int cell, int[] offsets) {
+        if (directions[cell] < 0) {
+            return false;
+        }
+        int row = cell / cols, col = cell % cols;
+        double z = elevation(cell);
+        for (int k = 0; k < Neighborhood.SIZE; k++) {
+            int n = cell + offsets[k];
+            if (isInside(row + Neighborhood.ROW[k], col + Neighborhood.COL[k]) && directions[n] == NO_FLOW
+                    && elevation(n) == z) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isHighEdge(int cell, int[] offsets) {
+        if (directions[cell] != NO_FLOW) {
+            return false;
+        }
+        int row = cell / cols, col = cell % cols;
+        double z = elevation(cell);
+        for (int k = 0; k < Neighborhood.SIZE; k++) {
+            int n = cell + offsets[k];
+            if (isInside(row + Neighborhood.ROW[k], col + Neighborhood.COL[k]) && directions[n] != NODATA
+                    && elevation(n) > z) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double elevation(int cell) {
+        return dem.getDouble(cell / cols, cell % cols);
+    }
+
+    private boolean isInside(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+}
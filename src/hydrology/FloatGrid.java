@@ -0,0 +1,84 @@
+package hydrology;
+
+/**
+ * 单精度浮点栅格，按行优先存储在一维数组中。
+ */
+public class FloatGrid implements WritableGrid {
+    private final GridHeader header;
+    private final int ncols;
+    private final float[] data;
+
+    public FloatGrid(GridHeader header) {
+        this(header, new float[Grids.checkedSize(header)]);
+    }
+
+    public FloatGrid(GridHeader header, float[] data) {
+        if (data.length != header.cellCount()) {
+            throw new IllegalArgumentException("数组长度 " + data.length + " 与栅格大小 " + header.cellCount() + " 不符");
+        }
+        this.header = header;
+        this.ncols = header.getNcols();
+        this.data = data;
+    }
+
+    @Override
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.FLOAT32;
+    }
+
+    public float get(int row, int col) {
+        return data[row * ncols + col];
+    }
+
+    public void set(int row, int col, float value) {
+        data[row * ncols + col] = value;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        data[index] = value;
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return data[row * ncols + col];
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return data[index];
+    }
+
+    @Override
+    public void setDouble(int row, int col, double value) {
+        data[row * ncols + col] = (float) value;
+    }
+
+    @Override
+    public void setDouble(int index, double value) {
+        data[index] = (float) value;
+    }
+
+    @Override
+    public void readRow(int row, double[] dst) {
+        int offset = row * ncols;
+        for (int j = 0; j < ncols; j++) {
+            dst[j] = data[offset + j];
+        }
+    }
+
+    /**
+     * 底层数组（行优先）。
+     */
+    public float[] getData() {
+        return data;
+    }
+}
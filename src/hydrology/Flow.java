@@ -1,45 +1,49 @@
 package hydrology;
 
 public class Flow {
-    private int[][] dem;
-    private int NODATA_value;
-    private int nrows, ncols;
+    // 流向编码 0~7 依次为 上、右上、右、右下、下、左下、左、左上
+    private static final int[] ROW = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] COL = {0, 1, 1, 1, 0, -1, -1, -1};
 
-    public Flow(int[][] dem, int NODATA_value) {
+    private final Grid dem;
+    private final int nrows, ncols;
+    private final int[] offsets;
+
+    public Flow(Grid dem) {
         this.dem = dem;
-        this.NODATA_value = NODATA_value;
-        this.nrows = dem.length;
-        this.ncols = dem[0].length;
+        this.nrows = dem.rows();
+        this.ncols = dem.cols();
+        this.offsets = Neighborhood.offsets(ROW, COL, dem.stride());
     }
 
     /**
      * 计算每个单元格的流向。
-     * @return 返回包含流向值的二维数组。
+     * @return 返回流向栅格（0~7，无流向或NODATA为-1）。
      */
-    public int[][] calculateFlowDirection() {
-        int[][] directions = {{-1, 0}, {-1, 1}, {0, 1}, {1, 1}, {1, 0}, {1, -1}, {0, -1}, {-1, -1}};
-        int[][] flowDirection = new int[nrows][ncols];
+    public WritableGrid calculateFlowDirection() {
+        WritableGrid flowDirection = Grids.create(DataType.INT32, dem.getHeader().withNODATA_value(-1));
 
         for (int i = 0; i < nrows; i++) {
             for (int j = 0; j < ncols; j++) {
-                if (dem[i][j] != NODATA_value) {
-                    int minElevation = Integer.MAX_VALUE;
-                    int flowDir = -1;
-
-                    for (int k = 0; k < directions.length; k++) {
-                        int newRow = i + directions[k][0];
-                        int newCol = j + directions[k][1];
-
-                        if (isValidCell(newRow, newCol) && dem[newRow][newCol] < minElevation && dem[newRow][newCol] != NODATA_value) {
-                            minElevation = dem[newRow][newCol];
+                int index = dem.index(i, j);
+                int flowDir = -1;
+                if (!dem.isNoData(index)) {
+                    double minElevation = Double.POSITIVE_INFINITY;
+                    boolean interior = Neighborhood.isInterior(i, j, nrows, ncols);
+
+                    for (int k = 0; k < offsets.length; k++) {
+                        if (!interior && !isValidCell(i + ROW[k], j + COL[k])) {
+                            continue;
+                        }
+                        int neighbor = index + offsets[k];
+                        double elevation = dem.getDouble(neighbor);
+                        if (elevation < minElevation && !dem.isNoData(neighbor)) {
+                            minElevation = elevation;
                             flowDir = k;
                         }
                     }
-
-                    flowDirection[i][j] = flowDir;
-                } else {
-                    flowDirection[i][j] = -1;
                 }
+                flowDirection.setDouble(index, flowDir);
             }
         }
 
@@ -48,66 +52,44 @@ public class Flow {
 
     /**
      * 计算每个单元格的累积流。
-     * @param direction 包含流向值的二维数组。
-     * @return 返回包含累积流值的二维数组。
+     * @param direction 流向栅格。
+     * @return 返回累积流栅格。
      */
-    public int[][] calculateFlowAccumulation(int[][] direction) {
-        int[][] flowAccumulation = new int[nrows][ncols];
+    public WritableGrid calculateFlowAccumulation(Grid direction) {
+        WritableGrid acc = Grids.create(DataType.INT32, dem.getHeader().withNODATA_value(0));
 
         // 初始化有效的单元格流量为1（每个有效单元至少有一个单位的流量）
-        for (int i = 0; i < nrows; i++) {
-            for (int j = 0; j < ncols; j++) {
-                if (dem[i][j] != NODATA_value) {
-                    flowAccumulation[i][j] = 1;
-                }
+        int cells = nrows * ncols;
+        for (int index = 0; index < cells; index++) {
+            if (!dem.isNoData(index)) {
+                acc.setDouble(index, 1);
             }
         }
 
         // 正向遍历
         for (int i = 0; i < nrows; i++) {
             for (int j = 0; j < ncols; j++) {
-                if (direction[i][j] != -1) {
-                    int[] dir = getDirection(direction[i][j]);
-                    int newRow = i + dir[0];
-                    int newCol = j + dir[1];
-
-                    if (isValidCell(newRow, newCol)) {
-                        flowAccumulation[newRow][newCol] += flowAccumulation[i][j];
-                    }
-                }
+                accumulate(acc, direction, i, j);
             }
         }
 
         // 逆向遍历
         for (int i = nrows - 1; i >= 0; i--) {
             for (int j = ncols - 1; j >= 0; j--) {
-                if (direction[i][j] != -1) {
-                    int[] dir = getDirection(direction[i][j]);
-                    int newRow = i + dir[0];
-                    int newCol = j + dir[1];
-
-                    if (isValidCell(newRow, newCol)) {
-                        flowAccumulation[newRow][newCol] += flowAccumulation[i][j];
-                    }
-                }
+                accumulate(acc, direction, i, j);
             }
         }
 
-        return flowAccumulation;
+        return acc;
     }
 
-    // 获取流向方向
-    private int[] getDirection(int flowDir) {
-        switch (flowDir) {
-            case 0: return new int[]{-1, 0};  // 上
-            case 1: return new int[]{-1, 1};  // 右上
-            case 2: return new int[]{0, 1};   // 右
-            case 3: return new int[]{1, 1};   // 右下
-            case 4: return new int[]{1, 0};   // 下
-            case 5: return new int[]{1, -1};  // 左下
-            case 6: return new int[]{0, -1};  // 左
-            case 7: return new int[]{-1, -1}; // 左上
-            default: return new int[]{0, 0};
+    // 将单元格的累积流加到其流向的下游单元格
+    private void accumulate(WritableGrid acc, Grid direction, int row, int col) {
+        int index = row * ncols + col;
+        int k = (int) direction.getDouble(index);
+        if (k >= 0 && k < offsets.length && isValidCell(row + ROW[k], col + COL[k])) {
+            int downstream = index + offsets[k];
+            acc.setDouble(downstream, acc.getDouble(downstream) + acc.getDouble(index));
         }
     }
 
@@ -115,4 +97,4 @@ public class Flow {
     private boolean isValidCell(int row, int col) {
         return row >= 0 && row < nrows && col >= 0 && col < ncols;
     }
-}
\ No newline at end of file
+}
@@ -1,89 +1,81 @@
 package hydrology;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.stream.IntStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class FlowMix {
 
-    private static final int[] D8_DIRECTIONS = {64, 128, 1, 2, 4, 8, 16, 32};
-    private static final int[][] DIRECTIONS = {
-            {-1, -1}, {-1, 0}, {-1, 1},
-            {0, -1},           {0, 1},
-            {1, -1},  {1, 0},  {1, 1}
-    };
+    private final Grid slopes;
+    private final Grid filledDEM;
+    private final BitMask steep; // 陡峭像元的掩膜
+    private final int NODATA_value;
+    private final int rows;
+    private final int cols;
+    private final int[] offsets;
 
-    private double[][] slopes;
-    private int[][] filledDEM;
-    private boolean[][] isSteep;
-    private int NODATA_value;
+    public FlowMix(Grid slopes, Grid filledDEM, Grid isSteep, int NODATA_value) {
+        this(slopes, filledDEM, BitMask.of(isSteep, TerrainClassify.STEEP), NODATA_value);
+    }
 
-    public FlowMix(double[][] slopes, int[][] filledDEM, boolean[][] isSteep, int NODATA_value) {
+    /**
+     * @param steep 陡峭像元的掩膜（见 {@link TerrainClassify#classifySteepMask}）。
+     */
+    public FlowMix(Grid slopes, Grid filledDEM, BitMask steep, int NODATA_value) {
         this.slopes = slopes;
         this.filledDEM = filledDEM;
-        this.isSteep = isSteep;
+        this.steep = steep;
         this.NODATA_value = NODATA_value;
+        this.rows = slopes.rows();
+        this.cols = slopes.cols();
+        this.offsets = Neighborhood.offsets(slopes.stride());
     }
 
     /**
      * 计算流向。
      */
-    public int[][] calculateFlow() {
-        int rows = slopes.length;
-        int cols = slopes[0].length;
-        AtomicIntegerArray flowDirections = new AtomicIntegerArray(rows * cols);
+    public WritableGrid calculateFlow() {
+        WritableGrid flowDirections = Grids.create(DataType.INT32, slopes.getHeader().withNODATA_value(NODATA_value));
 
-        // 使用并行流来加速计算
+        // 按行并行计算，每个单元格只由一个线程写入
         IntStream.range(0, rows).parallel().forEach(i -> {
-            IntStream.range(0, cols).parallel().forEach(j -> {
-                if (Double.isNaN(slopes[i][j]) || slopes[i][j] == NODATA_value) {
+            for (int j = 0; j < cols; j++) {
+                int index = i * cols + j;
+                if (slopes.isNoData(index)) {
                     // NODATA 或无效数据
-                    flowDirections.set(i * cols + j, NODATA_value);
+                    flowDirections.setDouble(index, NODATA_value);
+                } else if (steep.get(index)) {
+                    // 陡峭地区使用D8算法
+                    flowDirections.setDouble(index, d8(i, j, index));
                 } else {
-                    // 根据是否为陡峭地区选择算法
-                    if (isSteep[i][j]) {
-                        // 使用D8算法
-                        flowDirections.set(i * cols + j, d8(i, j));
-                    } else {
-                        // 使用多流向算法
-                        flowDirections.set(i * cols + j, multiFlowAlgorithm(i, j));
-                    }
+                    // 平缓地区使用多流向算法
+                    flowDirections.setDouble(index, multiFlowAlgorithm(i, j, index));
                 }
-            });
-        });
-
-        // 将AtomicIntegerArray转换回二维数组
-        int[][] result = new int[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result[i][j] = flowDirections.get(i * cols + j);
             }
-        }
+        });
 
-        return result;
+        return flowDirections;
     }
 
     /**
      * 使用D8算法计算流向。
      */
-    private int d8(int row, int col) {
+    private int d8(int row, int col, int index) {
         int maxDir = 0;
         double maxDiff = Double.NEGATIVE_INFINITY;
+        double center = filledDEM.getDouble(index);
 
-        for (int dir = 0; dir < 8; dir++) {
-            int r = row + DIRECTIONS[dir][0];
-            int c = col + DIRECTIONS[dir][1];
-
-            if (isValid(r, c) && filledDEM[r][c] < filledDEM[row][col]) {
-                double diff = filledDEM[row][col] - filledDEM[r][c];
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            int neighbor = index + offsets[dir];
+            if (isValid(row + Neighborhood.ROW[dir], col + Neighborhood.COL[dir], neighbor)
+                    && filledDEM.getDouble(neighbor) < center) {
+                double diff = center - filledDEM.getDouble(neighbor);
                 if (diff > maxDiff) {
                     maxDiff = diff;
-                    maxDir = D8_DIRECTIONS[dir];
+                    maxDir = Neighborhood.D8_CODES[dir];
                 }
             }
         }
@@ -94,26 +86,22 @@ public class FlowMix {
     /**
      * 使用多流向算法计算流向。
      */
-    private int multiFlowAlgorithm(int row, int col) {
-        double[] di = new double[8];
+    private int multiFlowAlgorithm(int row, int col, int index) {
+        double[] di = new double[Neighborhood.SIZE];
         double sumDi = 0.0;
 
-        for (int dir = 0; dir < 8; dir++) {
-            int r = row + DIRECTIONS[dir][0];
-            int c = col + DIRECTIONS[dir][1];
-
-            if (isValid(r, c)) {
-                double Li = lineFactor(row, col, r, c);
-                double tanBeta = Math.tan(Math.toRadians(slopes[r][c]));
-                di[dir] = Math.pow(tanBeta,5) * Li;
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            int neighbor = index + offsets[dir];
+            if (isValid(row + Neighborhood.ROW[dir], col + Neighborhood.COL[dir], neighbor)) {
+                double Li = lineFactor(index, neighbor, dir);
+                double tanBeta = Math.tan(Math.toRadians(slopes.getDouble(neighbor)));
+                di[dir] = Math.pow(tanBeta, 5) * Li;
                 sumDi += di[dir];
-            } else {
-                di[dir] = 0.0;
             }
         }
 
         int flowDirection = 0;
-        for (int dir = 0; dir < 8; dir++) {
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
             if (di[dir] > 0.0 && di[dir] / sumDi >= 0.5) {
                 flowDirection |= 1 << dir;
             }
@@ -123,54 +111,54 @@ public class FlowMix {
     }
 
     /**
-     * 计算等高线长度加权因子Li。
+     * 计算等高线长度加权因子Li（调用方已确认邻居有效）。
      */
-    private double lineFactor(int centerRow, int centerCol, int neighborRow, int neighborCol) {
-        if (!isValid(neighborRow, neighborCol)) {
-            return 0.0;
-        }
-
-        int heightDiff = filledDEM[neighborRow][neighborCol] - filledDEM[centerRow][centerCol];
-        if (heightDiff <= 0) {
-            if ((Math.abs(neighborRow - centerRow) == 1 && Math.abs(neighborCol - centerCol) == 1)) {
-                return 0.5 * Math.sqrt(2); // 对角线距离
-            } else if ((Math.abs(neighborRow - centerRow) == 1 || Math.abs(neighborCol - centerCol) == 1)) {
-                return 0.5; // 直线距离
-            } else {
-                return 0.0;
-            }
-        } else {
-            return 0.0;
+    private double lineFactor(int center, int neighbor, int dir) {
+        if (filledDEM.getDouble(neighbor) - filledDEM.getDouble(center) <= 0) {
+            return Neighborhood.isDiagonal(dir) ? 0.5 * Math.sqrt(2) : 0.5;
         }
+        return 0.0;
     }
 
     /**
      * 检查给定的行列索引是否有效。
      */
-    private boolean isValid(int row, int col) {
-        return row >= 0 && row < slopes.length && col >= 0 && col < slopes[0].length &&
-                !Double.isNaN(slopes[row][col]) && slopes[row][col] != NODATA_value &&
-                filledDEM[row][col] != NODATA_value;
+    private boolean isValid(int row, int col, int index) {
+        return row >= 0 && row < rows && col >= 0 && col < cols &&
+                !slopes.isNoData(index) && !filledDEM.isNoData(index);
     }
 
     // 输出流向结果到CSV文件的方法
     public void outputToCSV(String filePath) throws IOException {
-        Path path = Paths.get(filePath);
-
-        // 确保目录存在
-        Files.createDirectories(path.getParent());
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (int[] row : calculateFlow()) { // 或者使用预先计算的结果
-                for (int i = 0; i < row.length; i++) {
-                    if (i > 0) writer.write(","); // 添加逗号分隔符
-                    writer.write(Integer.toString(row[i]));
-                }
-                writer.newLine();
-            }
+        Grid flowDirections = calculateFlow(); // 或者使用预先计算的结果
+        try {
+            new GridTextWriter().writeCsv(Paths.get(filePath), flowDirections);
         } catch (IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
             throw e;
+        } finally {
+            Grids.release(flowDirections);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 将流向结果以二进制栅格格式（.hgr）输出。
+     */
+    public void outputToRaster(Path path, Grid flowDirections) throws IOException {
+        RasterFile.write(path, flowDirections);
+    }
+
+    /**
+     * 将流向结果以分块压缩的GeoTIFF输出，crs 为 null 时沿用输入DEM的坐标系，未知时不写坐标系。
+     */
+    public void outputToGeoTiff(Path path, Grid flowDirections, CoordinateReferenceSystem crs) throws IOException {
+        GeoTiffIO.write(path, flowDirections, crs);
+    }
+
+    /**
+     * 将流向结果以按行块压缩的二进制栅格（.hgz）输出，双精度结果按单精度存储。
+     */
+    public void outputToCompressed(Path path, Grid flowDirections) throws IOException {
+        CompressedRaster.write(path, flowDirections, CompressedRaster.Codec.LZ4, true);
+    }
+}
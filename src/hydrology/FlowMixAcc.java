@@ -1,94 +1,90 @@
 package hydrology;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.stream.IntStream;
 
 public class FlowMixAcc {
-    private static final int[] D8_DIRECTIONS = {64, 128, 1, 2, 4, 8, 16, 32};
-    private static final int[][] DIRECTIONS = {
-            {-1, -1}, {-1, 0}, {-1, 1},
-            {0, -1},           {0, 1},
-            {1, -1},  {1, 0},  {1, 1}
-    };
-
-    private double[][] slopes;
-    private int[][] filledDEM;
-    private boolean[][] isSteep;
-    private int NODATA_value;
-    private int nrows;
-    private int ncols;
-
-    public FlowMixAcc(double[][] slopes, int[][] filledDEM, boolean[][] isSteep, int NODATA_value) {
+
+    private final Grid slopes;
+    private final Grid filledDEM;
+    private final BitMask steep; // 陡峭像元的掩膜
+    private final int NODATA_value;
+    private final int nrows;
+    private final int ncols;
+    private final int[] offsets;
+
+    public FlowMixAcc(Grid slopes, Grid filledDEM, Grid isSteep, int NODATA_value) {
+        this(slopes, filledDEM, BitMask.of(isSteep, TerrainClassify.STEEP), NODATA_value);
+    }
+
+    /**
+     * @param steep 陡峭像元的掩膜（见 {@link TerrainClassify#classifySteepMask}）。
+     */
+    public FlowMixAcc(Grid slopes, Grid filledDEM, BitMask steep, int NODATA_value) {
         this.slopes = slopes;
         this.filledDEM = filledDEM;
-        this.isSteep = isSteep;
+        this.steep = steep;
         this.NODATA_value = NODATA_value;
-        this.nrows = slopes.length;
-        this.ncols = slopes[0].length;
+        this.nrows = slopes.rows();
+        this.ncols = slopes.cols();
+        this.offsets = Neighborhood.offsets(slopes.stride());
     }
 
     /**
      * 计算累积流。
      */
-    public double[][] calculateFlowAccumulation() {
-        double[][] flowAcc = new double[nrows][ncols];
+    public WritableGrid calculateFlowAccumulation() {
+        WritableGrid acc = Grids.create(DataType.FLOAT64, slopes.getHeader().withNODATA_value(NODATA_value));
 
-        // 初始化有效的单元格流量为1（每个有效单元至少有一个单位的流量）
+        // 初始化有效的单元格流量为1（每个有效单元至少有一个单位的流量），无效单元格为NODATA
         for (int i = 0; i < nrows; i++) {
             for (int j = 0; j < ncols; j++) {
-                if (isValidCell(i, j)) {
-                    flowAcc[i][j] = 1;
-                }
+                int index = i * ncols + j;
+                acc.setDouble(index, isValidCell(i, j, index) ? 1 : NODATA_value);
             }
         }
 
         // 使用并行流来加速计算
         IntStream.range(0, nrows).parallel().forEach(i -> {
-            IntStream.range(0, ncols).parallel().forEach(j -> {
-                if (isValidCell(i, j)) {
-                    updateFlowAccumulation(flowAcc, i, j);
+            for (int j = 0; j < ncols; j++) {
+                int index = i * ncols + j;
+                if (isValidCell(i, j, index)) {
+                    updateFlowAccumulation(acc, i, j, index);
                 }
-            });
+            }
         });
 
-        return flowAcc;
+        return acc;
 
     }
 
     /**
      * 更新累积流值。
      */
-    private void updateFlowAccumulation(double[][] flowAccumulation, int row, int col) {
-        double[] di = new double[8];
-        double sumDi = 0.0;
-
+    private void updateFlowAccumulation(WritableGrid flowAccumulation, int row, int col, int index) {
         // 根据是否为陡峭地区选择算法
-        if (isSteep[row][col]) {
-            d8Algorithm(row, col, flowAccumulation);
+        if (steep.get(index)) {
+            d8Algorithm(row, col, index, flowAccumulation);
         } else {
-            multiFlowAlgorithm(row, col, flowAccumulation, di, sumDi);
+            multiFlowAlgorithm(row, col, index, flowAccumulation);
         }
     }
 
     /**
      * 使用D8算法更新累积流。
      */
-    private void d8Algorithm(int row, int col, double[][] flowAccumulation) {
-        int maxDir = 0;
+    private void d8Algorithm(int row, int col, int index, WritableGrid flowAccumulation) {
+        int maxDir = -1;
         double maxDiff = Double.NEGATIVE_INFINITY;
+        double center = filledDEM.getDouble(index);
 
-        for (int dir = 0; dir < 8; dir++) {
-            int r = row + DIRECTIONS[dir][0];
-            int c = col + DIRECTIONS[dir][1];
-
-            if (isValidCell(r, c) && filledDEM[r][c] < filledDEM[row][col]) {
-                double diff = filledDEM[row][col] - filledDEM[r][c];
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            int neighbor = index + offsets[dir];
+            if (isValidCell(row + Neighborhood.ROW[dir], col + Neighborhood.COL[dir], neighbor)
+                    && filledDEM.getDouble(neighbor) < center) {
+                double diff = center - filledDEM.getDouble(neighbor);
                 if (diff > maxDiff) {
                     maxDiff = diff;
                     maxDir = dir;
@@ -96,98 +92,71 @@ public class FlowMixAcc {
             }
         }
 
-        if (maxDiff != Double.NEGATIVE_INFINITY) {
-            int newRow = row + DIRECTIONS[maxDir][0];
-            int newCol = col + DIRECTIONS[maxDir][1];
-            if (isValidCell(newRow, newCol)) {
-                flowAccumulation[newRow][newCol] += flowAccumulation[row][col];
-            }
+        if (maxDir >= 0) {
+            int downstream = index + offsets[maxDir];
+            flowAccumulation.setDouble(downstream,
+                    flowAccumulation.getDouble(downstream) + flowAccumulation.getDouble(index));
         }
     }
 
     /**
      * 使用多流向算法更新累积流。
      */
-    private void multiFlowAlgorithm(int row, int col, double[][] flowAccumulation, double[] di, double sumDi) {
-        for (int dir = 0; dir < 8; dir++) {
-            int r = row + DIRECTIONS[dir][0];
-            int c = col + DIRECTIONS[dir][1];
-
-            if (isValidCell(r, c)) {
-                double Li = lineFactor(row, col, r, c);
-                double tanBeta = Math.tan(Math.toRadians(slopes[r][c]));
+    private void multiFlowAlgorithm(int row, int col, int index, WritableGrid flowAccumulation) {
+        double[] di = new double[Neighborhood.SIZE];
+        double sumDi = 0.0;
+
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            int neighbor = index + offsets[dir];
+            if (isValidCell(row + Neighborhood.ROW[dir], col + Neighborhood.COL[dir], neighbor)) {
+                double Li = lineFactor(index, neighbor, dir);
+                double tanBeta = Math.tan(Math.toRadians(slopes.getDouble(neighbor)));
                 di[dir] = Math.pow(tanBeta, 5) * Li;
                 sumDi += di[dir];
-            } else {
-                di[dir] = 0.0;
             }
         }
 
-        for (int dir = 0; dir < 8; dir++) {
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
             if (di[dir] > 0.0 && di[dir] / sumDi >= 0.5) {
-                int newRow = row + DIRECTIONS[dir][0];
-                int newCol = col + DIRECTIONS[dir][1];
-
-                if (isValidCell(newRow, newCol)) {
-                    flowAccumulation[newRow][newCol] += flowAccumulation[row][col] * (di[dir] / sumDi);
-                }
+                int downstream = index + offsets[dir];
+                flowAccumulation.setDouble(downstream, flowAccumulation.getDouble(downstream)
+                        + flowAccumulation.getDouble(index) * (di[dir] / sumDi));
             }
         }
     }
 
     /**
-     * 计算等高线长度加权因子Li。
+     * 计算等高线长度加权因子Li（调用方已确认邻居有效）。
      */
-    private double lineFactor(int centerRow, int centerCol, int neighborRow, int neighborCol) {
-        if (!isValidCell(neighborRow, neighborCol)) {
-            return 0.0;
-        }
-
-        int heightDiff = filledDEM[neighborRow][neighborCol] - filledDEM[centerRow][centerCol];
-        if (heightDiff <= 0) {
-            if ((Math.abs(neighborRow - centerRow) == 1 && Math.abs(neighborCol - centerCol) == 1)) {
-                return 0.5 * Math.sqrt(2); // 对角线距离
-            } else if ((Math.abs(neighborRow - centerRow) == 1 || Math.abs(neighborCol - centerCol) == 1)) {
-                return 0.5; // 直线距离
-            } else {
-                return 0.0;
-            }
-        } else {
-            return 0.0;
+    private double lineFactor(int center, int neighbor, int dir) {
+        if (filledDEM.getDouble(neighbor) - filledDEM.getDouble(center) <= 0) {
+            return Neighborhood.isDiagonal(dir) ? 0.5 * Math.sqrt(2) : 0.5;
         }
+        return 0.0;
     }
 
     /**
      * 检查目标单元格是否有效。
      */
-    private boolean isValidCell(int row, int col) {
+    private boolean isValidCell(int row, int col, int index) {
         return row >= 0 && row < nrows && col >= 0 && col < ncols &&
-                !Double.isNaN(slopes[row][col]) && slopes[row][col] != NODATA_value &&
-                filledDEM[row][col] != NODATA_value;
+                !slopes.isNoData(index) && !filledDEM.isNoData(index);
     }
 
-    /// 输出累积流结果到CSV文件的方法
-    public void outputToCSV(String filePath, double[][] flowAccumulation) throws IOException {
-        Path path = Paths.get(filePath);
-
-        // 确保目录存在
-        Files.createDirectories(path.getParent());
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (int i = 0; i < nrows; i++) {
-                for (int j = 0; j < ncols; j++) {
-                    if (j > 0) writer.write(",");
-                    if (!isValidCell(i, j)) {
-                        writer.write(Integer.toString(NODATA_value)); // 使用 NODATA_value 变量
-                    } else {
-                        writer.write(Double.toString(flowAccumulation[i][j]));
-                    }
-                }
-                writer.newLine();
-            }
+    /// 输出累积流结果到CSV文件的方法（无效单元已为 NODATA 值）
+    public void outputToCSV(String filePath, Grid flowAccumulation) throws IOException {
+        try {
+            new GridTextWriter().writeCsv(Paths.get(filePath), flowAccumulation);
         } catch (IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 将累积流结果以按行块压缩的二进制栅格（.hgz）输出，双精度结果按单精度存储。
+     */
+    public void outputToCompressed(Path path, Grid flowAccumulation) throws IOException {
+        CompressedRaster.write(path, flowAccumulation, CompressedRaster.Codec.LZ4, true);
+    }
+}
@@ -0,0 +1,270 @@
+package hydrology;
+
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageWriterSpi;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.imageio.geotiff.GeoTiffConstants;
+import org.geotools.coverage.grid.io.imageio.geotiff.GeoTiffIIOMetadataEncoder;
+import org.geotools.coverage.util.CoverageUtilities;
+import org.geotools.gce.geotiff.GeoTiffFormat;
+import org.geotools.gce.geotiff.GeoTiffReader;
+import org.geotools.gce.geotiff.GeoTiffWriteParams;
+import org.geotools.gce.geotiff.GeoTiffWriter;
+import org.geotools.geometry.GeneralEnvelope;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.opengis.coverage.grid.GridEnvelope;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.w3c.dom.Element;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GeoTIFF 读写（基于 gt-geotiff）。
+ * 读取支持按窗口只解码与子区域相交的内部分块；写出为分块、Deflate 压缩的 GeoTIFF。
+ * 读取时坐标参考系统记入 {@link GridHeader#getCrs()}，写出时沿用；坐标系未知时只写像元大小与角点坐标，不写坐标系。
+ */
+public class GeoTiffIO {
+
+    private static final int TILE_SIZE = 256;
+    private static final String COMPRESSION = "Deflate";
+
+    private GeoTiffIO() {}
+
+    /**
+     * 判断文件是否为GeoTIFF。
+     */
+    static boolean isGeoTiff(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".tif") || name.endsWith(".tiff");
+    }
+
+    /**
+     * 读取GeoTIFF的地理参考信息、坐标参考系统与NODATA值，不解码像元。
+     */
+    public static GridHeader readHeader(Path file) throws IOException {
+        GeoTiffReader reader = new GeoTiffReader(file.toFile());
+        try {
+            GridEnvelope range = reader.getOriginalGridRange();
+            GeneralEnvelope envelope = reader.getOriginalEnvelope();
+            int ncols = range.getSpan(0);
+            int nrows = range.getSpan(1);
+            double cellsize = envelope.getSpan(0) / ncols;
+            double NODATA_value = reader.getMetadata().hasNoData() ? reader.getMetadata().getNoData() : -9999;
+            return new GridHeader(nrows, ncols, envelope.getMinimum(0), envelope.getMinimum(1), cellsize, NODATA_value,
+                    crsCode(reader.getCoordinateReferenceSystem()));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    // 投影或地理坐标系记为 "EPSG:xxxx"（查不到代码时为 WKT）；文件未记录坐标系时 gt-geotiff 给出的工程坐标系视为未知
+    private static String crsCode(CoordinateReferenceSystem crs) {
+        if (!(crs instanceof ProjectedCRS || crs instanceof GeographicCRS)) {
+            return null;
+        }
+        try {
+            String code = CRS.lookupIdentifier(crs, false);
+            if (code != null) {
+                return code;
+            }
+        } catch (Exception e) {
+            // 查不到代码时退回 WKT
+        }
+        return crs.toWKT();
+    }
+
+    /**
+     * 读取整幅栅格，存储类型与文件的像元类型一致。
+     */
+    public static WritableGrid readGrid(Path file) throws IOException {
+        GridHeader header = readHeader(file);
+        return readGridWindow(file, header, GridWindow.ofCells(header, 0, 0, header.getNrows(), header.getNcols()));
+    }
+
+    /**
+     * 读取子窗口为栅格，只解码与窗口相交的分块，头部坐标按窗口修正。
+     */
+    public static WritableGrid readGridWindow(Path file, GridHeader header, GridWindow window) throws IOException {
+        int nrows = window.getNrows();
+        int ncols = window.getNcols();
+        Raster raster = readWindow(file, window.getRow0(), window.getCol0(), nrows, ncols);
+        WritableGrid grid = Grids.create(typeOf(raster.getSampleModel().getDataType()), window.apply(header));
+        double[] row = new double[ncols];
+        for (int i = 0; i < nrows; i++) {
+            raster.getSamples(raster.getMinX(), raster.getMinY() + i, ncols, 1, 0, row);
+            for (int j = 0; j < ncols; j++) {
+                grid.setDouble(i, j, row[j]);
+            }
+        }
+        return grid;
+    }
+
+    private static DataType typeOf(int dataBufferType) {
+        switch (dataBufferType) {
+            case DataBuffer.TYPE_BYTE:
+                return DataType.UINT8;
+            case DataBuffer.TYPE_SHORT:
+                return DataType.INT16;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_INT:
+                return DataType.INT32;
+            case DataBuffer.TYPE_FLOAT:
+                return DataType.FLOAT32;
+            default:
+                return DataType.FLOAT64;
+        }
+    }
+
+    private static Raster readWindow(Path file, int row0, int col0, int nrows, int ncols) throws IOException {
+        ImageReader reader = new TIFFImageReaderSpi().createReaderInstance();
+        try (ImageInputStream in = new FileImageInputStream(file.toFile())) {
+            reader.setInput(in);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if (row0 < 0 || col0 < 0 || nrows <= 0 || ncols <= 0 || row0 + nrows > height || col0 + ncols > width) {
+                throw new IllegalArgumentException(String.format("窗口 [%d,%d %dx%d] 超出栅格范围 %dx%d",
+                        row0, col0, nrows, ncols, height, width));
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(col0, row0, ncols, nrows));
+            return reader.canReadRaster() ? reader.readRaster(0, param) : reader.read(0, param).getRaster();
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * 按栅格自身的存储类型写出为分块压缩的GeoTIFF。crs 为 null 时沿用栅格头部的坐标系，仍未知时不写坐标系。
+     */
+    public static void write(Path file, Grid grid, CoordinateReferenceSystem crs) throws IOException {
+        write(file, grid, grid.getType(), crs);
+    }
+
+    /**
+     * 按指定像元类型写出为分块压缩的GeoTIFF，例如将双精度结果以 FLOAT32 写出。
+     */
+    public static void write(Path file, Grid grid, DataType type, CoordinateReferenceSystem crs) throws IOException {
+        WritableRaster raster = RasterFactory.createBandedRaster(bufferTypeOf(type), grid.cols(), grid.rows(), 1, null);
+        double[] row = new double[grid.cols()];
+        for (int i = 0; i < grid.rows(); i++) {
+            grid.readRow(i, row);
+            raster.setSamples(0, i, grid.cols(), 1, 0, row);
+        }
+        write(file, grid.getHeader(), raster, crs);
+    }
+
+    private static int bufferTypeOf(DataType type) {
+        switch (type) {
+            case UINT8: return DataBuffer.TYPE_BYTE;
+            case INT16: return DataBuffer.TYPE_SHORT;
+            case INT32: return DataBuffer.TYPE_INT;
+            case FLOAT32: return DataBuffer.TYPE_FLOAT;
+            default: return DataBuffer.TYPE_DOUBLE;
+        }
+    }
+
+    private static void write(Path file, GridHeader header, WritableRaster raster, CoordinateReferenceSystem crs)
+            throws IOException {
+        if (crs == null && header.getCrs() != null) {
+            crs = crs(header.getCrs());
+        }
+        GeoTiffWriteParams writeParams = new GeoTiffWriteParams();
+        writeParams.setCompressionMode(GeoTiffWriteParams.MODE_EXPLICIT);
+        writeParams.setCompressionType(COMPRESSION);
+        writeParams.setTilingMode(GeoTiffWriteParams.MODE_EXPLICIT);
+        writeParams.setTiling(TILE_SIZE, TILE_SIZE);
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        BufferedImage image = new BufferedImage(PlanarImage.createColorModel(raster.getSampleModel()),
+                raster, false, null);
+        if (crs == null) {
+            writeUnreferenced(file, header, image, writeParams);
+            return;
+        }
+
+        double xll = header.getXllcorner();
+        double yll = header.getYllcorner();
+        ReferencedEnvelope envelope = new ReferencedEnvelope(xll, xll + header.getNcols() * header.getCellsize(),
+                yll, yll + header.getNrows() * header.getCellsize(), crs);
+        Map<String, Object> properties = new HashMap<>();
+        CoverageUtilities.setNoDataProperty(properties, header.getNODATA_value());
+        GridCoverage2D coverage = new GridCoverageFactory().create(file.getFileName().toString(),
+                image, envelope, null, null, properties);
+        ParameterValueGroup params = new GeoTiffFormat().getWriteParameters();
+        params.parameter(AbstractGridFormat.GEOTOOLS_WRITE_PARAMS.getName().toString()).setValue(writeParams);
+        GeoTiffWriter writer = new GeoTiffWriter(file.toFile());
+        try {
+            writer.write(coverage, params.values().toArray(new GeneralParameterValue[0]));
+        } finally {
+            writer.dispose();
+            coverage.dispose(true);
+        }
+    }
+
+    // gt-geotiff 只接受投影或地理坐标系，坐标系未知时直接写 TIFF：只记录像元大小、左上角坐标与 NODATA，不写 GeoKey
+    private static void writeUnreferenced(Path file, GridHeader header, BufferedImage image,
+                                          GeoTiffWriteParams writeParams) throws IOException {
+        GeoTiffIIOMetadataEncoder encoder = new GeoTiffIIOMetadataEncoder();
+        double top = header.getYllcorner() + header.getNrows() * header.getCellsize();
+        encoder.setModelPixelScale(header.getCellsize(), header.getCellsize());
+        encoder.setModelTiePoint(0, 0, header.getXllcorner(), top);
+        encoder.setNoData(header.getNODATA_value());
+
+        ImageWriter writer = new TIFFImageWriterSpi().createWriterInstance();
+        ImageWriteParam param = writeParams.getAdaptee(); // 分块与压缩设置实际记录在 TIFF 写出参数中
+        try (ImageOutputStream out = new FileImageOutputStream(file.toFile())) {
+            ImageTypeSpecifier type = ImageTypeSpecifier.createFromRenderedImage(image);
+            IIOMetadata metadata = writer.convertImageMetadata(writer.getDefaultImageMetadata(type, param), type, param);
+            Element tree = (Element) metadata.getAsTree(GeoTiffConstants.GEOTIFF_IIO_METADATA_FORMAT_NAME);
+            encoder.assignTo(tree);
+            metadata.setFromTree(GeoTiffConstants.GEOTIFF_IIO_METADATA_FORMAT_NAME, tree);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 按EPSG代码（例如 "EPSG:32649"）或 WKT 解析坐标参考系统，与 {@link GridHeader#getCrs()} 的记录方式一致。
+     */
+    public static CoordinateReferenceSystem crs(String code) throws IOException {
+        try {
+            return code.regionMatches(true, 0, "EPSG:", 0, 5) ? CRS.decode(code, true) : CRS.parseWKT(code);
+        } catch (Exception e) {
+            throw new IOException("无法解析坐标参考系统: " + code, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package hydrology;
+
+/**
+ * 栅格的通用只读接口。
+ * 各类型栅格（ByteGrid、ShortGrid、IntGrid、FloatGrid、DoubleGrid 等）按各自的原始类型存储在一个行优先的一维数组中，
+ * 统一以双精度读取。像元 (row, col) 的一维下标为 row * stride() + col，相邻像元的下标差见 {@link Neighborhood}。
+ */
+public interface Grid {
+
+    /**
+     * 头部信息（行列数、角点坐标、像元大小、NODATA）。
+     */
+    GridHeader getHeader();
+
+    /**
+     * 像元存储类型。
+     */
+    DataType getType();
+
+    default int rows() {
+        return getHeader().getNrows();
+    }
+
+    default int cols() {
+        return getHeader().getNcols();
+    }
+
+    /**
+     * 相邻两行同一列像元在一维数组中的下标差。
+     */
+    default int stride() {
+        return cols();
+    }
+
+    /**
+     * 像元 (row, col) 的一维下标。
+     */
+    default int index(int row, int col) {
+        return row * stride() + col;
+    }
+
+    /**
+     * 判断行列号是否在栅格范围内。
+     */
+    default boolean contains(int row, int col) {
+        return row >= 0 && row < rows() && col >= 0 && col < cols();
+    }
+
+    /**
+     * 读取单个像元。
+     */
+    double getDouble(int row, int col);
+
+    /**
+     * 按一维下标读取单个像元。
+     */
+    double getDouble(int index);
+
+    /**
+     * 判断像元是否为 NODATA（等于头部的 NODATA 值或为 NaN）。
+     */
+    default boolean isNoData(int row, int col) {
+        double value = getDouble(row, col);
+        return value == getHeader().getNODATA_value() || Double.isNaN(value);
+    }
+
+    /**
+     * 按一维下标判断像元是否为 NODATA。
+     */
+    default boolean isNoData(int index) {
+        double value = getDouble(index);
+        return value == getHeader().getNODATA_value() || Double.isNaN(value);
+    }
+
+    /**
+     * 批量读取一行。
+     */
+    default void readRow(int row, double[] dst) {
+        int cols = cols();
+        for (int j = 0; j < cols; j++) {
+            dst[j] = getDouble(row, j);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package hydrology;
+
+/**
+ * 栅格头部信息（ESRI ASCII Grid 的六个头部字段），以及可选的坐标参考系统。
+ * 坐标参考系统以 "EPSG:xxxx" 或 WKT 字符串记录，来自输入（如 GeoTIFF），未知时为 null；
+ * 由头部派生的头部（替换 NODATA、窗口、聚合层级）沿用原坐标系。
+ */
+public class GridHeader {
+    private final int nrows;
+    private final int ncols;
+    private final double xllcorner;
+    private final double yllcorner;
+    private final double cellsize;
+    private final double NODATA_value;
+    private final String crs;
+
+    public GridHeader(int nrows, int ncols, double xllcorner, double yllcorner, double cellsize, double NODATA_value) {
+        this(nrows, ncols, xllcorner, yllcorner, cellsize, NODATA_value, null);
+    }
+
+    public GridHeader(int nrows, int ncols, double xllcorner, double yllcorner, double cellsize, double NODATA_value,
+                      String crs) {
+        this.nrows = nrows;
+        this.ncols = ncols;
+        this.xllcorner = xllcorner;
+        this.yllcorner = yllcorner;
+        this.cellsize = cellsize;
+        this.NODATA_value = NODATA_value;
+        this.crs = crs;
+    }
+
+    public int getNrows() {
+        return nrows;
+    }
+
+    public int getNcols() {
+        return ncols;
+    }
+
+    public double getXllcorner() {
+        return xllcorner;
+    }
+
+    public double getYllcorner() {
+        return yllcorner;
+    }
+
+    public double getCellsize() {
+        return cellsize;
+    }
+
+    public double getNODATA_value() {
+        return NODATA_value;
+    }
+
+    /**
+     * 坐标参考系统（"EPSG:xxxx" 或 WKT），未知时为 null。
+     */
+    public String getCrs() {
+        return crs;
+    }
+
+    /**
+     * 复制头部并替换 NODATA 值。
+     */
+    public GridHeader withNODATA_value(double NODATA_value) {
+        return new GridHeader(nrows, ncols, xllcorner, yllcorner, cellsize, NODATA_value, crs);
+    }
+
+    /**
+     * 复制头部并替换坐标参考系统。
+     */
+    public GridHeader withCrs(String crs) {
+        return new GridHeader(nrows, ncols, xllcorner, yllcorner, cellsize, NODATA_value, crs);
+    }
+
+    /**
+     * 栅格单元总数。
+     */
+    public long cellCount() {
+        return (long) nrows * ncols;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nrows=%d, ncols=%d, cellsize=%s, NODATA_value=%s, xllcorner=%.2f, yllcorner=%.2f",
+                nrows, ncols, cellsize, NODATA_value, xllcorner, yllcorner);
+    }
+}
@@ -0,0 +1,15 @@
+package hydrology;
+
+/**
+ * 新建栅格的存储位置。
+ */
+public enum GridStorage {
+    /** Java 堆上的原始类型数组，适合能放进堆的栅格。 */
+    HEAP,
+    /** 直接内存（堆外），不受堆大小限制，受 -XX:MaxDirectMemorySize 限制。 */
+    DIRECT,
+    /** 内存映射的临时文件，可超过物理内存，由操作系统分页。 */
+    MAPPED,
+    /** 带重叠边的分块临时文件，只有有限个分块缓存在堆上，内存占用与栅格大小无关。 */
+    TILED
+}
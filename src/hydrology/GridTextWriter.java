@@ -0,0 +1,267 @@
+package hydrology;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * 栅格的文本输出（CSV、ESRI ASCII Grid 与空格分隔的文本），所有文本导出共用。
+ * <p>
+ * 数值直接格式化到可复用的字节缓冲区：默认按最短往返表示输出浮点数（读回后与原值完全相同，单精度栅格按单精度判断），
+ * 也可以指定固定的小数位数（四舍五入，有损但更短更快）；两种方式都去掉末尾的 0，整型栅格与 NODATA 值按整数输出。
+ * 最短表示由 {@link ShortestDecimal} 直接生成数字，逐值不创建字符串。行按带划分，每批若干带并行格式化后按顺序写出。
+ */
+public class GridTextWriter {
+
+    public static final int SHORTEST = -1;  // 最短往返表示（无损）
+    private static final int BAND_BYTES = 4 << 20;  // 每带约 4MB 文本
+    private static final int MAX_PRECISION = 12;
+    private static final double EXACT_LIMIT = 0x1p53;
+    private static final long[] POW10 = new long[19];
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private final int precision;
+
+    /**
+     * 浮点数按最短往返表示无损输出。
+     */
+    public GridTextWriter() {
+        this(SHORTEST);
+    }
+
+    /**
+     * @param precision 浮点数保留的小数位数（0~12，有损），{@link #SHORTEST} 为无损的最短往返表示。
+     */
+    public GridTextWriter(int precision) {
+        if (precision != SHORTEST && (precision < 0 || precision > MAX_PRECISION)) {
+            throw new IllegalArgumentException("小数位数应在 0~" + MAX_PRECISION + " 之间: " + precision);
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * 输出为逗号分隔的 CSV，每行对应栅格的一行，不含头部。
+     */
+    public void writeCsv(Path path, Grid grid) throws IOException {
+        write(path, grid, (byte) ',', null, null, null);
+    }
+
+    /**
+     * 输出为空格分隔的文本，每行对应栅格的一行，NODATA 单元格写为 nodataText，末尾追加 tail（可为 null）。
+     */
+    public void writeText(Path path, Grid grid, String nodataText, String tail) throws IOException {
+        write(path, grid, (byte) ' ', null, nodataText.getBytes(StandardCharsets.US_ASCII),
+                tail == null ? null : tail.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 按该栅格单元格的写法格式化单个数值，用于与栅格一同输出的统计值。
+     */
+    public String format(double value, Grid grid) {
+        DataType type = grid.getType();
+        byte[] buf = new byte[maxCellBytes()];
+        int n = formatValue(value, grid.getHeader().getNODATA_value(),
+                type != DataType.FLOAT32 && type != DataType.FLOAT64, type == DataType.FLOAT32, buf, 0);
+        return new String(buf, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 输出为 ESRI ASCII Grid（.asc），可由 DEMReader 读回。
+     */
+    public void writeAsciiGrid(Path path, Grid grid) throws IOException {
+        GridHeader header = grid.getHeader();
+        StringBuilder head = new StringBuilder();
+        head.append("ncols ").append(header.getNcols()).append('\n')
+                .append("nrows ").append(header.getNrows()).append('\n')
+                .append("xllcorner ").append(header.getXllcorner()).append('\n')
+                .append("yllcorner ").append(header.getYllcorner()).append('\n')
+                .append("cellsize ").append(header.getCellsize()).append('\n')
+                .append("NODATA_value ");
+        // NODATA 与单元格按同样的精度格式化，读回后两者仍然相等
+        byte[] nodata = new byte[32];
+        int n = formatValue(header.getNODATA_value(), header.getNODATA_value(), false,
+                grid.getType() == DataType.FLOAT32, nodata, 0);
+        head.append(new String(nodata, 0, n, StandardCharsets.US_ASCII)).append('\n');
+        write(path, grid, (byte) ' ', head.toString().getBytes(StandardCharsets.US_ASCII), null, null);
+    }
+
+    private void write(Path path, Grid grid, byte separator, byte[] head, byte[] nodataText, byte[] tail)
+            throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        int nrows = grid.rows();
+        int ncols = grid.cols();
+        boolean integral = grid.getType() != DataType.FLOAT32 && grid.getType() != DataType.FLOAT64;
+        boolean single = grid.getType() == DataType.FLOAT32;
+        double nodata = grid.getHeader().getNODATA_value();
+        int cellBytes = Math.max(maxCellBytes(), nodataText == null ? 0 : nodataText.length + 1);
+        int rowsPerBand = (int) Math.max(1, Math.min(nrows, BAND_BYTES / ((long) ncols * cellBytes)));
+        int bands = (nrows + rowsPerBand - 1) / rowsPerBand;
+        int batch = Math.max(1, Runtime.getRuntime().availableProcessors() * 2);
+
+        // 每个缓冲区在各批之间复用
+        byte[][] buffers = new byte[Math.min(batch, bands)][];
+        int[] lengths = new int[buffers.length];
+        try (OutputStream out = Files.newOutputStream(path)) {
+            if (head != null) {
+                out.write(head);
+            }
+            for (int first = 0; first < bands; first += batch) {
+                int from = first;
+                int to = Math.min(bands, first + batch);
+                IntStream.range(from, to).parallel().forEach(b -> {
+                    int slot = b - from;
+                    int row0 = b * rowsPerBand;
+                    int rows = Math.min(rowsPerBand, nrows - row0);
+                    int capacity = rows * ncols * cellBytes;
+                    if (buffers[slot] == null || buffers[slot].length < capacity) {
+                        buffers[slot] = new byte[capacity];
+                    }
+                    lengths[slot] = formatBand(grid, row0, rows, separator, integral, single, nodata, nodataText,
+                            buffers[slot]);
+                });
+                for (int b = from; b < to; b++) {
+                    out.write(buffers[b - from], 0, lengths[b - from]);
+                }
+            }
+            if (tail != null) {
+                out.write(tail);
+            }
+        }
+    }
+
+    private int formatBand(Grid grid, int row0, int rows, byte separator, boolean integral, boolean single,
+                           double nodata, byte[] nodataText, byte[] buf) {
+        int ncols = grid.cols();
+        double[] row = new double[ncols];
+        int pos = 0;
+        for (int i = 0; i < rows; i++) {
+            grid.readRow(row0 + i, row);
+            for (int j = 0; j < ncols; j++) {
+                if (j > 0) {
+                    buf[pos++] = separator;
+                }
+                if (nodataText != null && (row[j] == nodata || Double.isNaN(row[j]))) {
+                    System.arraycopy(nodataText, 0, buf, pos, nodataText.length);
+                    pos += nodataText.length;
+                } else {
+                    pos = formatValue(row[j], nodata, integral, single, buf, pos);
+                }
+            }
+            buf[pos++] = '\n';
+        }
+        return pos;
+    }
+
+    // 单个数值加分隔符的最大字节数：符号、19 位整数、小数点、小数位与分隔符，且不小于最短表示与 Double.toString 的 24 个字符
+    private int maxCellBytes() {
+        return Math.max(ShortestDecimal.MAX_CHARS, 1 + 19 + 1 + Math.max(0, precision)) + 1;
+    }
+
+    /**
+     * 将数值格式化到 buf 的 pos 处，返回写入后的位置；single 为 true 时最短表示只需还原出同一个单精度值。
+     */
+    int formatValue(double value, double nodata, boolean integral, boolean single, byte[] buf, int pos) {
+        if (integral || (value == nodata && value == Math.rint(value) && Math.abs(value) < 1e18)) {
+            return formatLong((long) value, buf, pos);
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return formatText(Double.toString(value), buf, pos);
+        }
+        if (precision == SHORTEST) {
+            return formatShortest(value, single, buf, pos);
+        }
+        if (Math.abs(value) >= EXACT_LIMIT / POW10[precision]) {
+            // 放大后超出双精度整数精度（2^53）的数值很少见，退回 Double.toString
+            return formatText(Double.toString(value), buf, pos);
+        }
+        return formatFixed(value, Math.round(Math.abs(value) * POW10[precision]), precision, buf, pos);
+    }
+
+    private static int formatShortest(double value, boolean single, byte[] buf, int pos) {
+        return single ? ShortestDecimal.formatFloat((float) value, buf, pos)
+                : ShortestDecimal.formatDouble(value, buf, pos);
+    }
+
+    private static int formatText(String text, byte[] buf, int pos) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    // 写出 scaled / 10^precision（带 value 的符号），去掉小数部分末尾的 0
+    private static int formatFixed(double value, long scaled, int precision, byte[] buf, int pos) {
+        long scale = POW10[precision];
+        if (scaled == 0) {
+            buf[pos++] = '0';
+            return pos;
+        }
+        if (value < 0) {
+            buf[pos++] = '-';
+        }
+        pos = formatLong(scaled / scale, buf, pos);
+        long fraction = scaled % scale;
+        if (fraction == 0) {
+            return pos;
+        }
+        // 去掉末尾的 0
+        int digits = precision;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        buf[pos++] = '.';
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return end;
+    }
+
+    static int formatLong(long value, byte[] buf, int pos) {
+        if (value == Long.MIN_VALUE) {
+            return formatText(Long.toString(value), buf, pos);
+        }
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        while (digits < 19 && value >= POW10[digits]) {
+            digits++;
+        }
+        int end = pos + digits;
+        int i = end;
+        while (value >= 100) {
+            int pair = (int) (value % 100) * 2;
+            value /= 100;
+            buf[--i] = DIGIT_PAIRS[pair + 1];
+            buf[--i] = DIGIT_PAIRS[pair];
+        }
+        if (value >= 10) {
+            int pair = (int) value * 2;
+            buf[--i] = DIGIT_PAIRS[pair + 1];
+            buf[--i] = DIGIT_PAIRS[pair];
+        } else {
+            buf[--i] = (byte) ('0' + value);
+        }
+        return end;
+    }
+}
@@ -0,0 +1,94 @@
+package hydrology;
+
+/**
+ * 栅格中的矩形子窗口（行列范围），用于只读取感兴趣的区域。
+ */
+public class GridWindow {
+    private final int row0;
+    private final int col0;
+    private final int nrows;
+    private final int ncols;
+
+    private GridWindow(int row0, int col0, int nrows, int ncols) {
+        this.row0 = row0;
+        this.col0 = col0;
+        this.nrows = nrows;
+        this.ncols = ncols;
+    }
+
+    /**
+     * 按行列号指定窗口（row0 从栅格顶部起算），窗口必须完全落在栅格内。
+     */
+    public static GridWindow ofCells(GridHeader header, int row0, int col0, int nrows, int ncols) {
+        if (row0 < 0 || col0 < 0 || nrows <= 0 || ncols <= 0
+                || (long) row0 + nrows > header.getNrows() || (long) col0 + ncols > header.getNcols()) {
+            throw new IllegalArgumentException(String.format("窗口 [行 %d, 列 %d, %d x %d] 超出栅格范围 %d x %d",
+                    row0, col0, nrows, ncols, header.getNrows(), header.getNcols()));
+        }
+        return new GridWindow(row0, col0, nrows, ncols);
+    }
+
+    /**
+     * 按地图坐标范围指定窗口：取与范围相交的全部像元，超出栅格的部分被裁掉。
+     */
+    public static GridWindow ofBounds(GridHeader header, double minX, double minY, double maxX, double maxY) {
+        if (!(minX < maxX && minY < maxY)) {
+            throw new IllegalArgumentException("无效的坐标范围: " + minX + ", " + minY + ", " + maxX + ", " + maxY);
+        }
+        double cellsize = header.getCellsize();
+        double top = header.getYllcorner() + header.getNrows() * cellsize;
+        int firstCol = (int) Math.max(0, Math.floor((minX - header.getXllcorner()) / cellsize));
+        int endCol = (int) Math.min(header.getNcols(), Math.ceil((maxX - header.getXllcorner()) / cellsize));
+        int firstRow = (int) Math.max(0, Math.floor((top - maxY) / cellsize));
+        int endRow = (int) Math.min(header.getNrows(), Math.ceil((top - minY) / cellsize));
+        if (firstCol >= endCol || firstRow >= endRow) {
+            throw new IllegalArgumentException("坐标范围与栅格不相交: " + header);
+        }
+        return new GridWindow(firstRow, firstCol, endRow - firstRow, endCol - firstCol);
+    }
+
+    public int getRow0() {
+        return row0;
+    }
+
+    public int getCol0() {
+        return col0;
+    }
+
+    public int getNrows() {
+        return nrows;
+    }
+
+    public int getNcols() {
+        return ncols;
+    }
+
+    /**
+     * 窗口对应的头部信息：左下角坐标按窗口位置修正。
+     */
+    public GridHeader apply(GridHeader header) {
+        double cellsize = header.getCellsize();
+        double xll = header.getXllcorner() + col0 * cellsize;
+        double yll = header.getYllcorner() + (header.getNrows() - row0 - nrows) * cellsize;
+        return new GridHeader(nrows, ncols, xll, yll, cellsize, header.getNODATA_value(), header.getCrs());
+    }
+
+    /**
+     * 判断整幅栅格中的行列是否落在窗口内。
+     */
+    public boolean contains(int row, int col) {
+        return row >= row0 && row < row0 + nrows && col >= col0 && col < col0 + ncols;
+    }
+
+    /**
+     * 整幅栅格中的行列在窗口栅格中的一维下标。
+     */
+    public int index(int row, int col) {
+        return (row - row0) * ncols + (col - col0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("行 %d~%d，列 %d~%d", row0, row0 + nrows - 1, col0, col0 + ncols - 1);
+    }
+}
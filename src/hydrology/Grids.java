@@ -0,0 +1,191 @@
+package hydrology;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 栅格的创建与转换工具。
+ * 新建栅格的存储位置由 {@link #setStorage} 统一设定，各计算阶段通过 {@link #create} 分配结果栅格，
+ * 不再使用的中间结果用 {@link #release} 及时释放堆外内存。
+ */
+public class Grids {
+
+    private static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+    private static volatile GridStorage storage = GridStorage.HEAP;
+    private static volatile Path mappedDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    private Grids() {}
+
+    /**
+     * 检查栅格能否放入单个数组并返回单元总数。
+     */
+    static int checkedSize(GridHeader header) {
+        long cells = header.cellCount();
+        if (cells > MAX_CELLS) {
+            throw new IllegalArgumentException("栅格单元数 " + cells + " 超过单个数组的上限 " + MAX_CELLS);
+        }
+        return (int) cells;
+    }
+
+    /**
+     * 设置新建栅格的存储位置（默认 HEAP）。
+     */
+    public static void setStorage(GridStorage storage) {
+        Grids.storage = storage;
+    }
+
+    public static GridStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * 设置 MAPPED 和 TILED 模式下临时文件所在目录（默认为系统临时目录）。
+     */
+    public static void setMappedDirectory(Path directory) {
+        Grids.mappedDirectory = directory;
+    }
+
+    public static Path getMappedDirectory() {
+        return mappedDirectory;
+    }
+
+    /**
+     * 按像元类型创建空栅格，存储位置取当前设定。
+     */
+    public static WritableGrid create(DataType type, GridHeader header) {
+        switch (storage) {
+            case DIRECT:
+                return OffHeapGrid.allocateDirect(type, header);
+            case MAPPED:
+                try {
+                    return OffHeapGrid.allocateMapped(type, header, mappedDirectory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("无法创建映射栅格: " + e.getMessage(), e);
+                }
+            case TILED:
+                try {
+                    return TiledGrid.createTemp(mappedDirectory, type, header);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("无法创建分块栅格: " + e.getMessage(), e);
+                }
+            default:
+                return createOnHeap(type, header);
+        }
+    }
+
+    /**
+     * 在 Java 堆上创建空栅格。
+     */
+    public static WritableGrid createOnHeap(DataType type, GridHeader header) {
+        switch (type) {
+            case UINT8: return new ByteGrid(header);
+            case INT16: return new ShortGrid(header);
+            case INT32: return new IntGrid(header);
+            case FLOAT32: return new FloatGrid(header);
+            default: return new DoubleGrid(header);
+        }
+    }
+
+    /**
+     * 释放栅格占用的堆外内存或临时文件；堆上栅格交给GC，无需处理。
+     */
+    public static void release(Grid grid) {
+        if (grid instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) grid).close();
+            } catch (Exception e) {
+                System.err.println("释放栅格失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 复制栅格（像元类型与头部不变），存储位置取当前设定。
+     */
+    public static WritableGrid copy(Grid grid) {
+        if (storage != GridStorage.HEAP || grid instanceof OffHeapGrid) {
+            return copyInto(grid, create(grid.getType(), grid.getHeader()));
+        }
+        if (grid instanceof ByteGrid) {
+            return new ByteGrid(grid.getHeader(), ((ByteGrid) grid).getData().clone());
+        }
+        if (grid instanceof ShortGrid) {
+            return new ShortGrid(grid.getHeader(), ((ShortGrid) grid).getData().clone());
+        }
+        if (grid instanceof IntGrid) {
+            return new IntGrid(grid.getHeader(), ((IntGrid) grid).getData().clone());
+        }
+        if (grid instanceof FloatGrid) {
+            return new FloatGrid(grid.getHeader(), ((FloatGrid) grid).getData().clone());
+        }
+        if (grid instanceof DoubleGrid) {
+            return new DoubleGrid(grid.getHeader(), ((DoubleGrid) grid).getData().clone());
+        }
+        return copyInto(grid, create(grid.getType(), grid.getHeader()));
+    }
+
+    private static WritableGrid copyInto(Grid grid, WritableGrid copy) {
+        if (grid instanceof OffHeapGrid && copy instanceof OffHeapGrid) {
+            ByteBuffer row = ByteBuffer.allocate(grid.cols() * grid.getType().getBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < grid.rows(); i++) {
+                row.clear();
+                ((OffHeapGrid) grid).getRowBytes(i, row);
+                row.flip();
+                ((OffHeapGrid) copy).putRowBytes(i, row);
+            }
+            return copy;
+        }
+        double[] row = new double[grid.cols()];
+        for (int i = 0; i < grid.rows(); i++) {
+            grid.readRow(i, row);
+            for (int j = 0; j < row.length; j++) {
+                copy.setDouble(i, j, row[j]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * 能无损容纳整数区间 [min, max] 的最窄类型。
+     */
+    static DataType narrowestIntegral(long min, long max) {
+        if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) {
+            return DataType.INT16;
+        }
+        if (min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE) {
+            return DataType.INT32;
+        }
+        return DataType.FLOAT64;
+    }
+
+    /**
+     * 由二维整型数组创建栅格（复制数据）。
+     */
+    public static IntGrid fromArray(int[][] data, GridHeader header) {
+        IntGrid grid = new IntGrid(header);
+        int[] flat = grid.getData();
+        int ncols = header.getNcols();
+        for (int i = 0; i < data.length; i++) {
+            System.arraycopy(data[i], 0, flat, i * ncols, ncols);
+        }
+        return grid;
+    }
+
+    /**
+     * 由二维双精度数组创建栅格（复制数据）。
+     */
+    public static DoubleGrid fromArray(double[][] data, GridHeader header) {
+        DoubleGrid grid = new DoubleGrid(header);
+        double[] flat = grid.getData();
+        int ncols = header.getNcols();
+        for (int i = 0; i < data.length; i++) {
+            System.arraycopy(data[i], 0, flat, i * ncols, ncols);
+        }
+        return grid;
+    }
+}
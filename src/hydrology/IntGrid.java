@@ -0,0 +1,84 @@
+package hydrology;
+
+/**
+ * 32 位整型栅格，按行优先存储在一维数组中。
+ */
+public class IntGrid implements WritableGrid {
+    private final GridHeader header;
+    private final int ncols;
+    private final int[] data;
+
+    public IntGrid(GridHeader header) {
+        this(header, new int[Grids.checkedSize(header)]);
+    }
+
+    public IntGrid(GridHeader header, int[] data) {
+        if (data.length != header.cellCount()) {
+            throw new IllegalArgumentException("数组长度 " + data.length + " 与栅格大小 " + header.cellCount() + " 不符");
+        }
+        this.header = header;
+        this.ncols = header.getNcols();
+        this.data = data;
+    }
+
+    @Override
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.INT32;
+    }
+
+    public int get(int row, int col) {
+        return data[row * ncols + col];
+    }
+
+    public void set(int row, int col, int value) {
+        data[row * ncols + col] = value;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return data[row * ncols + col];
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return data[index];
+    }
+
+    @Override
+    public void setDouble(int row, int col, double value) {
+        data[row * ncols + col] = (int) value;
+    }
+
+    @Override
+    public void setDouble(int index, double value) {
+        data[index] = (int) value;
+    }
+
+    @Override
+    public void readRow(int row, double[] dst) {
+        int offset = row * ncols;
+        for (int j = 0; j < ncols; j++) {
+            dst[j] = data[offset + j];
+        }
+    }
+
+    /**
+     * 底层数组（行优先）。
+     */
+    public int[] getData() {
+        return data;
+    }
+}
@@ -6,15 +6,11 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -24,12 +20,16 @@ public class InverseDist {
     static final String SRC_CRS = "EPSG:4326"; // WGS 84 (Geographic)
     static final String DST_CRS = "EPSG:32649"; // WGS 84 / UTM zone 49N (Projected)
     static MathTransform transform;
-    private int[][] dem; // DEM 数据矩阵
+    private Grid dem; // DEM 栅格
     double cellsize; // 栅格单元大小
     double xllcorner; // 左下角X坐标
     double yllcorner; // 左下角Y坐标
-    int NODATA_value = -9999; // NODATA 值
+    double NODATA_value = -9999; // NODATA 值
     private double powerParameter = 2.0; // IDW 幂参数
+    private OutputFormat outputFormat = OutputFormat.COMPRESSED; // 结果输出格式，CSV 需显式选择
+    private GridTextWriter textWriter = new GridTextWriter(); // CSV / ASCII 文本输出
+    private int maxPendingDays = OutputPipeline.DEFAULT_MAX_PENDING; // 后台输出的在途天数上限
+    private Path rainfallFile = Paths.get("./data/rainFlow.txt"); // 逐日站点降水文件
     static Map<Integer, Station> stations = new ConcurrentHashMap<>(); // 站点信息
 
     static {
@@ -42,20 +42,48 @@ public class InverseDist {
         }
     }
 
-    public InverseDist(int[][] dem, double cellsize, double xllcorner, double yllcorner) {
+    public InverseDist(Grid dem) {
         this.dem = dem;
-        this.cellsize = cellsize;
-        this.xllcorner = xllcorner;
-        this.yllcorner = yllcorner;
+        this.cellsize = dem.getHeader().getCellsize();
+        this.xllcorner = dem.getHeader().getXllcorner();
+        this.yllcorner = dem.getHeader().getYllcorner();
     }
 
     /**
      * 设置NODATA值。
      */
-    public void setNODATA_value(int NODATA_value) {
+    public void setNODATA_value(double NODATA_value) {
         this.NODATA_value = NODATA_value;
     }
 
+    /**
+     * 设置结果输出格式（默认为压缩二进制栅格；另有 CSV、分块压缩的 GeoTIFF、逐日追加的 NetCDF 数据立方体）。
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * 设置文本输出（CSV、ASCII）中浮点数保留的小数位数（有损），默认按最短往返表示无损输出（GridTextWriter.SHORTEST）。
+     */
+    public void setTextPrecision(int precision) {
+        this.textWriter = new GridTextWriter(precision);
+    }
+
+    /**
+     * 设置同时等待输出的天数上限（默认 2），计算与写文件、出图重叠进行，内存占用随该值增加。
+     */
+    public void setMaxPendingDays(int maxPendingDays) {
+        this.maxPendingDays = maxPendingDays;
+    }
+
+    /**
+     * 设置逐日站点降水文件（默认 ./data/rainFlow.txt）。
+     */
+    public void setRainfallFile(String filePath) {
+        this.rainfallFile = Paths.get(filePath);
+    }
+
     /**
      * 读取站点属性文件并存储到Map中。
      */
@@ -92,101 +120,96 @@ public class InverseDist {
             throw e; // 重新抛出异常以便调用者处理
         }
     }
-    /**
-     * 读取rainFlow文件，返回每日降水量数据列表。
-     */
-    private List<Map<Integer, Double>> readRainFlowFile(String s) throws IOException {
-        List<Map<Integer, Double>> dailyPrecipitationMaps = new ArrayList<>();
-        Map<Integer, Integer> stationIndexMap = new HashMap<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader("./data/rainFlow.txt"))) {
-            String header = br.readLine(); // 获取表头
-            if (header != null) {
-                String[] headers = header.split("\t");
-                for (int i = 1; i < headers.length; i++) { // 跳过日期列
-                    int stationId = Integer.parseInt(headers[i]);
-                    stationIndexMap.put(stationId, i - 1);
-                    //System.out.println("Station ID: " + stationId + ", Column Index: " + (i - 1));
-                }
-            }
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split("\t");
-                if (values.length > 1) {
-                    String date = values[0]; // 假设第一列是日期
-                    Map<Integer, Double> precipitationMap = new HashMap<>();
-                    //System.out.println("Date: " + date);
-
-                    for (Map.Entry<Integer, Integer> entry : stationIndexMap.entrySet()) {
-                        int stationId = entry.getKey();
-                        int index = entry.getValue();
-                        if (index + 1 < values.length) { // +1 因为跳过了日期列
-                            double precipitation = Double.parseDouble(values[index + 1]);
-                            precipitationMap.put(stationId, precipitation);
-                            //System.out.println("  Station ID: " + stationId + ", Precipitation: " + precipitation);
-                        }
-                    }
-                    dailyPrecipitationMaps.add(precipitationMap);
-                }
-            }
-        }
-
-        return dailyPrecipitationMaps;
-    }
     /**
      * 执行IDW插值，即时保存每日结果，并计算平均值。
      */
     public void invInterpolation(String s) throws Exception {
-        List<Map<Integer, Double>> dailyPrecipitationList = readRainFlowFile("./data/rainFlow.txt");
-        int rows = dem.length;
-        int cols = dem[0].length;
+        int rows = dem.rows();
+        int cols = dem.cols();
+        GridHeader header = dem.getHeader().withNODATA_value(NODATA_value);
 
         Path outputDir = Paths.get("./result/invInterpolation");
         Files.createDirectories(outputDir); // 确保目录存在
 
-        // 创建累积矩阵和计数矩阵用于计算平均值
-        double[][] cumulativeResult = new double[rows][cols];
-        int[][] countMatrix = new int[rows][cols];
-
-        for (int day = 0; day < dailyPrecipitationList.size(); day++) {
-            double[][] result = new double[rows][cols];
-            Map<Integer, Double> precipitationData = dailyPrecipitationList.get(day);
-
-            for (int row = 0; row < rows; row++) {
-                for (int col = 0; col < cols; col++) {
-                    if (dem[row][col] != NODATA_value) {
-                        double interpolatedValue = calculateInterpolatedValue(row, col, precipitationData);
-                        result[row][col] = interpolatedValue;
-                        cumulativeResult[row][col] += interpolatedValue;
-                        countMatrix[row][col]++;
-                    } else {
-                        result[row][col] = NODATA_value;
+        // 创建累积数组和计数数组用于计算平均值
+        WritableGrid cumulativeResult = Grids.create(DataType.FLOAT64, header);
+        WritableGrid countMatrix = Grids.create(DataType.INT32, header);
+
+        // 站点顺序固定，每天的观测值按此顺序取到连续数组中，缺测为 NaN
+        Station[] stationList = stations.values().toArray(new Station[0]);
+        int[] stationIds = new int[stationList.length];
+        for (int k = 0; k < stationList.length; k++) {
+            stationIds[k] = stationList[k].getStationId();
+        }
+        double[] observations = new double[stationList.length];
+
+        // NETCDF 格式下所有天写入同一个数据立方体，平均值写入其中的 _mean 变量；
+        // 每天算完后交给输出线程写文件和出图，同时计算下一天
+        try (NetCDFCube cube = outputFormat == OutputFormat.NETCDF
+                ? NetCDFCube.create(outputDir.resolve("interpolation.nc"), header, "precipitation", "mm") : null;
+             OutputPipeline output = new OutputPipeline(OutputPipeline.DEFAULT_WRITERS, maxPendingDays);
+             RainfallStore.BlockReader rainfall = RainfallStore.open(rainfallFile, RainfallStore.DEFAULT_BLOCK_DAYS)) {
+            // 降水数据按块流式读取，长序列也只占一块的内存
+            RainfallStore block;
+            while ((block = rainfall.next()) != null) {
+                int[] columns = block.columnsOf(stationIds);
+                for (int d = 0; d < block.getDays(); d++) {
+                    int day = block.getFirstDay() + d;
+                    WritableGrid result = Grids.create(DataType.FLOAT64, header);
+                    block.readDay(d, columns, observations);
+
+                    for (int row = 0; row < rows; row++) {
+                        for (int col = 0; col < cols; col++) {
+                            int index = dem.index(row, col);
+                            if (!dem.isNoData(index)) {
+                                double interpolatedValue = calculateInterpolatedValue(row, col, stationList, observations);
+                                result.setDouble(index, interpolatedValue);
+                                cumulativeResult.setDouble(index, cumulativeResult.getDouble(index) + interpolatedValue);
+                                countMatrix.setDouble(index, countMatrix.getDouble(index) + 1);
+                            } else {
+                                result.setDouble(index, NODATA_value);
+                            }
+                        }
                     }
+
+                    // 交给输出线程写出，写完后由其释放；在途天数达到上限时在此等待
+                    int dayIndex = day;
+                    output.submit(result,
+                            grid -> {
+                                if (cube != null) {
+                                    cube.writeDay(dayIndex, grid);
+                                } else {
+                                    writeResult(grid, outputDir, "interpolation_day_" + (dayIndex + 1));
+                                }
+                            },
+                            grid -> Visualizer.imgDbl(grid, "./result/invInterpolation/result" + (dayIndex + 1), "Interpolation Result Day " + (dayIndex + 1), Visualizer::getGrayscaleColor));
                 }
             }
 
-            // 即时写入结果，避免内存占用过多
-            writeResultToCSV(result, outputDir.resolve("interpolation_day_" + (day + 1) + ".csv"));
-            Visualizer.imgDbl(result, "./result/invInterpolation/result" + (day + 1), "Interpolation Result Day " + (day + 1), Visualizer::getGrayscaleColor);
-        }
-
-        // 计算平均值并立即写入文件
-        double[][] averageResult = new double[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                averageResult[i][j] = countMatrix[i][j] > 0 ? cumulativeResult[i][j] / countMatrix[i][j] : NODATA_value;
+            // 计算平均值并立即写入文件
+            WritableGrid averageResult = Grids.create(DataType.FLOAT64, header);
+            for (int index = 0; index < rows * cols; index++) {
+                double count = countMatrix.getDouble(index);
+                averageResult.setDouble(index, count > 0 ? cumulativeResult.getDouble(index) / count : NODATA_value);
             }
+            Grids.release(cumulativeResult);
+            Grids.release(countMatrix);
+            output.submit(averageResult,
+                    grid -> {
+                        if (cube != null) {
+                            cube.writeMean(grid);
+                        } else {
+                            writeResult(grid, outputDir, "average_interpolation");
+                        }
+                    },
+                    // 可视化平均结果
+                    grid -> Visualizer.imgDbl(grid, "./result/invInterpolation/average_interpolation", "Average Interpolation Result", Visualizer::getGrayscaleColor));
         }
-        writeResultToCSV(averageResult, outputDir.resolve("average_interpolation.csv"));
-
-        // 可视化平均结果
-        Visualizer.imgDbl(averageResult, "./result/invInterpolation/average_interpolation", "Average Interpolation Result", Visualizer::getGrayscaleColor);
 
         System.out.println("插值计算完成，结果已保存到指定目录。");
     }
 
-    private double calculateInterpolatedValue(int row, int col, Map<Integer, Double> precipitationData) throws Exception {
+    private double calculateInterpolatedValue(int row, int col, Station[] stationList, double[] observations) throws Exception {
         double interpolatedValue = 0.0;
         double sumWeights = 0.0;
         boolean isExactMatch = false;
@@ -204,7 +227,12 @@ public class InverseDist {
         // 获取坐标转换工具
         MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
 
-        for (Station station : stations.values()) {
+        for (int k = 0; k < stationList.length; k++) {
+            Station station = stationList[k];
+            double observed = observations[k];
+            if (Double.isNaN(observed)) {
+                continue; // 当天缺测
+            }
             // 创建一个DirectPosition2D来表示站点的地理坐标
             DirectPosition2D geoPosition = new DirectPosition2D(sourceCRS,station.getLatitude(),station.getLongitude());
 
@@ -225,18 +253,16 @@ public class InverseDist {
             double distance = Math.sqrt(disX * disX + disY * disY);
             //System.out.println("Distance to station " + station.getStationId() + ": " + distance);
 
-            if (distance == 0 && precipitationData.containsKey(station.getStationId())) {
+            if (distance == 0) {
                 // 如果栅格点与站点完全重合，则直接使用该站点的数据
-                interpolatedValue = precipitationData.get(station.getStationId());
+                interpolatedValue = observed;
                 isExactMatch = true;
                 break;
             }
 
-            if (precipitationData.containsKey(station.getStationId())) {
-                double weight = 1.0 / Math.pow(distance, powerParameter);
-                interpolatedValue += precipitationData.get(station.getStationId()) * weight;
-                sumWeights += weight;
-            }
+            double weight = 1.0 / Math.pow(distance, powerParameter);
+            interpolatedValue += observed * weight;
+            sumWeights += weight;
         }
 
         if (!isExactMatch && sumWeights > 0) {
@@ -248,17 +274,18 @@ public class InverseDist {
         return interpolatedValue;
     }
     /**
-     * 将插值结果输出到CSV文件。
+     * 按设定的输出格式写出插值结果，baseName 不含扩展名。
      */
-    private void writeResultToCSV(double[][] result, Path outputPath) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(outputPath)) {
-            for (int i = 0; i < result.length; i++) {
-                for (int j = 0; j < result[i].length; j++) {
-                    writer.write(String.valueOf(result[i][j]));
-                    if (j < result[i].length - 1) writer.write(",");
-                }
-                writer.newLine();
-            }
+    private void writeResult(Grid result, Path dir, String baseName) throws IOException {
+        Path outputPath = dir.resolve(baseName + outputFormat.getExtension());
+        if (outputFormat == OutputFormat.COMPRESSED) {
+            CompressedRaster.write(outputPath, result, CompressedRaster.Codec.LZ4, true);
+        } else if (outputFormat == OutputFormat.GEOTIFF) {
+            GeoTiffIO.write(outputPath, result, DataType.FLOAT32, null);
+        } else if (outputFormat == OutputFormat.ASCII_GRID) {
+            textWriter.writeAsciiGrid(outputPath, result);
+        } else {
+            textWriter.writeCsv(outputPath, result);
         }
     }
 
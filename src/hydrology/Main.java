@@ -1,36 +1,22 @@
 package hydrology;
 
 import java.io.File;
-import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.util.Scanner;
 
 
 public class Main {
 
     public static void main(String[] args) {
-        // 数据库连接信息
-        String dbUrl = "jdbc:mysql://localhost:3306/rainfall";
-        String user = "root";
-        String password = "12345";
-
-        // 初始化DEM和其它必要参数
-        String demFilePath = "./data/dem.asc"; // DEM文件路径，请根据实际情况调整
-
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, password)) {
-            System.out.println("成功连接到rainfall数据库");
-
         // 解析命令行参数或加载配置文件来获取文件路径和结果目录
         String demFilePath = getArgumentOrDefault(args, "dem", "./data/dem90m.asc");
         String resultDir = getArgumentOrDefault(args, "result", "./classifyresult");
+        // 栅格存储位置：heap（默认）、direct（堆外直接内存）、mapped（内存映射临时文件，适合超大DEM）
+        // 或 tiled（带重叠边的分块临时文件 + LRU 分块缓存，内存占用有界）
+        Grids.setStorage(GridStorage.valueOf(getArgumentOrDefault(args, "storage", "heap").toUpperCase()));
+        // packed true 时整型DEM读入后压缩为分块表示（基准值 + 按位打包的差值），常驻内存约为原来的 1/3~1/4
+        boolean packed = Boolean.parseBoolean(getArgumentOrDefault(args, "packed", "false"));
 
-        try (Scanner inDEM = new Scanner(new File(demFilePath))) {
-            processHydrologyData(demFilePath, resultDir, inDEM);
+        try {
+            processHydrologyData(demFilePath, resultDir, packed);
             System.out.println("Process completed successfully.");
         } catch (Exception e) {
             System.err.println("Error during processing: " + e.getMessage());
@@ -38,36 +24,45 @@ public class Main {
         }
     }
 
-    private static void processHydrologyData(String demFilePath, String resultDir, Scanner inDEM) throws Exception {
-        // 读取DEM数据
+    private static void processHydrologyData(String demFilePath, String resultDir, boolean packed) throws Exception {
+        // 读取DEM数据（头部只解析一次，数据体内存映射并行解析）
         System.out.println("开始读取DEM数据...");
-        DEMReader demReader = DEMReader.readHeader(new File(demFilePath));
-        demReader.readDEM(inDEM);
-        int[][] dem = demReader.getDEM();
-        double cellsize = demReader.getCellSize();
-        double xllcorner = demReader.getXllcorner();
-        double yllcorner = demReader.getYllcorner();
-        int NODATA_value = demReader.getNODATA_value();
+        DEMReader demReader = DEMReader.read(new File(demFilePath));
+        if (packed) {
+            demReader.pack();
+        }
+        Grid dem = demReader.getGrid();
+        double NODATA_value = demReader.getNODATA_value();
         System.out.println("DEM 数据读取完成");
 
 //        // 可视化原始DEM数据
 //        Visualizer.imgInt(dem, resultDir + "/original_dem", "Original DEM", Visualizer::getGrayscaleColor);
 //        System.out.println("原始DEM数据可视化完成");
 //
+//        // 筛查计算：在 4 倍（如 90 m → 360 m）的聚合层级上运行，各阶段直接以该层级代替 dem
+//        DEMPyramid pyramid = new DEMPyramid(dem, DEMPyramid.Aggregation.MEAN);
+//        Grid coarseDEM = pyramid.getLevel(4);
+//        System.out.println("4 倍层级：" + coarseDEM.rows() + " x " + coarseDEM.cols());
+//
 //        // 填洼
 //        System.out.println("开始填洼...");
-//        DEMFiller depressionFiller = new DEMFiller(dem, NODATA_value);
-//        int[][] filledDEM = depressionFiller.fillDepressions();
+//        DEMFiller depressionFiller = new DEMFiller(dem);
+//        WritableGrid filledDEM = depressionFiller.fill();
 //        System.out.println("填洼已完成");
 //
+//        // 平坦区流向解析：填洼后的湖面、谷底按增量梯度排向出口
+//        FlatResolver flatResolver = new FlatResolver(filledDEM);
+//        WritableGrid resolvedDirections = flatResolver.resolveDirections();
+//        System.out.println("平坦区流向解析完成，平坦区 " + flatResolver.getFlatCount() + " 个");
+//
 //        // 可视化填洼后的DEM数据
 //        Visualizer.imgInt(filledDEM, resultDir + "/filled_dem", "Filled DEM", Visualizer::getGrayscaleColor);
 //        System.out.println("填洼后的DEM数据可视化完成");
 //
 //        // 计算坡度
 //        System.out.println("开始计算坡度...");
-//        Slope slopeCalculator = new Slope(dem, demReader.cellsize, -9999);
-//        double[][] slopes = slopeCalculator.calculateSlopes();
+//        Slope slopeCalculator = new Slope(dem);
+//        WritableGrid slopes = slopeCalculator.calculateSlopes();
 //        System.out.println("坡度计算已完成");
 //
 //        // 可视化坡度数据
@@ -76,34 +71,39 @@ public class Main {
 //
 //        // 分类
 //        System.out.println("开始地形分类...");
-//        TerrainClassify terrainClassify = new TerrainClassify(slopes, NODATA_value);
-//        boolean[][] isSteep = terrainClassify.classifyAndCalculateFlow();
+//        TerrainClassify terrainClassify = new TerrainClassify(slopes);
+//        WritableGrid isSteep = terrainClassify.classifyAndCalculateFlow();
 //        System.out.println("地形分类已完成");
 //
 //        // 可视化分类结果
-//        Visualizer.imgBl(isSteep, resultDir + "/classification", "Terrain Classification", slopes, NODATA_value);
+//        Visualizer.imgBl(isSteep, resultDir + "/classification", "Terrain Classification");
 //        System.out.println("分类结果可视化完成");
 //
 //        // 创建 FlowMix 实例并计算流向
 //        System.out.println("开始混合流向计算...");
-//        FlowMix flowMix = new FlowMix(slopes, filledDEM, isSteep, NODATA_value);
-//        int[][] flowDirections = flowMix.calculateFlow();
+//        FlowMix flowMix = new FlowMix(slopes, filledDEM, isSteep, (int) NODATA_value); // 流向为 INT32
+//        WritableGrid flowDirections = flowMix.calculateFlow();
 //        System.out.println("混合流向计算已完成");
 //
 //        // 可视化流向结果
 //        Visualizer.imgInt(flowDirections, resultDir + "/flow_directions", "Flow Directions", Visualizer::getGrayscaleColor);
+//        Grids.release(flowDirections); // 堆外存储时立即释放
 //        System.out.println("流向结果可视化完成");
 //
+//        // 超大DEM：坡度、分类与混合流向逐行流式计算并直接写出 .hgr，内存占用与列数成正比
+//        // （输入应为填洼后的DEM，例如先用 RasterFile.write 写出 filledDEM）
+//        StreamingPipeline.process(Paths.get(resultDir, "filled_dem" + RasterFile.SUFFIX), Paths.get(resultDir), (int) NODATA_value);
+//
 //        // 创建 FlowMixAcc 实例并计算累积流
 //        System.out.println("开始累积流计算...");
 //        FlowMixAcc flowMixAcc = new FlowMixAcc(slopes, dem, isSteep, -9999);
-//        double[][] flowAccumulation = flowMixAcc.calculateFlowAccumulation();
+//        WritableGrid flowAccumulation = flowMixAcc.calculateFlowAccumulation();
 //        System.out.println("累积流计算完成");
 //
-//        // 将累积流结果输出到CSV文件
-//        String outputPath = "./classifyresult/FlowAccumulation.csv";
+//        // 将累积流结果输出为压缩二进制栅格（需要文本时改用 outputToCSV 导出 .csv）
+//        Path outputPath = Paths.get("./classifyresult/FlowAccumulation" + CompressedRaster.SUFFIX);
 //        try {
-//            flowMixAcc.outputToCSV(outputPath, flowAccumulation);
+//            flowMixAcc.outputToCompressed(outputPath, flowAccumulation);
 //            System.out.println("累积流数据已成功输出到 " + outputPath);
 //        } catch (IOException e) {
 //            System.err.println("无法输出累积流数据到文件: " + e.getMessage());
@@ -112,30 +112,35 @@ public class Main {
 //        // 可视化累积流数据
 //        Visualizer.imgDbl(flowAccumulation, resultDir + "/flow_accumulation", "Flow Accumulation", Visualizer::getGrayscaleColor);
 //        System.out.println("累积流数据可视化完成");
+//
+//        // 次生地形指数：TWI、SPI 与 LS 一次遍历算出（单精度），平地按最小坡度 0.1° 计算
+//        TerrainIndices terrainIndices = new TerrainIndices(flowAccumulation, slopes);
+//        terrainIndices.outputToRaster(Paths.get(resultDir), terrainIndices.calculate());
+//        System.out.println("地形指数计算完成");
 
 //        // 反距离权重插值
 //        String filePath = "./data/StationProperty.txt";
 //        InverseDist.readStationProperties(filePath);
-//        InverseDist inverseDist = new InverseDist(dem, cellsize, xllcorner, yllcorner);
+//        InverseDist inverseDist = new InverseDist(dem);
 //        inverseDist.setNODATA_value(NODATA_value);
 //        inverseDist.invInterpolation(resultDir);
 //        System.out.println("反距离权重插值计算完成，结果已保存到指定目录。");
 
 //        // 创建TrendSurface实例
-//        TrendSurface trendSurface = new TrendSurface(dem, 90, xllcorner, yllcorner);
+//        TrendSurface trendSurface = new TrendSurface(dem);
 //        // 设置NODATA值
 //        trendSurface.setNODATA_value(-9999);
 //        // 读取站点属性文件
 //        String stationFilePath = "./data/StationProperty.txt";
 //        TrendSurface.readStationProperties(stationFilePath);
 //        // 执行趋势面插值并保存结果
-//        String rainFlowFilePath = "./data/RainFlow.txt";
+//        String rainFlowFilePath = "./data/rainFlow.txt";
 //        trendSurface.trendSurfaceInterpolation(rainFlowFilePath);
 //        System.out.println("插值计算完成，结果已保存到指定目录。");
 //        System.out.println("趋势面插值完成。");
 
         // 创建RBF实例
-        RBF rbf = new RBF(dem, cellsize, xllcorner, yllcorner);
+        RBF rbf = new RBF(dem);
         rbf.setNODATA_value(NODATA_value);
         // 读取站点属性文件
         String stationPropertiesPath = "./data/StationProperty.txt";
@@ -143,6 +148,9 @@ public class Main {
         // 执行插值计算并保存结果
         rbf.performInterpolation("./result/RBF/");
         System.out.println("RBF插值计算完成，结果已保存到指定目录。");
+        if (dem instanceof TiledGrid) {
+            System.out.println(((TiledGrid) dem).getCacheStats());
+        }
 
     }
 
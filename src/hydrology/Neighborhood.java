@@ -0,0 +1,57 @@
+package hydrology;
+
+/**
+ * 3x3 邻域的偏移表。
+ * 方向顺序为 左上、上、右上、左、右、左下、下、右下，与 D8 编码 {64, 128, 1, 2, 4, 8, 16, 32} 一一对应。
+ * 对内部像元可直接用 index + offsets[k] 访问邻居，省去逐个行列换算和边界检查。
+ */
+public final class Neighborhood {
+
+    public static final int SIZE = 8;
+    public static final int[] ROW = {-1, -1, -1, 0, 0, 1, 1, 1};
+    public static final int[] COL = {-1, 0, 1, -1, 1, -1, 0, 1};
+    public static final int[] D8_CODES = {64, 128, 1, 2, 4, 8, 16, 32};
+    // 到邻居中心的距离（以像元大小为单位）
+    public static final double[] DISTANCE = {Math.sqrt(2), 1, Math.sqrt(2), 1, 1, Math.sqrt(2), 1, Math.sqrt(2)};
+
+    private Neighborhood() {}
+
+    /**
+     * 给定行跨度下 8 个邻居的一维下标差。
+     */
+    public static int[] offsets(int stride) {
+        return offsets(ROW, COL, stride);
+    }
+
+    /**
+     * 任意方向顺序的一维下标差。
+     */
+    public static int[] offsets(int[] rowDeltas, int[] colDeltas, int stride) {
+        int[] offsets = new int[rowDeltas.length];
+        for (int k = 0; k < offsets.length; k++) {
+            offsets[k] = rowDeltas[k] * stride + colDeltas[k];
+        }
+        return offsets;
+    }
+
+    /**
+     * 判断像元是否为内部像元（8 个邻居都在栅格内）。
+     */
+    public static boolean isInterior(int row, int col, int rows, int cols) {
+        return row > 0 && row < rows - 1 && col > 0 && col < cols - 1;
+    }
+
+    /**
+     * 方向 k 的反方向。
+     */
+    public static int opposite(int k) {
+        return SIZE - 1 - k;
+    }
+
+    /**
+     * 方向 k 是否为对角方向。
+     */
+    public static boolean isDiagonal(int k) {
+        return ROW[k] != 0 && COL[k] != 0;
+    }
+}
@@ -0,0 +1,263 @@
+package hydrology;
+
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayFloat;
+import ucar.ma2.ArrayInt;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.jni.netcdf.Nc4Iosp;
+import ucar.nc2.write.Nc4Chunking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 逐日插值结果的 NetCDF 数据立方体（time x y x x），每算完一天追加一层，不再为每天写一个整幅文件。
+ * <p>
+ * 有 netCDF-C 本地库时写 netCDF-4：按 (1, 64, 64) 分块并 deflate 压缩，读取单个像元的时间序列只需解压
+ * 各天对应的一个小分块。没有本地库时退回 netCDF-3（64 位偏移、不压缩），time 为记录维，单点序列按记录跳读。
+ * 另有二维变量 "变量名_mean" 存放多日平均。
+ */
+public class NetCDFCube implements AutoCloseable {
+
+    static final int CHUNK = 64;          // 空间分块边长
+    static final int DEFLATE_LEVEL = 4;
+
+    private final NetcdfFileWriter writer;
+    private final GridHeader header;
+    private final Variable data;
+    private final Variable mean;
+    private final Variable time;
+    private final NetcdfFileWriter.Version version;
+    private int days;
+
+    private NetCDFCube(NetcdfFileWriter writer, GridHeader header, String variable) {
+        this.writer = writer;
+        this.header = header;
+        this.version = writer.getVersion();
+        this.data = writer.findVariable(variable);
+        this.mean = writer.findVariable(variable + "_mean");
+        this.time = writer.findVariable("time");
+    }
+
+    /**
+     * 新建数据立方体，variable 为变量名，units 为数值单位，NODATA 值取 header 并作为 _FillValue。
+     */
+    public static NetCDFCube create(Path file, GridHeader header, String variable, String units) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.deleteIfExists(file);
+
+        NetcdfFileWriter writer;
+        if (Nc4Iosp.isClibraryPresent()) {
+            writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf4, file.toString(), chunking());
+        } else {
+            System.err.println("未找到 netCDF-C 本地库，改为写出不压缩的 netCDF-3 文件: " + file);
+            writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.toString());
+            writer.setLargeFile(true);
+        }
+        try {
+            define(writer, header, variable, units);
+            writer.create();
+            NetCDFCube cube = new NetCDFCube(writer, header, variable);
+            cube.writeCoordinates();
+            return cube;
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private static Nc4Chunking chunking() {
+        return new Nc4Chunking() {
+            @Override
+            public boolean isChunked(Variable v) {
+                return v.getRank() >= 2;
+            }
+
+            @Override
+            public long[] computeChunking(Variable v) {
+                int[] shape = v.getShape();
+                long[] chunks = new long[shape.length];
+                for (int i = 0; i < shape.length; i++) {
+                    // 时间维每层一块，空间维 CHUNK x CHUNK
+                    chunks[i] = i < shape.length - 2 ? 1 : Math.max(1, Math.min(CHUNK, shape[i]));
+                }
+                return chunks;
+            }
+
+            @Override
+            public int getDeflateLevel(Variable v) {
+                return DEFLATE_LEVEL;
+            }
+
+            @Override
+            public boolean isShuffle(Variable v) {
+                return true;
+            }
+        };
+    }
+
+    private static void define(NetcdfFileWriter writer, GridHeader header, String variable, String units) {
+        writer.addUnlimitedDimension("time");
+        writer.addDimension(null, "y", header.getNrows());
+        writer.addDimension(null, "x", header.getNcols());
+
+        Variable time = writer.addVariable(null, "time", ucar.ma2.DataType.INT, "time");
+        writer.addVariableAttribute(time, new Attribute("long_name", "day index"));
+        writer.addVariableAttribute(time, new Attribute("units", "days"));
+        Variable y = writer.addVariable(null, "y", ucar.ma2.DataType.DOUBLE, "y");
+        writer.addVariableAttribute(y, new Attribute("standard_name", "projection_y_coordinate"));
+        writer.addVariableAttribute(y, new Attribute("units", "m"));
+        Variable x = writer.addVariable(null, "x", ucar.ma2.DataType.DOUBLE, "x");
+        writer.addVariableAttribute(x, new Attribute("standard_name", "projection_x_coordinate"));
+        writer.addVariableAttribute(x, new Attribute("units", "m"));
+
+        float fill = (float) header.getNODATA_value();
+        Variable data = writer.addVariable(null, variable, ucar.ma2.DataType.FLOAT, "time y x");
+        writer.addVariableAttribute(data, new Attribute("units", units));
+        writer.addVariableAttribute(data, new Attribute("_FillValue", fill));
+        Variable mean = writer.addVariable(null, variable + "_mean", ucar.ma2.DataType.FLOAT, "y x");
+        writer.addVariableAttribute(mean, new Attribute("units", units));
+        writer.addVariableAttribute(mean, new Attribute("_FillValue", fill));
+
+        writer.addGroupAttribute(null, new Attribute("Conventions", "CF-1.6"));
+        writer.addGroupAttribute(null, new Attribute("xllcorner", header.getXllcorner()));
+        writer.addGroupAttribute(null, new Attribute("yllcorner", header.getYllcorner()));
+        writer.addGroupAttribute(null, new Attribute("cellsize", header.getCellsize()));
+        writer.setFill(false);
+    }
+
+    // 像元中心坐标，y 自北向南与栅格行号一致
+    private void writeCoordinates() throws IOException {
+        double cellsize = header.getCellsize();
+        ArrayDouble.D1 x = new ArrayDouble.D1(header.getNcols());
+        for (int j = 0; j < header.getNcols(); j++) {
+            x.set(j, header.getXllcorner() + (j + 0.5) * cellsize);
+        }
+        ArrayDouble.D1 y = new ArrayDouble.D1(header.getNrows());
+        for (int i = 0; i < header.getNrows(); i++) {
+            y.set(i, header.getYllcorner() + (header.getNrows() - i - 0.5) * cellsize);
+        }
+        write(writer.findVariable("x"), new int[]{0}, x);
+        write(writer.findVariable("y"), new int[]{0}, y);
+    }
+
+    /**
+     * 追加一天的结果（按单精度写出），返回该天的序号。
+     */
+    public synchronized int appendDay(Grid grid) throws IOException {
+        int day = days;
+        writeDay(day, grid);
+        return day;
+    }
+
+    /**
+     * 写出指定序号的一天，各天可以不按顺序写入（如由多个输出线程写出），天数取已写入的最大序号加 1。
+     */
+    public synchronized void writeDay(int day, Grid grid) throws IOException {
+        if (day < 0) {
+            throw new IllegalArgumentException("天序号不能为负: " + day);
+        }
+        checkShape(grid);
+        writeLayer(data, grid, day);
+        ArrayInt.D1 t = new ArrayInt.D1(1);
+        t.set(0, day);
+        write(time, new int[]{day}, t);
+        days = Math.max(days, day + 1);
+    }
+
+    /**
+     * 写出多日平均。
+     */
+    public synchronized void writeMean(Grid grid) throws IOException {
+        checkShape(grid);
+        writeLayer(mean, grid, -1);
+    }
+
+    // 按 CHUNK 行一批写出，批边界与分块对齐，内存占用与列数成正比
+    private void writeLayer(Variable variable, Grid grid, int day) throws IOException {
+        int nrows = grid.rows();
+        int ncols = grid.cols();
+        double[] row = new double[ncols];
+        for (int r0 = 0; r0 < nrows; r0 += CHUNK) {
+            int band = Math.min(CHUNK, nrows - r0);
+            ArrayFloat slab = day < 0 ? new ArrayFloat.D2(band, ncols) : new ArrayFloat.D3(1, band, ncols);
+            int k = 0;
+            for (int i = 0; i < band; i++) {
+                grid.readRow(r0 + i, row);
+                for (int j = 0; j < ncols; j++) {
+                    slab.setFloat(k++, (float) row[j]);
+                }
+            }
+            write(variable, day < 0 ? new int[]{r0, 0} : new int[]{day, r0, 0}, slab);
+        }
+    }
+
+    private void checkShape(Grid grid) {
+        if (grid.rows() != header.getNrows() || grid.cols() != header.getNcols()) {
+            throw new IllegalArgumentException("栅格大小 " + grid.rows() + " x " + grid.cols()
+                    + " 与数据立方体 " + header.getNrows() + " x " + header.getNcols() + " 不一致");
+        }
+    }
+
+    private void write(Variable variable, int[] origin, Array values) throws IOException {
+        try {
+            writer.write(variable, origin, values);
+        } catch (InvalidRangeException e) {
+            throw new IOException("写入 " + variable.getShortName() + " 越界: " + e.getMessage(), e);
+        }
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public NetcdfFileWriter.Version getVersion() {
+        return version;
+    }
+
+    /**
+     * 将已写入的数据刷到磁盘，供其他进程读取已完成的天。
+     */
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * 读取单个像元（row 从顶部起算）的全部时间序列，只读取各天对应的单个值。
+     */
+    public static double[] readSeries(Path file, String variable, int row, int col) throws IOException {
+        try (NetcdfFile nc = NetcdfFile.open(file.toString())) {
+            Variable v = nc.findVariable(variable);
+            if (v == null || v.getRank() != 3) {
+                throw new IOException("文件中没有三维变量 " + variable + ": " + file);
+            }
+            int days = v.getShape(0);
+            double[] series = new double[days];
+            if (days == 0) {
+                return series;
+            }
+            Array values = v.read(new int[]{0, row, col}, new int[]{days, 1, 1});
+            for (int t = 0; t < days; t++) {
+                series[t] = values.getDouble(t);
+            }
+            return series;
+        } catch (InvalidRangeException e) {
+            throw new IOException("像元 (" + row + ", " + col + ") 超出范围: " + e.getMessage(), e);
+        }
+    }
+}
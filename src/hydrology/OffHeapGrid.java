@@ -0,0 +1,280 @@
+package hydrology;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 堆外栅格：像元按行优先、小端序存放在直接内存或内存映射文件中，不占用 Java 堆，也不参与 GC 扫描。
+ * 数据按 1GB 分段存放，单个栅格可以超过 2GB。调用 close() 立即释放内存（映射模式同时删除临时文件），
+ * 不必等待 GC 回收缓冲区；关闭后访问抛出 IllegalStateException。关闭前须等所有访问线程结束，
+ * 与访问并发的 close() 不受保护。
+ */
+public class OffHeapGrid implements WritableGrid, AutoCloseable {
+
+    private static final int BAND_BYTES_SHIFT = 30; // 每段 1GB
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 无法立即释放时退回到由 GC 回收缓冲区
+            System.err.println("堆外内存将由GC回收: " + e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final GridHeader header;
+    private final DataType type;
+    private final int bytesShift;
+    private final int cellShift;
+    private final int cellMask;
+    private final ByteBuffer[] bands;
+    private final Path tempFile;
+    private volatile boolean closed;
+
+    private OffHeapGrid(DataType type, GridHeader header, ByteBuffer[] bands, Path tempFile) {
+        this.header = header;
+        this.type = type;
+        this.bytesShift = Integer.numberOfTrailingZeros(type.getBytes());
+        this.cellShift = BAND_BYTES_SHIFT - bytesShift;
+        this.cellMask = (1 << cellShift) - 1;
+        this.bands = bands;
+        this.tempFile = tempFile;
+    }
+
+    private static int bandCount(DataType type, GridHeader header) {
+        long bytes = (long) Grids.checkedSize(header) * type.getBytes();
+        return (int) Math.max(1, (bytes + (1L << BAND_BYTES_SHIFT) - 1) >>> BAND_BYTES_SHIFT);
+    }
+
+    private static long bandBytes(DataType type, GridHeader header, int band) {
+        long bytes = header.cellCount() * type.getBytes();
+        return Math.min(1L << BAND_BYTES_SHIFT, bytes - ((long) band << BAND_BYTES_SHIFT));
+    }
+
+    /**
+     * 在直接内存中分配栅格（受 -XX:MaxDirectMemorySize 限制），初始值为 0。
+     */
+    public static OffHeapGrid allocateDirect(DataType type, GridHeader header) {
+        ByteBuffer[] bands = new ByteBuffer[bandCount(type, header)];
+        try {
+            for (int b = 0; b < bands.length; b++) {
+                bands[b] = ByteBuffer.allocateDirect((int) bandBytes(type, header, b)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (OutOfMemoryError e) {
+            for (ByteBuffer band : bands) {
+                release(band);
+            }
+            throw e;
+        }
+        return new OffHeapGrid(type, header, bands, null);
+    }
+
+    /**
+     * 在 dir 下创建临时文件并内存映射，页面由操作系统按需换入换出，可处理超过物理内存的栅格。
+     */
+    public static OffHeapGrid allocateMapped(DataType type, GridHeader header, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "grid-", ".tmp");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new OffHeapGrid(type, header, mapBands(channel, 0, type, header, FileChannel.MapMode.READ_WRITE), file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * 将文件中从 position 开始的像元数据直接映射为栅格（不复制）。
+     * READ_ONLY 模式下写入抛出 ReadOnlyBufferException，PRIVATE 模式下写入只作用于内存副本。
+     */
+    static OffHeapGrid map(FileChannel channel, long position, DataType type, GridHeader header,
+                           FileChannel.MapMode mode) throws IOException {
+        return new OffHeapGrid(type, header, mapBands(channel, position, type, header, mode), null);
+    }
+
+    private static ByteBuffer[] mapBands(FileChannel channel, long position, DataType type, GridHeader header,
+                                         FileChannel.MapMode mode) throws IOException {
+        ByteBuffer[] bands = new ByteBuffer[bandCount(type, header)];
+        try {
+            for (int b = 0; b < bands.length; b++) {
+                long offset = position + ((long) b << BAND_BYTES_SHIFT);
+                bands[b] = channel.map(mode, offset, bandBytes(type, header, b)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ByteBuffer band : bands) {
+                release(band);
+            }
+            throw e;
+        }
+        return bands;
+    }
+
+    @Override
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public DataType getType() {
+        return type;
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return getDouble(row * header.getNcols() + col);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        ByteBuffer band = band(index >>> cellShift);
+        int offset = (index & cellMask) << bytesShift;
+        switch (type) {
+            case UINT8: return band.get(offset) & 0xFF;
+            case INT16: return band.getShort(offset);
+            case INT32: return band.getInt(offset);
+            case FLOAT32: return band.getFloat(offset);
+            default: return band.getDouble(offset);
+        }
+    }
+
+    /**
+     * 按一维下标读取整型像元（浮点类型四舍五入）。
+     */
+    public int getInt(int index) {
+        ByteBuffer band = band(index >>> cellShift);
+        int offset = (index & cellMask) << bytesShift;
+        switch (type) {
+            case UINT8: return band.get(offset) & 0xFF;
+            case INT16: return band.getShort(offset);
+            case INT32: return band.getInt(offset);
+            case FLOAT32: return Math.round(band.getFloat(offset));
+            default: return (int) Math.round(band.getDouble(offset));
+        }
+    }
+
+    @Override
+    public void setDouble(int row, int col, double value) {
+        setDouble(row * header.getNcols() + col, value);
+    }
+
+    @Override
+    public void setDouble(int index, double value) {
+        ByteBuffer band = band(index >>> cellShift);
+        int offset = (index & cellMask) << bytesShift;
+        switch (type) {
+            case UINT8: band.put(offset, (byte) (int) value); break;
+            case INT16: band.putShort(offset, (short) value); break;
+            case INT32: band.putInt(offset, (int) value); break;
+            case FLOAT32: band.putFloat(offset, (float) value); break;
+            default: band.putDouble(offset, value);
+        }
+    }
+
+    // 关闭后缓冲区的内存已归还，必须在读写之前检查，否则会访问已释放的内存
+    private ByteBuffer band(int b) {
+        checkOpen();
+        return bands[b];
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("堆外栅格已关闭" + (tempFile != null ? ": " + tempFile : ""));
+        }
+    }
+
+    /**
+     * 将一行的原始字节（小端序）复制到 dst 的当前位置。
+     */
+    void getRowBytes(int row, ByteBuffer dst) {
+        transferRow(row, dst, false);
+    }
+
+    /**
+     * 用 src 当前位置起的原始字节（小端序）覆盖一行。
+     */
+    void putRowBytes(int row, ByteBuffer src) {
+        transferRow(row, src, true);
+    }
+
+    private void transferRow(int row, ByteBuffer buffer, boolean write) {
+        long cell = (long) row * header.getNcols();
+        long end = cell + header.getNcols();
+        while (cell < end) {
+            ByteBuffer band = band((int) (cell >>> cellShift));
+            int from = (int) (cell & cellMask);
+            int count = (int) Math.min(end - cell, (long) cellMask + 1 - from);
+            ByteBuffer slice = band.duplicate();
+            slice.position(from << bytesShift).limit((from + count) << bytesShift);
+            if (write) {
+                ByteBuffer src = buffer.duplicate();
+                src.limit(src.position() + slice.remaining());
+                slice.put(src);
+                buffer.position(src.position());
+            } else {
+                buffer.put(slice);
+            }
+            cell += count;
+        }
+    }
+
+    /**
+     * 将映射到文件的修改写回磁盘（直接内存无需写回）。
+     */
+    public void force() {
+        checkOpen();
+        for (ByteBuffer band : bands) {
+            if (band instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) band).force();
+            }
+        }
+    }
+
+    /**
+     * 立即释放堆外内存或解除映射，映射模式下删除临时文件；重复调用无效果。
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true; // 先置标记再释放，之后的访问在触及缓冲区之前即失败
+        for (ByteBuffer band : bands) {
+            release(band);
+        }
+        if (tempFile != null) {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 立即释放直接缓冲区或映射缓冲区；不支持时交给GC。
+     */
+    static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 切片或复制得到的缓冲区不能单独释放，交给GC
+        }
+    }
+}
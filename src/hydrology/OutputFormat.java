@@ -0,0 +1,26 @@
+package hydrology;
+
+/**
+ * 栅格结果的输出格式。
+ */
+public enum OutputFormat {
+    /** 逐像元文本，供下游工具导入，需显式选择。 */
+    CSV(".csv"),
+    /** ESRI ASCII Grid 文本，可由 DEMReader 读回，需显式选择。 */
+    ASCII_GRID(".asc"),
+    GEOTIFF(".tif"),
+    /** 所有天写入同一个 time x y x x 的 NetCDF 数据立方体。 */
+    NETCDF(".nc"),
+    /** 按行块 LZ4 压缩的单精度二进制栅格（默认）。 */
+    COMPRESSED(CompressedRaster.SUFFIX);
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,142 @@
+package hydrology;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 计算结果的后台输出：计算线程提交算完的栅格后立即继续算下一天，写文件、出图由输出线程完成。
+ * <p>
+ * 同时在途（已提交但未写完）的栅格数有上限，达到上限时 submit 阻塞，内存占用因此有界。
+ * 同一栅格的各项输出并行执行，全部完成后由本类释放该栅格。任一输出失败后不再执行排队中的输出，
+ * 之后的 submit 与 close 抛出该异常。
+ */
+public class OutputPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_WRITERS = 2;
+    public static final int DEFAULT_MAX_PENDING = 2;
+
+    /**
+     * 对一个栅格的一项输出。
+     */
+    public interface Output {
+        void write(Grid grid) throws IOException;
+    }
+
+    private final ExecutorService writers;
+    private final Semaphore pending;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private boolean closed;
+
+    public OutputPipeline() {
+        this(DEFAULT_WRITERS, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param writers    输出线程数。
+     * @param maxPending 同时在途的栅格数上限。
+     */
+    public OutputPipeline(int writers, int maxPending) {
+        if (writers <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("输出线程数与在途上限必须为正: " + writers + ", " + maxPending);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writers, r -> {
+            Thread t = new Thread(r, "grid-writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * 提交一个栅格及其各项输出，提交后调用方不得再修改该栅格。在途栅格已达上限时阻塞。
+     * 提交即转交所有权：输出结束后（无论成功与否）栅格由 Grids.release 释放。
+     */
+    public void submit(Grid grid, Output... outputs) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("输出队列已关闭");
+        }
+        try {
+            checkFailure();
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Grids.release(grid);
+            throw new IOException("等待输出队列时被中断", e);
+        } catch (IOException e) {
+            Grids.release(grid);
+            throw e;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(outputs.length);
+        if (outputs.length == 0) {
+            finish(grid);
+            return;
+        }
+        for (Output output : outputs) {
+            writers.execute(() -> {
+                try {
+                    if (failure.get() == null) {
+                        output.write(grid);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        finish(grid);
+                    }
+                }
+            });
+        }
+    }
+
+    private void finish(Grid grid) {
+        try {
+            Grids.release(grid);
+        } finally {
+            pending.release();
+        }
+    }
+
+    /**
+     * 已有输出失败时抛出该异常。
+     */
+    public void checkFailure() throws IOException {
+        Throwable e = failure.get();
+        if (e == null) {
+            return;
+        }
+        if (e instanceof UncheckedIOException) {
+            e = e.getCause();
+        }
+        throw new IOException("输出失败: " + e.getMessage(), e);
+    }
+
+    /**
+     * 等待所有已提交的输出完成并关闭输出线程；有输出失败时抛出异常。
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writers.shutdown();
+        try {
+            while (!writers.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("等待结果输出完成...");
+            }
+        } catch (InterruptedException e) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("等待结果输出时被中断", e);
+        }
+        checkFailure();
+    }
+}
@@ -0,0 +1,329 @@
+package hydrology;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * 整型DEM的分块压缩内存表示（只读）。
+ * <p>
+ * 栅格按 64 x 64 分块，每块只存块内最小值（基准值）与各像元相对基准值的差，差值按块内所需的最少位数紧密打包；
+ * 块内有 NODATA 时取全 1 的差值作为标记，全部为 NODATA 的块不占用打包空间。地形起伏平缓时每个像元通常只需 8~12 位。
+ * <p>
+ * 读取时整块解码为 int 数组并缓存，邻域计算在解码后的块内进行。缓存命中不加锁；未命中时解码并按时钟算法
+ * （近似 LRU）换出最久未被访问的块。按行并行的邻域计算中，公共线程池的每个线程同时处在不同的分块行上，
+ * 因此缓存默认容纳 2 × 并行度 + 2 行分块（每个线程当前行与相邻行各一行分块，另留两行余量），
+ * 逐行扫描时每块通常只需解码一次；解码次数见 {@link #getDecodes}。
+ */
+public class PackedGrid implements Grid {
+
+    static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int MIN_CACHE_TILES = 64;
+
+    private final GridHeader header;
+    private final DataType type;
+    private final int nrows;
+    private final int ncols;
+    private final int nodata;
+    private final int tilesAcross;
+    private final int[] base;      // 每块的基准值
+    private final byte[] bits;     // 每块每个像元的位数
+    private final boolean[] marked; // 块内是否含 NODATA（全 1 差值为标记）
+    private final long[][] packed; // 每块打包后的差值，全部为 NODATA 或全部相同时为 null
+
+    private final AtomicReferenceArray<int[]> decoded;
+    private final byte[] referenced;  // 时钟算法的访问标记，允许竞争写
+    private final int[] resident;     // 时钟环中的块号，-1 为空位
+    private final int capacity;
+    private int hand;
+    private final LongAdder decodes = new LongAdder();
+
+    private PackedGrid(GridHeader header, DataType type, int nodata, int tilesAcross, int[] base, byte[] bits,
+                       boolean[] marked, long[][] packed, int cacheTiles) {
+        this.header = header;
+        this.type = type;
+        this.nrows = header.getNrows();
+        this.ncols = header.getNcols();
+        this.nodata = nodata;
+        this.tilesAcross = tilesAcross;
+        this.base = base;
+        this.bits = bits;
+        this.marked = marked;
+        this.packed = packed;
+        this.capacity = Math.min(base.length, Math.max(1, cacheTiles));
+        this.decoded = new AtomicReferenceArray<>(base.length);
+        this.referenced = new byte[base.length];
+        this.resident = new int[capacity];
+        Arrays.fill(resident, -1);
+    }
+
+    /**
+     * 压缩整型栅格（UINT8、INT16、INT32），解码缓存取默认大小：随公共线程池的并行度增大，
+     * 为 (2 × 并行度 + 2) 行分块，至少 {@value #MIN_CACHE_TILES} 块。
+     */
+    public static PackedGrid pack(Grid source) {
+        int tilesAcross = (source.cols() + TILE_SIZE - 1) >> TILE_SHIFT;
+        long tileRows = 2L * ForkJoinPool.getCommonPoolParallelism() + 2;
+        return pack(source, (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_CACHE_TILES, tileRows * tilesAcross)));
+    }
+
+    /**
+     * 压缩整型栅格（UINT8、INT16、INT32），cacheTiles 为缓存的解码块数（每块 16KB）。
+     */
+    public static PackedGrid pack(Grid source, int cacheTiles) {
+        DataType type = source.getType();
+        if (type == DataType.FLOAT32 || type == DataType.FLOAT64) {
+            throw new IllegalArgumentException("只能压缩整型栅格，当前类型 " + type);
+        }
+        GridHeader header = source.getHeader();
+        double nodataValue = header.getNODATA_value();
+        if (nodataValue != (int) nodataValue) {
+            throw new IllegalArgumentException("NODATA 值必须为整数: " + nodataValue);
+        }
+        int nodata = (int) nodataValue;
+        int nrows = source.rows();
+        int ncols = source.cols();
+        int tilesDown = (nrows + TILE_SIZE - 1) >> TILE_SHIFT;
+        int tilesAcross = (ncols + TILE_SIZE - 1) >> TILE_SHIFT;
+        int tiles = tilesDown * tilesAcross;
+        int[] base = new int[tiles];
+        byte[] bits = new byte[tiles];
+        boolean[] marked = new boolean[tiles];
+        long[][] packed = new long[tiles][];
+
+        // 按分块行并行编码，每个任务读入 TILE_SIZE 行
+        IntStream.range(0, tilesDown).parallel().forEach(tr -> {
+            int row0 = tr << TILE_SHIFT;
+            int rows = Math.min(TILE_SIZE, nrows - row0);
+            double[][] band = new double[rows][ncols];
+            for (int i = 0; i < rows; i++) {
+                source.readRow(row0 + i, band[i]);
+            }
+            int[] values = new int[TILE_SIZE * TILE_SIZE];
+            for (int tc = 0; tc < tilesAcross; tc++) {
+                int col0 = tc << TILE_SHIFT;
+                int cols = Math.min(TILE_SIZE, ncols - col0);
+                int n = 0;
+                for (int i = 0; i < rows; i++) {
+                    for (int j = 0; j < cols; j++) {
+                        values[n++] = (int) band[i][col0 + j];
+                    }
+                }
+                int tile = tr * tilesAcross + tc;
+                encode(values, n, nodata, tile, base, bits, marked, packed);
+            }
+        });
+        return new PackedGrid(header, type, nodata, tilesAcross, base, bits, marked, packed, cacheTiles);
+    }
+
+    private static void encode(int[] values, int n, int nodata, int tile, int[] base, byte[] bits, boolean[] marked,
+                               long[][] packed) {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        boolean hasNoData = false;
+        for (int k = 0; k < n; k++) {
+            int v = values[k];
+            if (v == nodata) {
+                hasNoData = true;
+            } else {
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+        }
+        if (min > max) {
+            // 全部为 NODATA
+            base[tile] = nodata;
+            return;
+        }
+        base[tile] = (int) min;
+        marked[tile] = hasNoData;
+        long range = max - min;
+        // 含 NODATA 时多留一个值，使标记（全 1）不与有效差值重合
+        int width = 64 - Long.numberOfLeadingZeros(hasNoData ? range + 1 : range);
+        bits[tile] = (byte) width;
+        if (width == 0) {
+            return;
+        }
+        long sentinel = (1L << width) - 1;
+        long[] words = new long[(int) (((long) n * width + 63) >>> 6)];
+        long bitPos = 0;
+        for (int k = 0; k < n; k++) {
+            long delta = values[k] == nodata ? sentinel : values[k] - min;
+            int word = (int) (bitPos >>> 6);
+            int shift = (int) (bitPos & 63);
+            words[word] |= delta << shift;
+            if (shift + width > 64) {
+                words[word + 1] |= delta >>> (64 - shift);
+            }
+            bitPos += width;
+        }
+        packed[tile] = words;
+    }
+
+    @Override
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * 压缩前的像元类型，复制（如 Grids.copy）得到的可写栅格仍为该类型。
+     */
+    @Override
+    public DataType getType() {
+        return type;
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return get(row, col);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return get(index / ncols, index % ncols);
+    }
+
+    @Override
+    public boolean isNoData(int row, int col) {
+        return get(row, col) == nodata;
+    }
+
+    @Override
+    public boolean isNoData(int index) {
+        return get(index / ncols, index % ncols) == nodata;
+    }
+
+    public int get(int row, int col) {
+        int tile = (row >> TILE_SHIFT) * tilesAcross + (col >> TILE_SHIFT);
+        return tile(tile)[(row & TILE_MASK) << TILE_SHIFT | (col & TILE_MASK)];
+    }
+
+    @Override
+    public void readRow(int row, double[] dst) {
+        int tileRow = (row >> TILE_SHIFT) * tilesAcross;
+        int offsetInTile = row & TILE_MASK;
+        for (int tc = 0; tc < tilesAcross; tc++) {
+            int tile = tileRow + tc;
+            int[] values = tile(tile);
+            int cols = tileCols(tile);
+            int from = offsetInTile << TILE_SHIFT;
+            int col0 = tc << TILE_SHIFT;
+            for (int j = 0; j < cols; j++) {
+                dst[col0 + j] = values[from + j];
+            }
+        }
+    }
+
+    // 块内列数：最右一列分块可能不满
+    private int tileCols(int tile) {
+        int col0 = (tile % tilesAcross) << TILE_SHIFT;
+        return Math.min(TILE_SIZE, ncols - col0);
+    }
+
+    private int tileRows(int tile) {
+        int row0 = (tile / tilesAcross) << TILE_SHIFT;
+        return Math.min(TILE_SIZE, nrows - row0);
+    }
+
+    private int[] tile(int tile) {
+        int[] values = decoded.get(tile);
+        if (values != null) {
+            if (referenced[tile] == 0) { // 已有标记时不再写，避免多线程争用同一缓存行
+                referenced[tile] = 1;
+            }
+            return values;
+        }
+        return load(tile);
+    }
+
+    private synchronized int[] load(int tile) {
+        int[] values = decoded.get(tile);
+        if (values != null) {
+            return values;
+        }
+        values = decode(tile);
+        // 时钟算法：跳过最近被访问过的块（清除其标记），换出第一个未被访问的块；至多转两圈
+        for (int step = 0; step < 2 * capacity && resident[hand] >= 0 && referenced[resident[hand]] != 0; step++) {
+            referenced[resident[hand]] = 0;
+            hand = (hand + 1) % capacity;
+        }
+        if (resident[hand] >= 0) {
+            decoded.set(resident[hand], null);
+        }
+        resident[hand] = tile;
+        referenced[tile] = 1;
+        hand = (hand + 1) % capacity;
+        decoded.set(tile, values);
+        decodes.increment();
+        return values;
+    }
+
+    // 解码为 TILE_SIZE x TILE_SIZE 的数组（行宽固定，边缘分块的多余部分不用），块内下标只需移位
+    private int[] decode(int tile) {
+        int rows = tileRows(tile);
+        int cols = tileCols(tile);
+        int[] values = new int[TILE_SIZE * TILE_SIZE];
+        int width = bits[tile];
+        int min = base[tile];
+        if (width == 0) {
+            Arrays.fill(values, min);
+            return values;
+        }
+        long[] words = packed[tile];
+        long mask = (1L << width) - 1;
+        long sentinel = marked[tile] ? mask : -1;
+        long bitPos = 0;
+        for (int i = 0; i < rows; i++) {
+            int offset = i << TILE_SHIFT;
+            for (int j = 0; j < cols; j++) {
+                int word = (int) (bitPos >>> 6);
+                int shift = (int) (bitPos & 63);
+                long delta = words[word] >>> shift;
+                if (shift + width > 64) {
+                    delta |= words[word + 1] << (64 - shift);
+                }
+                delta &= mask;
+                values[offset + j] = delta == sentinel ? nodata : (int) (min + delta);
+                bitPos += width;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 打包数据占用的字节数（不含解码缓存）。
+     */
+    public long getPackedBytes() {
+        long bytes = (long) base.length * (Integer.BYTES + 2 + 16);
+        for (long[] words : packed) {
+            if (words != null) {
+                bytes += (long) words.length * Long.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 解码缓存最多占用的字节数。
+     */
+    public long getCacheBytes() {
+        return (long) capacity * TILE_SIZE * TILE_SIZE * Integer.BYTES;
+    }
+
+    /**
+     * 压缩前（按原类型存储）的字节数与打包后字节数之比。
+     */
+    public double getCompressionRatio() {
+        return (double) header.cellCount() * type.getBytes() / getPackedBytes();
+    }
+
+    /**
+     * 已解码的块次数，远大于块数时说明缓存过小。
+     */
+    public long getDecodes() {
+        return decodes.sum();
+    }
+}
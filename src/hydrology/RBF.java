@@ -10,15 +10,20 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.HashMap;
+import java.util.Map;
 
 public class RBF {
 
-    private int[][] dem;
+    private Grid dem;
     private double cellSize;
     private double xllcorner;
     private double yllcorner;
-    private int NODATA_value;
+    private double NODATA_value;
+    private OutputFormat outputFormat = OutputFormat.COMPRESSED; // 结果输出格式，CSV 需显式选择
+    private GridTextWriter textWriter = new GridTextWriter(); // CSV / ASCII 文本输出
+    private int maxPendingDays = OutputPipeline.DEFAULT_MAX_PENDING; // 后台输出的在途天数上限
+    private Path rainfallFile = Paths.get("./data/rainFlow.txt"); // 逐日站点降水文件
     private Map<Integer, Station2> stations = new HashMap<>();
     // 定义源和目标坐标参考系统
     private static final String SRC_CRS = "EPSG:4326"; // WGS84地理坐标系
@@ -35,17 +40,45 @@ public class RBF {
             throw new RuntimeException("Failed to initialize coordinate transformation", e);
         }
     }
-    public RBF(int[][] dem, double cellSize, double xllcorner, double yllcorner) {
+    public RBF(Grid dem) {
         this.dem = dem;
-        this.cellSize = cellSize;
-        this.xllcorner = xllcorner;
-        this.yllcorner = yllcorner;
+        this.cellSize = dem.getHeader().getCellsize();
+        this.xllcorner = dem.getHeader().getXllcorner();
+        this.yllcorner = dem.getHeader().getYllcorner();
     }
 
-    public void setNODATA_value(int NODATA_value) {
+    public void setNODATA_value(double NODATA_value) {
         this.NODATA_value = NODATA_value;
     }
 
+    /**
+     * 设置结果输出格式（默认为压缩二进制栅格；另有 CSV、分块压缩的 GeoTIFF、逐日追加的 NetCDF 数据立方体）。
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * 设置文本输出（CSV、ASCII）中浮点数保留的小数位数（有损），默认按最短往返表示无损输出（GridTextWriter.SHORTEST）。
+     */
+    public void setTextPrecision(int precision) {
+        this.textWriter = new GridTextWriter(precision);
+    }
+
+    /**
+     * 设置同时等待输出的天数上限（默认 2），计算与写文件、出图重叠进行，内存占用随该值增加。
+     */
+    public void setMaxPendingDays(int maxPendingDays) {
+        this.maxPendingDays = maxPendingDays;
+    }
+
+    /**
+     * 设置逐日站点降水文件（默认 ./data/rainFlow.txt）。
+     */
+    public void setRainfallFile(String filePath) {
+        this.rainfallFile = Paths.get(filePath);
+    }
+
     /**
      * 读取站点属性文件并存储到Map中。
      */
@@ -78,87 +111,67 @@ public class RBF {
         }
     }
 
-    /**
-     * 读取rainFlow文件，返回每日降水量数据列表。
-     */
-    public List<Map<Integer, Double>> readRainFlowFile(String filePath) throws IOException {
-        List<Map<Integer, Double>> dailyPrecipitationMaps = new ArrayList<>();
-        Map<Integer, Integer> stationIndexMap = new HashMap<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader("./data/rainFlow.txt"))) {
-            String header = br.readLine(); // 获取表头
-            if (header != null) {
-                String[] headers = header.split("\t");
-                for (int i = 1; i < headers.length; i++) { // 跳过日期列
-                    int stationId = Integer.parseInt(headers[i]);
-                    stationIndexMap.put(stationId, i - 1);
-                }
-            }
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split("\t");
-                if (values.length > 1) {
-                    String date = values[0]; // 假设第一列是日期
-                    Map<Integer, Double> precipitationMap = new HashMap<>();
-
-                    for (Map.Entry<Integer, Integer> entry : stationIndexMap.entrySet()) {
-                        int stationId = entry.getKey();
-                        int index = entry.getValue();
-                        if (index + 1 < values.length) { // +1 因为跳过了日期列
-                            double precipitation = Double.parseDouble(values[index + 1]);
-                            precipitationMap.put(stationId, precipitation);
-                            //System.out.println("  Station ID: " + stationId + ", Precipitation: " + precipitation);
-                        }
-                    }
-                    dailyPrecipitationMaps.add(precipitationMap);
-                }
-            }
-        }
-
-        return dailyPrecipitationMaps;
-    }
-
     /**
      * 执行径向基函数插值计算，并保存结果到CSV文件。
      */
     public void performInterpolation(String resultDir) throws Exception {
-        List<Map<Integer, Double>> dailyPrecipitationMaps = readRainFlowFile("./data/rainFlow.txt");
-
-//            // 读取降水量数据
-//            String rainFlowPath = "./data/rainFlow.txt";
-//            dailyPrecipitationMaps = readRainFlowFile(rainFlowPath);
-
-        // 对每一天的数据进行插值计算
-        for (int day = 0; day < dailyPrecipitationMaps.size(); day++) {
-            Map<Integer, Double> precipitationData = dailyPrecipitationMaps.get(day);
-            double[][] interpolatedResults = new double[dem.length][dem[0].length];
-
-            for (int row = 0; row < dem.length; row++) {
-                for (int col = 0; col < dem[row].length; col++) {
-                    if (dem[row][col] != NODATA_value) {
-                        double interpolatedValue = calculateInterpolatedValue(row, col, precipitationData);
-                        interpolatedResults[row][col] = interpolatedValue;
-//                        // 输出特定栅格点的插值结果用于调试
-//                        if (row % 10 == 0 && col % 10 == 0) { // 每隔10个点输出一次
-//                            System.out.printf("栅格点 (%d, %d): 插值结果 = %.2f\n", row, col, interpolatedValue);
-//                        }
-                    } else {
-                        interpolatedResults[row][col] = NODATA_value;
+        // 站点顺序固定，每天的观测值按此顺序取到连续数组中，缺测为 NaN
+        Station2[] stationList = stations.values().toArray(new Station2[0]);
+        int[] stationIds = new int[stationList.length];
+        for (int k = 0; k < stationList.length; k++) {
+            stationIds[k] = stationList[k].getStationId();
+        }
+        double[] observations = new double[stationList.length];
+
+        // 对每一天的数据进行插值计算；NETCDF 格式下所有天写入同一个数据立方体。
+        // 每天算完后交给输出线程写文件和出图，同时计算下一天
+        try (NetCDFCube cube = outputFormat == OutputFormat.NETCDF
+                ? NetCDFCube.create(Paths.get(resultDir, "interpolated.nc"), dem.getHeader().withNODATA_value(NODATA_value),
+                        "precipitation", "mm") : null;
+             OutputPipeline output = new OutputPipeline(OutputPipeline.DEFAULT_WRITERS, maxPendingDays);
+             RainfallStore.BlockReader rainfall = RainfallStore.open(rainfallFile, RainfallStore.DEFAULT_BLOCK_DAYS)) {
+            // 降水数据按块流式读取，长序列也只占一块的内存
+            RainfallStore block;
+            while ((block = rainfall.next()) != null) {
+                int[] columns = block.columnsOf(stationIds);
+                for (int d = 0; d < block.getDays(); d++) {
+                    int day = block.getFirstDay() + d;
+                    block.readDay(d, columns, observations);
+                    WritableGrid interpolatedResults = Grids.create(DataType.FLOAT64, dem.getHeader().withNODATA_value(NODATA_value));
+
+                    for (int row = 0; row < dem.rows(); row++) {
+                        for (int col = 0; col < dem.cols(); col++) {
+                            int index = dem.index(row, col);
+                            if (!dem.isNoData(index)) {
+                                double interpolatedValue = calculateInterpolatedValue(row, col, stationList, observations);
+                                interpolatedResults.setDouble(index, interpolatedValue);
+//                                // 输出特定栅格点的插值结果用于调试
+//                                if (row % 10 == 0 && col % 10 == 0) { // 每隔10个点输出一次
+//                                    System.out.printf("栅格点 (%d, %d): 插值结果 = %.2f\n", row, col, interpolatedValue);
+//                                }
+                            } else {
+                                interpolatedResults.setDouble(index, NODATA_value);
+                            }
+                        }
                     }
+
+                    // 按输出格式写入插值结果，由输出线程写出并释放
+                    int dayIndex = day;
+                    output.submit(interpolatedResults,
+                            grid -> {
+                                if (cube != null) {
+                                    cube.writeDay(dayIndex, grid);
+                                } else {
+                                    writeResult(grid, Paths.get(resultDir), "interpolated_day_" + (dayIndex + 1));
+                                }
+                            },
+                            grid -> Visualizer.imgDbl(grid, "./result/RBF/result" + (dayIndex + 1), "Interpolation Result Day " + (dayIndex + 1), Visualizer::getGrayscaleColor));
                 }
             }
-
-            // 构建输出文件路径
-            Path outputPath = Paths.get(resultDir, "interpolated_day_" + (day + 1) + ".csv");
-
-            // 将插值结果写入CSV文件
-            writeResultToCSV(interpolatedResults, outputPath);
-            Visualizer.imgDbl(interpolatedResults, "./result/RBF/result" + (day + 1), "Interpolation Result Day " + (day + 1), Visualizer::getGrayscaleColor);
         }
     }
 
-    private double calculateInterpolatedValue(int row, int col, Map<Integer, Double> precipitationData) throws Exception {
+    private double calculateInterpolatedValue(int row, int col, Station2[] stationList, double[] observations) throws Exception {
         // 栅格点的UTM坐标可以直接从行列索引计算得出
         double gridX = col * cellSize + xllcorner;
         double gridY = row * cellSize + yllcorner;
@@ -173,8 +186,10 @@ public class RBF {
 
         // 获取坐标转换工具
         MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
-        for (Station2 station : stations.values()) {
-            if (precipitationData.containsKey(station.getStationId())) {
+        for (int k = 0; k < stationList.length; k++) {
+            Station2 station = stationList[k];
+            double observed = observations[k];
+            if (!Double.isNaN(observed)) { // 当天缺测的站点不参与插值
                 // 创建一个DirectPosition2D来表示站点的地理坐标
                 DirectPosition2D geoPosition = new DirectPosition2D(sourceCRS, station.getLatitude(),station.getLongitude());
 
@@ -195,12 +210,12 @@ public class RBF {
 
                 if (distance == 0) {
                     // 如果栅格点与站点完全重合，则直接使用该站点的数据
-                    interpolatedValue = precipitationData.get(station.getStationId());
+                    interpolatedValue = observed;
                     isExactMatch = true;
                     break;
                 } else {
                     double weight = rbf(distance); // 使用RBF函数计算权重
-                    interpolatedValue += precipitationData.get(station.getStationId()) * weight;
+                    interpolatedValue += observed * weight;
                     sumWeights += weight;
                 }
             }
@@ -228,17 +243,18 @@ public class RBF {
     }
 
     /**
-     * 将插值结果输出到CSV文件。
+     * 按设定的输出格式写出插值结果，baseName 不含扩展名。
      */
-    private void writeResultToCSV(double[][] result, Path outputPath) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(outputPath)) {
-            for (int i = 0; i < result.length; i++) {
-                for (int j = 0; j < result[i].length; j++) {
-                    writer.write(String.valueOf(result[i][j]));
-                    if (j < result[i].length - 1) writer.write(",");
-                }
-                writer.newLine();
-            }
+    private void writeResult(Grid result, Path dir, String baseName) throws IOException {
+        Path outputPath = dir.resolve(baseName + outputFormat.getExtension());
+        if (outputFormat == OutputFormat.COMPRESSED) {
+            CompressedRaster.write(outputPath, result, CompressedRaster.Codec.LZ4, true);
+        } else if (outputFormat == OutputFormat.GEOTIFF) {
+            GeoTiffIO.write(outputPath, result, DataType.FLOAT32, null);
+        } else if (outputFormat == OutputFormat.ASCII_GRID) {
+            textWriter.writeAsciiGrid(outputPath, result);
+        } else {
+            textWriter.writeCsv(outputPath, result);
         }
     }
     // 站点类（重命名为Station2）
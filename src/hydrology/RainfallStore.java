@@ -0,0 +1,252 @@
+package hydrology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 逐日站点降水数据（rainFlow 文件：制表符分隔，首行为 "日期 站点编号..."，之后每行一天）。
+ * <p>
+ * 数据按天 x 站点存放在一个连续的 double 数组中（同一天的各站点相邻），缺测（列缺失、空白或 NaN）记在位图中。
+ * 站点编号到列号的映射只在读表头时建立一次。长序列可用 {@link #open} 按若干天一块流式读取，内存只占一块。
+ */
+public class RainfallStore {
+
+    public static final int DEFAULT_BLOCK_DAYS = 366;
+
+    private final int[] stationIds;
+    private final Map<Integer, Integer> columns;
+    private final int firstDay;
+    private final int days;
+    private final String[] dates;
+    private final double[] values;
+    private final long[] missing;
+
+    private RainfallStore(int[] stationIds, Map<Integer, Integer> columns, int firstDay, int days, String[] dates,
+                          double[] values, long[] missing) {
+        this.stationIds = stationIds;
+        this.columns = columns;
+        this.firstDay = firstDay;
+        this.days = days;
+        this.dates = dates;
+        this.values = values;
+        this.missing = missing;
+    }
+
+    /**
+     * 一次读入整个文件。
+     */
+    public static RainfallStore read(Path file) throws IOException {
+        try (BlockReader reader = open(file, Integer.MAX_VALUE)) {
+            RainfallStore store = reader.next();
+            return store != null ? store : new RainfallStore(reader.stationIds, reader.columns, 0, 0,
+                    new String[0], new double[0], new long[0]);
+        }
+    }
+
+    /**
+     * 按每块 blockDays 天流式读取，依次调用 {@link BlockReader#next} 取得各块。
+     */
+    public static BlockReader open(Path file, int blockDays) throws IOException {
+        if (blockDays <= 0) {
+            throw new IllegalArgumentException("每块天数必须为正: " + blockDays);
+        }
+        BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            return new BlockReader(file, br, blockDays);
+        } catch (IOException | RuntimeException e) {
+            br.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 流式读取器，每次返回不超过 blockDays 天的一块。
+     */
+    public static class BlockReader implements AutoCloseable {
+        private final Path file;
+        private final BufferedReader br;
+        private final int blockDays;
+        private final int[] stationIds;
+        private final Map<Integer, Integer> columns = new HashMap<>();
+        private int nextDay;
+        private int lineNumber = 1;
+
+        private BlockReader(Path file, BufferedReader br, int blockDays) throws IOException {
+            this.file = file;
+            this.br = br;
+            this.blockDays = blockDays;
+            String header = br.readLine();
+            if (header == null) {
+                throw new IOException("降水文件为空: " + file);
+            }
+            String[] headers = header.split("\t");
+            stationIds = new int[headers.length - 1];
+            for (int i = 1; i < headers.length; i++) { // 跳过日期列
+                try {
+                    stationIds[i - 1] = Integer.parseInt(headers[i].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("降水文件表头中的站点编号无效: " + headers[i] + "（" + file + "）", e);
+                }
+                if (columns.put(stationIds[i - 1], i - 1) != null) {
+                    throw new IOException("降水文件表头中站点编号重复: " + stationIds[i - 1] + "（" + file + "）");
+                }
+            }
+        }
+
+        public int[] getStationIds() {
+            return stationIds.clone();
+        }
+
+        /**
+         * 读取下一块，文件读完时返回 null。
+         */
+        public RainfallStore next() throws IOException {
+            int stations = stationIds.length;
+            int capacity = Math.min(blockDays, 1024);
+            List<String> dates = new ArrayList<>();
+            double[] values = new double[capacity * stations];
+            long[] missing = new long[bitmapWords((long) capacity * stations)];
+            String line;
+            while (dates.size() < blockDays && (line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int day = dates.size();
+                if (day == capacity) {
+                    capacity = (int) Math.min(blockDays, (long) capacity * 2);
+                    values = Arrays.copyOf(values, capacity * stations);
+                    missing = Arrays.copyOf(missing, bitmapWords((long) capacity * stations));
+                }
+                dates.add(parseDay(line, day * stations, values, missing));
+            }
+            if (dates.isEmpty()) {
+                return null;
+            }
+            int days = dates.size();
+            RainfallStore block = new RainfallStore(stationIds, columns, nextDay, days, dates.toArray(new String[0]),
+                    Arrays.copyOf(values, days * stations), Arrays.copyOf(missing, bitmapWords((long) days * stations)));
+            nextDay += days;
+            return block;
+        }
+
+        // 逐列切分，不用正则；返回日期列
+        private String parseDay(String line, int offset, double[] values, long[] missing) throws IOException {
+            int stations = stationIds.length;
+            int start = line.indexOf('\t');
+            String date = start < 0 ? line : line.substring(0, start);
+            for (int k = 0; k < stations; k++) {
+                double value = Double.NaN;
+                if (start >= 0) {
+                    int end = line.indexOf('\t', start + 1);
+                    String text = (end < 0 ? line.substring(start + 1) : line.substring(start + 1, end)).trim();
+                    if (!text.isEmpty()) {
+                        try {
+                            value = Double.parseDouble(text);
+                        } catch (NumberFormatException e) {
+                            throw new IOException(file + " 第 " + lineNumber + " 行站点 " + stationIds[k]
+                                    + " 的降水量无效: " + text, e);
+                        }
+                    }
+                    start = end;
+                }
+                int cell = offset + k;
+                values[cell] = value;
+                if (Double.isNaN(value)) {
+                    missing[cell >>> 6] |= 1L << cell;
+                }
+            }
+            return date;
+        }
+
+        @Override
+        public void close() throws IOException {
+            br.close();
+        }
+    }
+
+    private static int bitmapWords(long cells) {
+        return (int) ((cells + 63) >>> 6);
+    }
+
+    public int getStationCount() {
+        return stationIds.length;
+    }
+
+    public int getStationId(int column) {
+        return stationIds[column];
+    }
+
+    /**
+     * 站点编号对应的列号，文件中没有该站点时返回 -1。
+     */
+    public int indexOf(int stationId) {
+        Integer column = columns.get(stationId);
+        return column == null ? -1 : column;
+    }
+
+    /**
+     * 本块的天数。
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * 本块第一天在整个序列中的序号（从 0 起算），整体读入时为 0。
+     */
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * 第 day 天（本块内从 0 起算）的日期列原文。
+     */
+    public String getDate(int day) {
+        return dates[day];
+    }
+
+    /**
+     * 第 day 天第 column 列站点的降水量，缺测时为 NaN。
+     */
+    public double get(int day, int column) {
+        return values[day * stationIds.length + column];
+    }
+
+    public boolean isMissing(int day, int column) {
+        int cell = day * stationIds.length + column;
+        return (missing[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * 按给定的站点编号顺序取出第 day 天的降水量，文件中没有的站点与缺测均为 NaN。
+     *
+     * @param columns {@link #columnsOf} 返回的列号
+     */
+    public void readDay(int day, int[] columns, double[] dst) {
+        int offset = day * stationIds.length;
+        for (int k = 0; k < columns.length; k++) {
+            int column = columns[k];
+            dst[k] = column < 0 ? Double.NaN : values[offset + column];
+        }
+    }
+
+    /**
+     * 各站点编号对应的列号（没有的为 -1），供 {@link #readDay} 使用；同一文件的各块列号相同。
+     */
+    public int[] columnsOf(int[] stationIds) {
+        int[] result = new int[stationIds.length];
+        for (int k = 0; k < stationIds.length; k++) {
+            result[k] = indexOf(stationIds[k]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,460 @@
+package hydrology;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 紧凑的二进制栅格格式（.hgr）。
+ * 128 字节文件头（魔数、版本、数据类型、行列数、角点坐标、像元大小、NODATA、源文件大小与修改时间），
+ * 其后为按行优先排列的小端序像元数据。读取时整体内存映射，页面按需加载。
+ */
+public class RasterFile implements AutoCloseable {
+
+    public static final String SUFFIX = ".hgr";
+    static final int MAGIC = 0x44524748; // "HGRD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    private static final long MAX_MAP = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final GridHeader header;
+    private final DataType type;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final ByteBuffer[] bands; // 每个映射段包含若干完整行
+    private final int rowsPerBand;
+    private final int rowBytes;
+
+    private RasterFile(FileChannel channel, ByteBuffer head, String crs) throws IOException {
+        this.channel = channel;
+        this.type = DataType.fromCode(head.getInt(8));
+        int nrows = head.getInt(12);
+        int ncols = head.getInt(16);
+        this.header = new GridHeader(nrows, ncols, head.getDouble(24), head.getDouble(32),
+                head.getDouble(40), head.getDouble(48), crs);
+        this.sourceSize = head.getLong(56);
+        this.sourceModified = head.getLong(64);
+
+        this.rowBytes = ncols * type.getBytes();
+        long expected = HEADER_SIZE + (long) rowBytes * nrows;
+        if (channel.size() < expected) {
+            throw new IOException("栅格文件被截断：期望 " + expected + " 字节，实际 " + channel.size());
+        }
+        this.rowsPerBand = (int) Math.max(1, Math.min(nrows, MAX_MAP / rowBytes));
+        int bandCount = (nrows + rowsPerBand - 1) / rowsPerBand;
+        this.bands = new ByteBuffer[bandCount];
+        for (int b = 0; b < bandCount; b++) {
+            int rows = Math.min(rowsPerBand, nrows - b * rowsPerBand);
+            long offset = HEADER_SIZE + (long) b * rowsPerBand * rowBytes;
+            bands[b] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * 打开并内存映射栅格文件。
+     */
+    public static RasterFile open(Path path) throws IOException {
+        return open(path, null);
+    }
+
+    /**
+     * 打开并内存映射栅格文件，头部记为坐标参考系统 crs（.hgr 不记录坐标系，副本的坐标系由源文件提供）。
+     */
+    static RasterFile open(Path path, String crs) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new RasterFile(channel, readHead(channel, path), crs);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer readHead(FileChannel channel, Path path) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) < 0) {
+                throw new IOException("栅格文件头不完整: " + path);
+            }
+        }
+        if (head.getInt(0) != MAGIC) {
+            throw new IOException("不是有效的栅格文件: " + path);
+        }
+        if (head.getInt(4) != VERSION) {
+            throw new IOException("不支持的栅格文件版本 " + head.getInt(4) + ": " + path);
+        }
+        return head;
+    }
+
+    /**
+     * 源文件对应的二进制副本路径，例如 dem.asc -> dem.asc.hgr。
+     */
+    public static Path sidecarOf(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    /**
+     * 判断副本是否存在且与源文件（大小、修改时间）一致。
+     */
+    public static boolean isFresh(Path sidecar, Path source) {
+        if (!Files.isRegularFile(sidecar)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            ByteBuffer head = readHead(channel, sidecar);
+            return head.getLong(56) == Files.size(source)
+                    && head.getLong(64) == Files.getLastModifiedTime(source).toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    public DataType getType() {
+        return type;
+    }
+
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    private ByteBuffer band(int row) {
+        return bands[row / rowsPerBand];
+    }
+
+    private int offset(int row, int col) {
+        return (row % rowsPerBand) * rowBytes + col * type.getBytes();
+    }
+
+    /**
+     * 读取单个像元（数值按整型返回，浮点类型四舍五入）。
+     */
+    public int getInt(int row, int col) {
+        ByteBuffer band = band(row);
+        int off = offset(row, col);
+        switch (type) {
+            case UINT8: return band.get(off) & 0xFF;
+            case INT16: return band.getShort(off);
+            case INT32: return band.getInt(off);
+            case FLOAT32: return Math.round(band.getFloat(off));
+            default: return (int) Math.round(band.getDouble(off));
+        }
+    }
+
+    /**
+     * 读取单个像元（数值按双精度返回）。
+     */
+    public double getDouble(int row, int col) {
+        ByteBuffer band = band(row);
+        int off = offset(row, col);
+        switch (type) {
+            case UINT8: return band.get(off) & 0xFF;
+            case INT16: return band.getShort(off);
+            case INT32: return band.getInt(off);
+            case FLOAT32: return band.getFloat(off);
+            default: return band.getDouble(off);
+        }
+    }
+
+    /**
+     * 批量读取一行到整型数组。
+     */
+    public void readRow(int row, int[] dst) {
+        ByteBuffer slice = rowSlice(row);
+        int ncols = header.getNcols();
+        switch (type) {
+            case INT32:
+                slice.asIntBuffer().get(dst, 0, ncols);
+                break;
+            default:
+                for (int j = 0; j < ncols; j++) {
+                    dst[j] = getInt(row, j);
+                }
+        }
+    }
+
+    /**
+     * 批量读取一行到双精度数组。
+     */
+    public void readRow(int row, double[] dst) {
+        ByteBuffer slice = rowSlice(row);
+        int ncols = header.getNcols();
+        switch (type) {
+            case FLOAT64:
+                slice.asDoubleBuffer().get(dst, 0, ncols);
+                break;
+            default:
+                for (int j = 0; j < ncols; j++) {
+                    dst[j] = getDouble(row, j);
+                }
+        }
+    }
+
+    private ByteBuffer rowSlice(int row) {
+        ByteBuffer slice = band(row).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        slice.position(offset(row, 0));
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 按文件的存储类型读取为栅格（按行批量复制）。
+     */
+    public WritableGrid readGrid() {
+        return readWindow(GridWindow.ofCells(header, 0, 0, header.getNrows(), header.getNcols()));
+    }
+
+    /**
+     * 只读取子窗口：按偏移直接定位窗口内的各行片段，耗时和内存只与窗口大小有关，头部坐标按窗口修正。
+     */
+    public WritableGrid readWindow(GridWindow window) {
+        WritableGrid grid = Grids.create(type, window.apply(header));
+        int ncols = window.getNcols();
+        int bytes = type.getBytes();
+        for (int i = 0; i < window.getNrows(); i++) {
+            ByteBuffer slice = rowSlice(window.getRow0() + i);
+            slice.position(window.getCol0() * bytes).limit((window.getCol0() + ncols) * bytes);
+            slice = slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+            int offset = i * ncols;
+            if (grid instanceof OffHeapGrid) {
+                ((OffHeapGrid) grid).putRowBytes(i, slice);
+            } else if (grid instanceof ByteGrid) {
+                slice.get(((ByteGrid) grid).getData(), offset, ncols);
+            } else if (grid instanceof ShortGrid) {
+                slice.asShortBuffer().get(((ShortGrid) grid).getData(), offset, ncols);
+            } else if (grid instanceof IntGrid) {
+                slice.asIntBuffer().get(((IntGrid) grid).getData(), offset, ncols);
+            } else if (grid instanceof FloatGrid) {
+                slice.asFloatBuffer().get(((FloatGrid) grid).getData(), offset, ncols);
+            } else if (grid instanceof DoubleGrid) {
+                slice.asDoubleBuffer().get(((DoubleGrid) grid).getData(), offset, ncols);
+            } else {
+                int row = window.getRow0() + i;
+                for (int j = 0; j < ncols; j++) {
+                    grid.setDouble(i, j, getDouble(row, window.getCol0() + j));
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * 将像元数据直接映射为只读的堆外栅格（不复制），关闭本文件后仍可使用；写入会抛出 ReadOnlyBufferException。
+     */
+    public OffHeapGrid mapGrid() throws IOException {
+        return OffHeapGrid.map(channel, HEADER_SIZE, type, header, FileChannel.MapMode.READ_ONLY);
+    }
+
+    /**
+     * 关闭文件并立即解除映射。
+     */
+    @Override
+    public void close() throws IOException {
+        for (int b = 0; b < bands.length; b++) {
+            ByteBuffer band = bands[b];
+            bands[b] = null;
+            OffHeapGrid.release(band);
+        }
+        channel.close();
+    }
+
+    /**
+     * 按栅格自身的存储类型写出。
+     */
+    public static void write(Path path, Grid grid) throws IOException {
+        write(path, grid, 0, 0);
+    }
+
+    /**
+     * 写出源文件的二进制副本，文件头记录源文件大小与修改时间用于判断是否过期。
+     */
+    static void writeSidecar(Path sidecar, Path source, Grid grid) throws IOException {
+        write(sidecar, grid, Files.size(source), Files.getLastModifiedTime(source).toMillis());
+    }
+
+    private static void write(Path path, Grid grid, long sourceSize, long sourceModified) throws IOException {
+        DataType type = grid.getType();
+        int ncols = grid.cols();
+        RowEncoder encoder;
+        if (grid instanceof OffHeapGrid) {
+            OffHeapGrid offHeap = (OffHeapGrid) grid;
+            encoder = offHeap::getRowBytes;
+        } else if (grid instanceof ByteGrid) {
+            byte[] data = ((ByteGrid) grid).getData();
+            encoder = (row, out) -> out.put(data, row * ncols, ncols);
+        } else if (grid instanceof ShortGrid) {
+            short[] data = ((ShortGrid) grid).getData();
+            encoder = (row, out) -> out.asShortBuffer().put(data, row * ncols, ncols);
+        } else if (grid instanceof IntGrid) {
+            int[] data = ((IntGrid) grid).getData();
+            encoder = (row, out) -> out.asIntBuffer().put(data, row * ncols, ncols);
+        } else if (grid instanceof FloatGrid) {
+            float[] data = ((FloatGrid) grid).getData();
+            encoder = (row, out) -> out.asFloatBuffer().put(data, row * ncols, ncols);
+        } else if (grid instanceof DoubleGrid) {
+            double[] data = ((DoubleGrid) grid).getData();
+            encoder = (row, out) -> out.asDoubleBuffer().put(data, row * ncols, ncols);
+        } else {
+            double[] buffer = new double[ncols];
+            encoder = (row, out) -> {
+                grid.readRow(row, buffer);
+                for (double value : buffer) {
+                    putValue(out, type, value);
+                }
+            };
+        }
+        write(path, grid.getHeader(), type, sourceSize, sourceModified, encoder);
+    }
+
+    private static void putValue(ByteBuffer out, DataType type, double value) {
+        switch (type) {
+            case UINT8:
+                if (value < 0 || value > 255) {
+                    throw new IllegalArgumentException("数值超出 UINT8 范围: " + value);
+                }
+                out.put((byte) (int) value);
+                break;
+            case INT16:
+                if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("数值超出 INT16 范围: " + value);
+                }
+                out.putShort((short) value);
+                break;
+            case INT32: out.putInt((int) value); break;
+            case FLOAT32: out.putFloat((float) value); break;
+            default: out.putDouble(value);
+        }
+    }
+
+    private static void write(Path path, GridHeader header, DataType type, long sourceSize, long sourceModified,
+                              RowEncoder encoder) throws IOException {
+        Writer writer = new Writer(path, header, type, sourceSize, sourceModified);
+        try {
+            for (int i = 0; i < header.getNrows(); i++) {
+                writer.encode(i, encoder);
+            }
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+    }
+
+    /**
+     * 逐行写出栅格，行按顺序到达，内存占用为一行。
+     */
+    public static Writer create(Path path, GridHeader header, DataType type) throws IOException {
+        return new Writer(path, header, type, 0, 0);
+    }
+
+    /**
+     * 逐行写出的栅格文件。先写入临时文件，全部行写完并关闭后再原子替换，避免中断后留下损坏的文件；
+     * 行数不足时关闭会删除临时文件并抛出异常。
+     */
+    public static final class Writer implements RowSink, AutoCloseable {
+        private final Path path;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final DataType type;
+        private final int nrows;
+        private final int ncols;
+        private final int rowBytes;
+        private final ByteBuffer buffer;
+        private int written;
+
+        private Writer(Path path, GridHeader header, DataType type, long sourceSize, long sourceModified)
+                throws IOException {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.path = path;
+            this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.type = type;
+            this.nrows = header.getNrows();
+            this.ncols = header.getNcols();
+            this.rowBytes = ncols * type.getBytes();
+            this.buffer = ByteBuffer.allocateDirect(rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                head.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, type.getCode())
+                        .putInt(12, nrows).putInt(16, header.getNcols())
+                        .putDouble(24, header.getXllcorner()).putDouble(32, header.getYllcorner())
+                        .putDouble(40, header.getCellsize()).putDouble(48, header.getNODATA_value())
+                        .putLong(56, sourceSize).putLong(64, sourceModified);
+                writeFully(channel, head);
+            } catch (IOException | RuntimeException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        /**
+         * 写出一行，数值按文件的存储类型转换。
+         */
+        @Override
+        public void writeRow(int row, double[] values) throws IOException {
+            encode(row, (r, out) -> {
+                for (int j = 0; j < ncols; j++) {
+                    putValue(out, type, values[j]);
+                }
+            });
+        }
+
+        void encode(int row, RowEncoder encoder) throws IOException {
+            if (row != written) {
+                throw new IllegalArgumentException("栅格行必须按顺序写出：期望第 " + written + " 行，实际第 " + row + " 行");
+            }
+            buffer.clear();
+            encoder.encode(row, buffer);
+            buffer.position(0).limit(rowBytes);
+            writeFully(channel, buffer);
+            written++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!channel.isOpen()) {
+                return;
+            }
+            if (written < nrows) {
+                abort();
+                throw new IOException("栅格文件未写完：期望 " + nrows + " 行，实际 " + written + " 行 (" + path + ")");
+            }
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // 放弃写出，删除临时文件
+        void abort() throws IOException {
+            channel.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowEncoder {
+        void encode(int row, ByteBuffer out);
+    }
+}
@@ -0,0 +1,12 @@
+package hydrology;
+
+import java.io.IOException;
+
+/**
+ * 逐行接收栅格数据，行号从 0 开始按顺序到达。
+ * 调用方在 writeRow 返回后会复用 values 数组，实现方需要保留数据时应自行复制。
+ */
+@FunctionalInterface
+public interface RowSink {
+    void writeRow(int row, double[] values) throws IOException;
+}
@@ -0,0 +1,255 @@
+package hydrology;
+
+import java.math.BigInteger;
+
+/**
+ * 浮点数的最短往返十进制表示（Schubfach 算法，R. Giulietti, 2020），直接写入字节缓冲区，逐值不创建对象。
+ * <p>
+ * 输出的十进制数在原值的舍入区间内有效数字最少，同样位数时取最接近原值的一个，因此按正确舍入解析后与原值完全相同；
+ * 单精度按单精度的舍入区间计算（0.1f 输出为 "0.1"）。算法只用 64 位整数乘法，
+ * 所需的 10^-k 的 126 位近似值表在类加载时用 BigInteger 精确算出。
+ * <p>
+ * 小数点位置在 -4 ~ 21 位之间时按定点写法输出（整数不带小数点），其余按 "1.5E-7" 形式的科学计数法输出，
+ * 最长 24 个字符（含符号）。调用方负责 NaN 与无穷大。
+ */
+final class ShortestDecimal {
+    static final int MAX_CHARS = 24;
+
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long MASK_32 = (1L << 32) - 1;
+    // 10^-k = β·2^r，2^125 ≤ β < 2^126，g = ⌊β⌋ + 1 拆为高 63 位与低 63 位，按 k 交替存放
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger n = BigInteger.TEN.pow(-k);
+                int r = n.bitLength() - 1 - 125;
+                g = r >= 0 ? n.shiftRight(r) : n.shiftLeft(-r);
+            } else {
+                BigInteger d = BigInteger.TEN.pow(k);
+                g = BigInteger.ONE.shiftLeft(d.bitLength() + 125).divide(d);
+            }
+            g = g.add(BigInteger.ONE);
+            int i = 2 * (k - K_MIN);
+            G[i] = g.shiftRight(63).longValue();
+            G[i + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private ShortestDecimal() {}
+
+    /**
+     * 将有限的双精度数写入 buf 的 pos 处，返回写入后的位置。
+     */
+    static int formatDouble(double v, byte[] buf, int pos) {
+        long bits = Double.doubleToRawLongBits(v);
+        if (bits < 0) {
+            buf[pos++] = '-';
+        }
+        long t = bits & ((1L << 52) - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq != 0) {
+            int mq = 1075 - bq;
+            long c = 1L << 52 | t;
+            if (0 < mq && mq < 53) {
+                // 整数的快速路径
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return write(f, 0, buf, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, buf, pos);
+        }
+        if (t != 0) {
+            // 次正规数，最小的几个放大 10 倍以保证精度
+            return t < 3 ? toDecimal(-1074, 10 * t, -1, buf, pos) : toDecimal(-1074, t, 0, buf, pos);
+        }
+        buf[pos++] = '0';
+        return pos;
+    }
+
+    /**
+     * 将有限的单精度数写入 buf 的 pos 处，返回写入后的位置。
+     */
+    static int formatFloat(float v, byte[] buf, int pos) {
+        int bits = Float.floatToRawIntBits(v);
+        if (bits < 0) {
+            buf[pos++] = '-';
+        }
+        int t = bits & ((1 << 23) - 1);
+        int bq = (bits >>> 23) & 0xFF;
+        if (bq != 0) {
+            int mq = 150 - bq;
+            int c = 1 << 23 | t;
+            if (0 < mq && mq < 24) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return write(f, 0, buf, pos);
+                }
+            }
+            return toDecimalFloat(-mq, c, 0, buf, pos);
+        }
+        if (t != 0) {
+            return t < 8 ? toDecimalFloat(-149, 10 * t, -1, buf, pos) : toDecimalFloat(-149, t, 0, buf, pos);
+        }
+        buf[pos++] = '0';
+        return pos;
+    }
+
+    // 值为 c·2^q，舍入区间为 [cbl, cbr]·2^(q-2)；在其中找位数最少的十进制数 d·10^k
+    private static int toDecimal(int q, long c, int dk, byte[] buf, int pos) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != 1L << 52 | q == -1074) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // 2 的整数次幂下方的区间只有上方的一半
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+            // 先试少一位：s' = ⌊s / 10⌋
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return write(upin ? sp10 : tp10, k, buf, pos);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return write(uin ? s : t, k + dk, buf, pos);
+        }
+        // 两者都在区间内时取较近的一个，距离相同取偶数
+        long cmp = vb - (s + t << 1);
+        return write(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, pos);
+    }
+
+    private static int toDecimalFloat(int q, int c, int dk, byte[] buf, int pos) {
+        int out = c & 0x1;
+        long cb = (long) c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != 1 << 23 | q == -149) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+        long g = G[2 * (k - K_MIN)] + 1;
+        int vb = ropFloat(g, cb << h);
+        int vbl = ropFloat(g, cbl << h);
+        int vbr = ropFloat(g, cbr << h);
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (int) (s * 1_717_986_919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return write(upin ? sp10 : tp10, k, buf, pos);
+            }
+        }
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return write(uin ? s : t, k + dk, buf, pos);
+        }
+        int cmp = vb - (s + t << 1);
+        return write(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, pos);
+    }
+
+    // ⌈cp·g·2^-127⌉ 的近似：向下取整后用最低位记录是否有余数
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    private static int ropFloat(long g, long cp) {
+        long x1 = Math.multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+    }
+
+    // ⌊log10(2^q)⌋
+    private static int flog10pow2(int q) {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    // ⌊log10(3/4 · 2^q)⌋
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    // ⌊log2(10^q)⌋
+    private static int flog2pow10(int q) {
+        return (int) (q * 913_124_641_741L >> 38);
+    }
+
+    // 写出 f·10^e（f > 0），去掉 f 末尾的 0
+    private static int write(long f, int e, byte[] buf, int pos) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int start = pos;
+        int end = GridTextWriter.formatLong(f, buf, pos);
+        int digits = end - start;
+        int point = digits + e; // 小数点前的位数
+        if (e >= 0 && point <= 21) {
+            for (int i = 0; i < e; i++) {
+                buf[end++] = '0';
+            }
+            return end;
+        }
+        if (e < 0 && point > 0) {
+            System.arraycopy(buf, start + point, buf, start + point + 1, digits - point);
+            buf[start + point] = '.';
+            return end + 1;
+        }
+        if (e < 0 && point > -5) {
+            int zeros = -point;
+            System.arraycopy(buf, start, buf, start + 2 + zeros, digits);
+            buf[start] = '0';
+            buf[start + 1] = '.';
+            for (int i = 0; i < zeros; i++) {
+                buf[start + 2 + i] = '0';
+            }
+            return end + 2 + zeros;
+        }
+        // 科学计数法：d[.ddd]E±n
+        if (digits > 1) {
+            System.arraycopy(buf, start + 1, buf, start + 2, digits - 1);
+            buf[start + 1] = '.';
+            end++;
+        }
+        buf[end++] = 'E';
+        return GridTextWriter.formatLong(point - 1, buf, end);
+    }
+}
@@ -1,57 +1,73 @@
 package hydrology;
 
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
 
 public class Slope {
-    private int[][] dem;
-    private double cellsize;
-    private int NODATA_value;
+    private final Grid dem;
+    private final double cellsize;
+    private final int rows;
+    private final int cols;
+    private final int stride;
 
-    public Slope(int[][] dem, double cellsize, int NODATA_value) {
+    public Slope(Grid dem) {
         this.dem = dem;
-        this.cellsize = cellsize;
-        this.NODATA_value = NODATA_value;
+        this.cellsize = dem.getHeader().getCellsize();
+        this.rows = dem.rows();
+        this.cols = dem.cols();
+        this.stride = dem.stride();
     }
 
     /**
-     * 计算每个单元格的坡度。
-     * @return 返回包含坡度值的二维数组。
+     * 计算每个单元格的坡度（双精度，按行并行）。
+     * @return 返回坡度栅格，NODATA 单元为 NaN。
      */
-    public double[][] calculateSlopes() {
-        int rows = dem.length;
-        int cols = dem[0].length;
-        double[][] slope = new double[rows][cols];
-
-        for (int i = 0; i < rows; i++) {
+    public WritableGrid calculateSlopes() {
+        WritableGrid slope = Grids.create(DataType.FLOAT64, dem.getHeader().withNODATA_value(Double.NaN));
+        IntStream.range(0, rows).parallel().forEach(i -> {
             for (int j = 0; j < cols; j++) {
-                if (dem[i][j] != NODATA_value) {
-                    slope[i][j] = computeCellSlope(i, j);
-                } else {
-                    slope[i][j] = Double.NaN;
-                }
+                int index = i * stride + j;
+                slope.setDouble(index, dem.isNoData(index) ? Double.NaN : computeCellSlope(i, j, index));
             }
-        }
+        });
+        return slope;
+    }
 
+    /**
+     * 计算坡度栅格（单精度，按行并行），占用内存为双精度栅格的一半。
+     * @return 返回坡度栅格，NODATA 单元为 NaN。
+     */
+    public WritableGrid calculateSlopeGrid() {
+        WritableGrid slope = Grids.create(DataType.FLOAT32, dem.getHeader().withNODATA_value(Float.NaN));
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            for (int j = 0; j < cols; j++) {
+                int index = i * stride + j;
+                slope.setDouble(index, dem.isNoData(index) ? Double.NaN : computeCellSlope(i, j, index));
+            }
+        });
         return slope;
     }
 
     // 计算单个单元格的坡度
-    private double computeCellSlope(int row, int col) {
+    private double computeCellSlope(int row, int col, int index) {
         double dzdx = 0.0, dzdy = 0.0;
 
         // 检查并计算dz/dx（东西方向的梯度）
-        if (isValidCell(row, col - 1) && isValidCell(row, col + 1)) {
-            if (dem[row][col - 1] != NODATA_value && dem[row][col + 1] != NODATA_value) {
-                dzdx = (dem[row][col + 1] - dem[row][col - 1]) / (2 * cellsize);
+        if (col > 0 && col < cols - 1) {
+            if (!dem.isNoData(index - 1) && !dem.isNoData(index + 1)) {
+                dzdx = (dem.getDouble(index + 1) - dem.getDouble(index - 1)) / (2 * cellsize);
             }
         }
 
         // 检查并计算dz/dy（南北方向的梯度）
-        if (isValidCell(row - 1, col) && isValidCell(row + 1, col)) {
-            if (dem[row - 1][col] != NODATA_value && dem[row + 1][col] != NODATA_value) {
-                dzdy = (dem[row + 1][col] - dem[row - 1][col]) / (2 * cellsize);
+        if (row > 0 && row < rows - 1) {
+            if (!dem.isNoData(index - stride) && !dem.isNoData(index + stride)) {
+                dzdy = (dem.getDouble(index + stride) - dem.getDouble(index - stride)) / (2 * cellsize);
             }
         }
 
@@ -60,9 +76,24 @@ public class Slope {
         return Math.toDegrees(Math.atan(maxGradient));
     }
 
-    // 检查坐标是否有效
-    private boolean isValidCell(int row, int col) {
-        return row >= 0 && row < dem.length && col >= 0 && col < dem[0].length;
+    /**
+     * 将坡度结果以二进制栅格格式（.hgr）输出，NODATA 单元为 NaN。
+     */
+    public void outputToRaster(Path path, Grid slopes) throws IOException {
+        RasterFile.write(path, slopes);
     }
 
-}
\ No newline at end of file
+    /**
+     * 将坡度结果以分块压缩的单精度GeoTIFF输出，crs 为 null 时沿用输入DEM的坐标系，未知时不写坐标系。
+     */
+    public void outputToGeoTiff(Path path, Grid slopes, CoordinateReferenceSystem crs) throws IOException {
+        GeoTiffIO.write(path, slopes, DataType.FLOAT32, crs);
+    }
+
+    /**
+     * 将坡度结果以按行块压缩的二进制栅格（.hgz）输出，双精度结果按单精度存储。
+     */
+    public void outputToCompressed(Path path, Grid slopes) throws IOException {
+        CompressedRaster.write(path, slopes, CompressedRaster.Codec.LZ4, true);
+    }
+}
@@ -0,0 +1,261 @@
+package hydrology;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 流式局部处理：DEM 按行到达，坡度、地形分类与混合流向逐行算出后立即交给输出，不生成整幅的中间栅格。
+ * <p>
+ * 与 {@link Slope}、{@link TerrainClassify}、{@link FlowMix} 依次计算的结果逐像元一致。
+ * 坡度用 3 行 DEM 的窗口；流向还需要邻居的坡度，因此再保留 3 行坡度，DEM 保留 4 行。
+ * 第 r 行 DEM 到达后输出第 r-1 行的坡度与分类、第 r-2 行的流向，最后一行到达时输出剩余各行。
+ * 全部缓冲为若干行，内存占用 O(列数)，可处理任意大小的DEM。
+ * <p>
+ * 流向依据输入DEM本身计算，需要填洼后的流向时应输入填洼后的DEM（填洼为全局运算，不能流式完成）。
+ */
+public class StreamingPipeline implements RowSink {
+    private static final int DEM_ROWS = 4;
+    private static final int SLOPE_ROWS = 3;
+
+    private final GridHeader header;
+    private final int NODATA_value;
+    private final int rows;
+    private final int cols;
+    private final double cellsize;
+
+    private final double[][] dem = new double[DEM_ROWS][];     // 环形缓冲，NODATA 为 NaN
+    private final double[][] slopes = new double[SLOPE_ROWS][]; // 环形缓冲，NODATA 为 NaN
+    private final double[] classes;
+    private final double[] flow;
+    private final double[] weights = new double[Neighborhood.SIZE];
+    private int next;
+
+    private RowSink slopeSink;
+    private RowSink classSink;
+    private RowSink flowSink;
+
+    /**
+     * @param header       输入DEM的头部信息。
+     * @param NODATA_value 流向输出中 NODATA 像元的取值。
+     */
+    public StreamingPipeline(GridHeader header, int NODATA_value) {
+        this.header = header;
+        this.NODATA_value = NODATA_value;
+        this.rows = header.getNrows();
+        this.cols = header.getNcols();
+        this.cellsize = header.getCellsize();
+        for (int k = 0; k < DEM_ROWS; k++) {
+            dem[k] = new double[cols];
+        }
+        for (int k = 0; k < SLOPE_ROWS; k++) {
+            slopes[k] = new double[cols];
+        }
+        this.classes = new double[cols];
+        this.flow = new double[cols];
+    }
+
+    /**
+     * 坡度（度）的逐行输出，NODATA 为 NaN；为 null 时不输出。
+     */
+    public void setSlopeSink(RowSink slopeSink) {
+        this.slopeSink = slopeSink;
+    }
+
+    /**
+     * 地形分类的逐行输出，取值见 {@link TerrainClassify}；为 null 时不输出。
+     */
+    public void setClassSink(RowSink classSink) {
+        this.classSink = classSink;
+    }
+
+    /**
+     * 混合流向的逐行输出，编码与 {@link FlowMix} 相同；为 null 时不输出。
+     */
+    public void setFlowSink(RowSink flowSink) {
+        this.flowSink = flowSink;
+    }
+
+    public GridHeader getSlopeHeader() {
+        return header.withNODATA_value(Double.NaN);
+    }
+
+    public GridHeader getClassHeader() {
+        return header.withNODATA_value(TerrainClassify.NODATA);
+    }
+
+    public GridHeader getFlowHeader() {
+        return header.withNODATA_value(NODATA_value);
+    }
+
+    /**
+     * 接收下一行DEM，行号必须从 0 开始连续递增。
+     */
+    @Override
+    public void writeRow(int row, double[] values) throws IOException {
+        if (row != next) {
+            throw new IllegalArgumentException("DEM行必须按顺序输入：期望第 " + next + " 行，实际第 " + row + " 行");
+        }
+        double nodata = header.getNODATA_value();
+        double[] target = dem[row % DEM_ROWS];
+        for (int j = 0; j < cols; j++) {
+            target[j] = values[j] == nodata ? Double.NaN : values[j];
+        }
+        next++;
+
+        if (row >= 1) {
+            slopeRow(row - 1);
+        }
+        if (row >= 2) {
+            flowRow(row - 2);
+        }
+        if (row == rows - 1) {
+            slopeRow(row);
+            if (row >= 1) {
+                flowRow(row - 1);
+            }
+            flowRow(row);
+        }
+    }
+
+    /**
+     * 逐行读取内存中的栅格并处理。
+     */
+    public void run(Grid source) throws IOException {
+        double[] buffer = new double[cols];
+        for (int i = 0; i < rows; i++) {
+            source.readRow(i, buffer);
+            writeRow(i, buffer);
+        }
+    }
+
+    /**
+     * 流式处理DEM文件（.hgr 按内存映射逐行读取，其余按 ESRI ASCII Grid 逐行解析），
+     * 结果写为 Slope、Classification、FlowDirections 三个 .hgr 文件，坡度按单精度存储。
+     */
+    public static void process(Path demFile, Path resultDir, int NODATA_value) throws IOException {
+        boolean binary = demFile.getFileName().toString().endsWith(RasterFile.SUFFIX);
+        try (RasterFile raster = binary ? RasterFile.open(demFile) : null) {
+            GridHeader header = binary ? raster.getHeader() : AsciiGridParser.readHeader(demFile);
+            StreamingPipeline pipeline = new StreamingPipeline(header, NODATA_value);
+            try (RasterFile.Writer slope = RasterFile.create(resultDir.resolve("Slope" + RasterFile.SUFFIX),
+                         pipeline.getSlopeHeader(), DataType.FLOAT32);
+                 RasterFile.Writer classes = RasterFile.create(resultDir.resolve("Classification" + RasterFile.SUFFIX),
+                         pipeline.getClassHeader(), DataType.UINT8);
+                 RasterFile.Writer flow = RasterFile.create(resultDir.resolve("FlowDirections" + RasterFile.SUFFIX),
+                         pipeline.getFlowHeader(), DataType.INT32)) {
+                pipeline.setSlopeSink(slope);
+                pipeline.setClassSink(classes);
+                pipeline.setFlowSink(flow);
+                if (binary) {
+                    double[] buffer = new double[header.getNcols()];
+                    for (int i = 0; i < header.getNrows(); i++) {
+                        raster.readRow(i, buffer);
+                        pipeline.writeRow(i, buffer);
+                    }
+                } else {
+                    AsciiGridParser.readRows(demFile, pipeline);
+                }
+            }
+        }
+    }
+
+    // 第 row 行的坡度与分类（与 Slope 相同的四邻域中心差分）
+    private void slopeRow(int row) throws IOException {
+        double[] up = row > 0 ? dem[(row - 1) % DEM_ROWS] : null;
+        double[] mid = dem[row % DEM_ROWS];
+        double[] down = row < rows - 1 ? dem[(row + 1) % DEM_ROWS] : null;
+        double[] slope = slopes[row % SLOPE_ROWS];
+        for (int j = 0; j < cols; j++) {
+            if (Double.isNaN(mid[j])) {
+                slope[j] = Double.NaN;
+                classes[j] = TerrainClassify.NODATA;
+                continue;
+            }
+            double dzdx = 0.0, dzdy = 0.0;
+            if (j > 0 && j < cols - 1 && !Double.isNaN(mid[j - 1]) && !Double.isNaN(mid[j + 1])) {
+                dzdx = (mid[j + 1] - mid[j - 1]) / (2 * cellsize);
+            }
+            if (up != null && down != null && !Double.isNaN(up[j]) && !Double.isNaN(down[j])) {
+                dzdy = (down[j] - up[j]) / (2 * cellsize);
+            }
+            slope[j] = Math.toDegrees(Math.atan(Math.sqrt(dzdx * dzdx + dzdy * dzdy)));
+            classes[j] = slope[j] > TerrainClassify.STEEP_SLOPE ? TerrainClassify.STEEP : TerrainClassify.FLAT;
+        }
+        if (slopeSink != null) {
+            slopeSink.writeRow(row, slope);
+        }
+        if (classSink != null) {
+            classSink.writeRow(row, classes);
+        }
+    }
+
+    // 第 row 行的流向：陡峭像元取 D8 最大落差方向，其余按多流向权重取占比不低于一半的方向位
+    private void flowRow(int row) throws IOException {
+        if (flowSink == null) {
+            return;
+        }
+        double[][] z = new double[3][];
+        double[][] s = new double[3][];
+        for (int d = -1; d <= 1; d++) {
+            int r = row + d;
+            z[d + 1] = r >= 0 && r < rows ? dem[r % DEM_ROWS] : null;
+            s[d + 1] = r >= 0 && r < rows ? slopes[r % SLOPE_ROWS] : null;
+        }
+        double[] slope = s[1];
+        double[] center = z[1];
+        for (int j = 0; j < cols; j++) {
+            if (Double.isNaN(slope[j])) {
+                flow[j] = NODATA_value;
+            } else if (slope[j] > TerrainClassify.STEEP_SLOPE) {
+                flow[j] = d8(z, s, j, center[j]);
+            } else {
+                flow[j] = multiFlow(z, s, j, center[j]);
+            }
+        }
+        flowSink.writeRow(row, flow);
+    }
+
+    private int d8(double[][] z, double[][] s, int col, double center) {
+        int maxDir = 0;
+        double maxDiff = Double.NEGATIVE_INFINITY;
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            int r = 1 + Neighborhood.ROW[dir];
+            int c = col + Neighborhood.COL[dir];
+            if (isValid(z, s, r, c) && z[r][c] < center) {
+                double diff = center - z[r][c];
+                if (diff > maxDiff) {
+                    maxDiff = diff;
+                    maxDir = Neighborhood.D8_CODES[dir];
+                }
+            }
+        }
+        return maxDir;
+    }
+
+    private int multiFlow(double[][] z, double[][] s, int col, double center) {
+        double sumDi = 0.0;
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            int r = 1 + Neighborhood.ROW[dir];
+            int c = col + Neighborhood.COL[dir];
+            weights[dir] = 0.0;
+            if (isValid(z, s, r, c)) {
+                // 等高线长度加权因子：只有不高于中心的邻居有权重
+                double Li = z[r][c] - center <= 0 ? (Neighborhood.isDiagonal(dir) ? 0.5 * Math.sqrt(2) : 0.5) : 0.0;
+                double tanBeta = Math.tan(Math.toRadians(s[r][c]));
+                weights[dir] = Math.pow(tanBeta, 5) * Li;
+                sumDi += weights[dir];
+            }
+        }
+        int flowDirection = 0;
+        for (int dir = 0; dir < Neighborhood.SIZE; dir++) {
+            if (weights[dir] > 0.0 && weights[dir] / sumDi >= 0.5) {
+                flowDirection |= 1 << dir;
+            }
+        }
+        return flowDirection;
+    }
+
+    private boolean isValid(double[][] z, double[][] s, int r, int c) {
+        return z[r] != null && c >= 0 && c < cols && !Double.isNaN(s[r][c]) && !Double.isNaN(z[r][c]);
+    }
+}
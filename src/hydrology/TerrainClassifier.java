@@ -0,0 +1,178 @@
+package hydrology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 可配置的多类地形分类：按坡度区间，并可叠加曲率与高程区间，输出按字节编码的分类栅格（UINT8）。
+ * <p>
+ * 规则按加入顺序匹配，取第一条满足的规则的类别编码（0~253），都不满足时为 {@value #UNCLASSIFIED}；
+ * 坡度或高程为 NODATA 的像元为 {@value #NODATA}。区间均为左开右闭 (min, max]，
+ * 因此 {@code setSlopeBands(20)} 与 {@link TerrainClassify} 的分类结果相同（≤20° 为 0，>20° 为 1）。
+ * 按行并行，每个像元只读各输入一次，不产生中间栅格。
+ */
+public class TerrainClassifier {
+    public static final int UNCLASSIFIED = 254;
+    public static final int NODATA = TerrainClassify.NODATA;
+
+    private final Grid slopes;
+    private Grid curvature;
+    private Grid elevation;
+    private final List<Rule> rules = new ArrayList<>();
+
+    public TerrainClassifier(Grid slopes) {
+        this.slopes = slopes;
+    }
+
+    /**
+     * 设置规则中曲率条件所用的栅格（例如 {@link TerrainDerivatives} 的平面曲率），与坡度栅格同大小。
+     */
+    public void setCurvature(Grid curvature) {
+        checkSize(curvature);
+        this.curvature = curvature;
+    }
+
+    /**
+     * 设置规则中高程条件所用的DEM，与坡度栅格同大小；设置后DEM的 NODATA 像元也输出为 NODATA。
+     */
+    public void setElevation(Grid elevation) {
+        checkSize(elevation);
+        this.elevation = elevation;
+    }
+
+    /**
+     * 追加一条规则，先加入的规则优先。
+     */
+    public void addRule(Rule rule) {
+        if (rule.hasCurvature() && curvature == null || rule.hasElevation() && elevation == null) {
+            throw new IllegalArgumentException("规则使用了曲率或高程条件，但未设置对应的栅格（类别 " + rule.code + "）");
+        }
+        rules.add(rule);
+    }
+
+    /**
+     * 以坡度分界值（度，递增）替换全部规则：第 k 类为 (breaks[k-1], breaks[k]]，首类下界与末类上界不限。
+     */
+    public void setSlopeBands(double... breaks) {
+        if (breaks.length > UNCLASSIFIED - 1) {
+            throw new IllegalArgumentException("坡度分级过多: " + (breaks.length + 1));
+        }
+        rules.clear();
+        double lower = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k <= breaks.length; k++) {
+            double upper = k < breaks.length ? breaks[k] : Double.POSITIVE_INFINITY;
+            if (!(upper > lower)) {
+                throw new IllegalArgumentException("坡度分界值必须严格递增: " + upper);
+            }
+            rules.add(Rule.of(k).withSlope(lower, upper));
+            lower = upper;
+        }
+    }
+
+    /**
+     * 按规则分类。
+     * @return 返回分类栅格（UINT8），NODATA 为 {@value #NODATA}。
+     */
+    public WritableGrid classify() {
+        Rule[] ordered = rules.toArray(new Rule[0]);
+        WritableGrid classes = Grids.create(DataType.UINT8, slopes.getHeader().withNODATA_value(NODATA));
+        IntStream.range(0, slopes.rows()).parallel().forEach(i -> {
+            for (int j = 0; j < slopes.cols(); j++) {
+                classes.setDouble(i, j, classifyCell(ordered, i, j));
+            }
+        });
+        return classes;
+    }
+
+    /**
+     * 只求一个类别的掩膜（每像元 1 位），不生成分类栅格。
+     */
+    public BitMask mask(int code) {
+        Rule[] ordered = rules.toArray(new Rule[0]);
+        return BitMask.build(slopes.getHeader(), (row, col) -> classifyCell(ordered, row, col) == code);
+    }
+
+    private int classifyCell(Rule[] ordered, int row, int col) {
+        if (slopes.isNoData(row, col) || elevation != null && elevation.isNoData(row, col)) {
+            return NODATA;
+        }
+        double slope = slopes.getDouble(row, col);
+        double curv = curvature == null || curvature.isNoData(row, col) ? Double.NaN : curvature.getDouble(row, col);
+        double z = elevation == null ? Double.NaN : elevation.getDouble(row, col);
+        for (Rule rule : ordered) {
+            if (rule.matches(slope, curv, z)) {
+                return rule.code;
+            }
+        }
+        return UNCLASSIFIED;
+    }
+
+    private void checkSize(Grid grid) {
+        if (grid.rows() != slopes.rows() || grid.cols() != slopes.cols()) {
+            throw new IllegalArgumentException("栅格大小与坡度栅格不一致: " + grid.rows() + " x " + grid.cols());
+        }
+    }
+
+    /**
+     * 一条分类规则（不可变），未指定的条件不限。曲率条件在曲率为 NODATA 时不满足。
+     */
+    public static final class Rule {
+        private final int code;
+        private final double minSlope, maxSlope;
+        private final double minCurvature, maxCurvature;
+        private final double minElevation, maxElevation;
+
+        private Rule(int code, double minSlope, double maxSlope, double minCurvature, double maxCurvature,
+                     double minElevation, double maxElevation) {
+            this.code = code;
+            this.minSlope = minSlope;
+            this.maxSlope = maxSlope;
+            this.minCurvature = minCurvature;
+            this.maxCurvature = maxCurvature;
+            this.minElevation = minElevation;
+            this.maxElevation = maxElevation;
+        }
+
+        /**
+         * 类别编码为 code（0~253）且不带任何条件的规则。
+         */
+        public static Rule of(int code) {
+            if (code < 0 || code >= UNCLASSIFIED) {
+                throw new IllegalArgumentException("类别编码必须在 0~" + (UNCLASSIFIED - 1) + " 之间: " + code);
+            }
+            double inf = Double.POSITIVE_INFINITY;
+            return new Rule(code, -inf, inf, -inf, inf, -inf, inf);
+        }
+
+        public Rule withSlope(double min, double max) {
+            return new Rule(code, min, max, minCurvature, maxCurvature, minElevation, maxElevation);
+        }
+
+        public Rule withCurvature(double min, double max) {
+            return new Rule(code, minSlope, maxSlope, min, max, minElevation, maxElevation);
+        }
+
+        public Rule withElevation(double min, double max) {
+            return new Rule(code, minSlope, maxSlope, minCurvature, maxCurvature, min, max);
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        boolean hasCurvature() {
+            return minCurvature != Double.NEGATIVE_INFINITY || maxCurvature != Double.POSITIVE_INFINITY;
+        }
+
+        boolean hasElevation() {
+            return minElevation != Double.NEGATIVE_INFINITY || maxElevation != Double.POSITIVE_INFINITY;
+        }
+
+        boolean matches(double slope, double curvature, double elevation) {
+            return slope > minSlope && slope <= maxSlope
+                    && (!hasCurvature() || curvature > minCurvature && curvature <= maxCurvature)
+                    && (!hasElevation() || elevation > minElevation && elevation <= maxElevation);
+        }
+    }
+}
@@ -2,28 +2,36 @@ package hydrology;
 
 public class TerrainClassify {
 
-    private double[][] slopes;
-    private int NODATA_value;
+    public static final int FLAT = 0;
+    public static final int STEEP = 1;
+    public static final int NODATA = 255;
+    public static final double STEEP_SLOPE = 20.0; // 坡度大于该值（度）为陡峭
 
-    public TerrainClassify(double[][] slopes, int NODATA_value) {
+    private final Grid slopes;
+
+    public TerrainClassify(Grid slopes) {
         this.slopes = slopes;
-        this.NODATA_value = NODATA_value;
     }
 
-    public boolean[][] classifyAndCalculateFlow() {
-        // 分类逻辑
-        boolean[][] isSteep = new boolean[slopes.length][slopes[0].length];
-        for (int i = 0; i < slopes.length; i++) {
-            for (int j = 0; j < slopes[i].length; j++) {
-                if (Double.isNaN(slopes[i][j])) {
-                    // NODATA 或无效数据
-                    isSteep[i][j] = false;
-                } else {
-                    // 假设某个阈值判断是否为陡峭区域
-                    isSteep[i][j] = slopes[i][j] > 20.0;
-                }
-            }
-        }
-        return isSteep;
+    /**
+     * 按坡度阈值分类。
+     * @return 返回分类栅格：陡峭为 STEEP，平缓为 FLAT，NODATA 或无效坡度为 NODATA。
+     */
+    public WritableGrid classifyAndCalculateFlow() {
+        return classifier().classify();
+    }
+
+    /**
+     * 陡峭像元的掩膜（每像元 1 位），内存为分类栅格的 1/8，可直接交给 {@link FlowMix}。
+     */
+    public BitMask classifySteepMask() {
+        return classifier().mask(STEEP);
+    }
+
+    // 单一阈值的坡度分级：FLAT 为 (-∞, 20]，STEEP 为 (20, +∞)
+    private TerrainClassifier classifier() {
+        TerrainClassifier classifier = new TerrainClassifier(slopes);
+        classifier.setSlopeBands(STEEP_SLOPE);
+        return classifier;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,221 @@
+package hydrology;
+
+import java.util.stream.IntStream;
+
+/**
+ * 地形导数：一次遍历同时计算坡度、坡向、平面曲率与剖面曲率，输出单精度栅格。
+ * <p>
+ * 一阶导数用 Horn 3x3 加权差分，二阶导数用 Zevenbergen–Thorne 公式。栅格按行带并行，
+ * 每个行带把 3 行读入外扩一格的 double 数组（NODATA 与栅格外为 NaN），整行在一个无分支的循环中计算，
+ * 反正切用多项式近似（误差约 2e-8 弧度），循环体只有加减乘除、开方与条件选择，便于 JIT 自动向量化。
+ * 窗口内有 NaN 的像元（栅格边缘、NODATA 旁）在整行算完后逐个补算，缺失的邻居以中心像元代替。
+ */
+public class TerrainDerivatives {
+    public static final int DEFAULT_BAND_ROWS = 64;
+    public static final float FLAT_ASPECT = -1f; // 平地的坡向
+
+    private static final double HALF_PI = Math.PI / 2;
+    private static final double TO_DEGREES = 180 / Math.PI;
+
+    private final Grid dem;
+    private final int rows;
+    private final int cols;
+    private final double cellsize;
+    private int bandRows = DEFAULT_BAND_ROWS;
+
+    public TerrainDerivatives(Grid dem) {
+        this.dem = dem;
+        this.rows = dem.rows();
+        this.cols = dem.cols();
+        this.cellsize = dem.getHeader().getCellsize();
+    }
+
+    /**
+     * 设置每个并行任务处理的行数，默认 {@value #DEFAULT_BAND_ROWS}。
+     */
+    public void setBandRows(int bandRows) {
+        if (bandRows <= 0) {
+            throw new IllegalArgumentException("行带行数必须为正: " + bandRows);
+        }
+        this.bandRows = bandRows;
+    }
+
+    /**
+     * 计算坡度（度）、坡向（度，正北为 0 顺时针，平地为 {@value #FLAT_ASPECT}）、平面曲率与剖面曲率（1/高程单位），
+     * NODATA 单元均为 NaN。
+     */
+    public Result calculate() {
+        GridHeader header = dem.getHeader().withNODATA_value(Float.NaN);
+        WritableGrid slope = Grids.create(DataType.FLOAT32, header);
+        WritableGrid aspect = Grids.create(DataType.FLOAT32, header);
+        WritableGrid plan = Grids.create(DataType.FLOAT32, header);
+        WritableGrid profile = Grids.create(DataType.FLOAT32, header);
+        int bands = (rows + bandRows - 1) / bandRows;
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            int row0 = b * bandRows;
+            int row1 = Math.min(rows, row0 + bandRows);
+            double[] up = new double[cols + 2];
+            double[] mid = new double[cols + 2];
+            double[] down = new double[cols + 2];
+            double[] buffer = new double[cols];
+            float[][] out = new float[4][cols];
+            readPadded(row0 - 1, buffer, up);
+            readPadded(row0, buffer, mid);
+            for (int i = row0; i < row1; i++) {
+                readPadded(i + 1, buffer, down);
+                kernel(up, mid, down, 0, cols, out[0], out[1], out[2], out[3], 0);
+                fixEdges(up, mid, down, out);
+                writeRow(slope, i, out[0]);
+                writeRow(aspect, i, out[1]);
+                writeRow(plan, i, out[2]);
+                writeRow(profile, i, out[3]);
+                double[] recycled = up;
+                up = mid;
+                mid = down;
+                down = recycled;
+            }
+        });
+        return new Result(slope, aspect, plan, profile);
+    }
+
+    // 读入一行到外扩数组的 [1, cols]，NODATA 与栅格外为 NaN
+    private void readPadded(int row, double[] buffer, double[] padded) {
+        padded[0] = Double.NaN;
+        padded[cols + 1] = Double.NaN;
+        if (row < 0 || row >= rows) {
+            for (int j = 1; j <= cols; j++) {
+                padded[j] = Double.NaN;
+            }
+            return;
+        }
+        dem.readRow(row, buffer);
+        double nodata = dem.getHeader().getNODATA_value();
+        for (int j = 0; j < cols; j++) {
+            padded[j + 1] = buffer[j] == nodata ? Double.NaN : buffer[j];
+        }
+    }
+
+    /**
+     * 对外扩数组中以 from+1 起的 n 个中心像元计算导数，写入各输出数组的 dst 起。窗口内有 NaN 时结果为 NaN。
+     * <pre>
+     *   a b c      up[j]   up[j+1]   up[j+2]
+     *   d e f      mid[j]  mid[j+1]  mid[j+2]
+     *   g h i      down[j] down[j+1] down[j+2]
+     * </pre>
+     */
+    private void kernel(double[] up, double[] mid, double[] down, int from, int n,
+                        float[] slope, float[] aspect, float[] plan, float[] profile, int dst) {
+        double horn = 1 / (8 * cellsize);
+        double second = 1 / (cellsize * cellsize);
+        double cross = 1 / (4 * cellsize * cellsize);
+        for (int k = 0; k < n; k++) {
+            int j = from + k;
+            double a = up[j], b = up[j + 1], c = up[j + 2];
+            double d = mid[j], e = mid[j + 1], f = mid[j + 2];
+            double g = down[j], h = down[j + 1], i = down[j + 2];
+
+            // 东向与北向的一阶导数（Horn），不含中心像元；加 e - e 使中心为 NaN 时结果也为 NaN
+            double p = ((c + 2 * f + i) - (a + 2 * d + g)) * horn + (e - e);
+            double q = ((a + 2 * b + c) - (g + 2 * h + i)) * horn + (e - e);
+            double gradient2 = p * p + q * q;
+            double gradient = Math.sqrt(gradient2);
+
+            // 坡度 = atan(梯度)
+            double t = gradient <= 1 ? gradient : 1 / gradient;
+            double r = atanUnit(t);
+            slope[dst + k] = (float) ((gradient <= 1 ? r : HALF_PI - r) * TO_DEGREES);
+
+            // 坡向：下坡方向 (-p, -q) 与正北的顺时针夹角
+            double east = -p, north = -q;
+            double ax = Math.abs(east), ay = Math.abs(north);
+            double lo = Math.min(ax, ay), hi = Math.max(ax, ay);
+            double theta = atanUnit(hi == 0 ? 0 : lo / hi);
+            theta = ax > ay ? HALF_PI - theta : theta;
+            theta = north < 0 ? Math.PI - theta : theta;
+            theta = east < 0 ? 2 * Math.PI - theta : theta;
+            aspect[dst + k] = gradient2 == 0 ? FLAT_ASPECT : (float) (theta * TO_DEGREES);
+
+            // 二阶导数（Zevenbergen–Thorne）与曲率，平地为 0
+            double zxx = ((d + f) / 2 - e) * second;
+            double zyy = ((b + h) / 2 - e) * second;
+            double zxy = (-a + c + g - i) * cross;
+            double denominator = gradient2 == 0 ? 1 : gradient2;
+            double planValue = 2 * (zxx * q * q + zyy * p * p - zxy * p * q) / denominator;
+            double profileValue = -2 * (zxx * p * p + zyy * q * q + zxy * p * q) / denominator;
+            plan[dst + k] = gradient2 == 0 ? 0f : (float) planValue;
+            profile[dst + k] = gradient2 == 0 ? 0f : (float) profileValue;
+        }
+    }
+
+    // 中心有效而结果为 NaN 的像元：缺失的邻居以中心像元代替后重算
+    private void fixEdges(double[] up, double[] mid, double[] down, float[][] out) {
+        double[] w0 = null, w1 = null, w2 = null;
+        for (int j = 0; j < cols; j++) {
+            if (!Float.isNaN(out[0][j]) || Double.isNaN(mid[j + 1])) {
+                continue;
+            }
+            if (w0 == null) {
+                w0 = new double[3];
+                w1 = new double[3];
+                w2 = new double[3];
+            }
+            double e = mid[j + 1];
+            for (int k = 0; k < 3; k++) {
+                w0[k] = Double.isNaN(up[j + k]) ? e : up[j + k];
+                w1[k] = Double.isNaN(mid[j + k]) ? e : mid[j + k];
+                w2[k] = Double.isNaN(down[j + k]) ? e : down[j + k];
+            }
+            kernel(w0, w1, w2, 0, 1, out[0], out[1], out[2], out[3], j);
+        }
+    }
+
+    // [0, 1] 上的反正切（Abramowitz & Stegun 4.4.49，误差不超过 2e-8）
+    private static double atanUnit(double x) {
+        double x2 = x * x;
+        return x * (0.9999993329 + x2 * (-0.3332985605 + x2 * (0.1994653599 + x2 * (-0.1390853351
+                + x2 * (0.0964200441 + x2 * (-0.0559098861 + x2 * (0.0218612288 + x2 * -0.0040540580)))))));
+    }
+
+    private void writeRow(WritableGrid grid, int row, float[] values) {
+        if (grid instanceof FloatGrid) {
+            System.arraycopy(values, 0, ((FloatGrid) grid).getData(), row * cols, cols);
+        } else {
+            for (int j = 0; j < cols; j++) {
+                grid.setDouble(row, j, values[j]);
+            }
+        }
+    }
+
+    /**
+     * {@link #calculate} 的结果，均为 FLOAT32 栅格。
+     */
+    public static final class Result {
+        private final WritableGrid slope;
+        private final WritableGrid aspect;
+        private final WritableGrid planCurvature;
+        private final WritableGrid profileCurvature;
+
+        Result(WritableGrid slope, WritableGrid aspect, WritableGrid planCurvature, WritableGrid profileCurvature) {
+            this.slope = slope;
+            this.aspect = aspect;
+            this.planCurvature = planCurvature;
+            this.profileCurvature = profileCurvature;
+        }
+
+        public WritableGrid getSlope() {
+            return slope;
+        }
+
+        public WritableGrid getAspect() {
+            return aspect;
+        }
+
+        public WritableGrid getPlanCurvature() {
+            return planCurvature;
+        }
+
+        public WritableGrid getProfileCurvature() {
+            return profileCurvature;
+        }
+    }
+}
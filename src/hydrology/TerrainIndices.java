@@ -0,0 +1,150 @@
+package hydrology;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * 由累积流与坡度一次并行遍历同时计算三个次生地形指数，输出单精度栅格：
+ * <ul>
+ *   <li>地形湿度指数 TWI = ln(a / tanβ)</li>
+ *   <li>水流强度指数 SPI = a · tanβ</li>
+ *   <li>RUSLE 坡长坡度因子 LS = (a / 22.13)^0.4 · (sinβ / 0.0896)^1.3（Moore &amp; Burch 1986）</li>
+ * </ul>
+ * 其中 a 为单位等高线宽度的汇水面积（累积像元数 × 像元大小），β 为坡度。
+ * 除三个输出外不分配整幅栅格，每个像元只读累积流与坡度各一次。
+ * <p>
+ * 坡度为 0 时 TWI 无穷大，平地的处理方式由 {@link #setFlatHandling} 设定：
+ * 默认把小于最小坡度的像元按最小坡度计算，也可以把这些像元的三个指数都输出为 NODATA。
+ */
+public class TerrainIndices {
+    public static final double DEFAULT_MIN_SLOPE = 0.1; // 度
+
+    private static final double LS_UNIT_LENGTH = 22.13;
+    private static final double LS_UNIT_SINE = 0.0896;
+    private static final double LS_AREA_EXPONENT = 0.4;
+    private static final double LS_SLOPE_EXPONENT = 1.3;
+
+    /**
+     * 坡度小于最小坡度时的处理方式。
+     */
+    public enum FlatHandling {
+        CLAMP,  // 按最小坡度计算
+        NODATA  // 输出 NODATA
+    }
+
+    private final Grid accumulation;
+    private final Grid slopes;
+    private final int rows;
+    private final int cols;
+    private final double cellsize;
+    private FlatHandling flatHandling = FlatHandling.CLAMP;
+    private double minSlope = DEFAULT_MIN_SLOPE;
+
+    /**
+     * @param accumulation 累积流（像元数，例如 {@link FlowMixAcc#calculateFlowAccumulation} 的结果）。
+     * @param slopes       坡度（度，例如 {@link Slope#calculateSlopes} 的结果），与累积流同大小。
+     */
+    public TerrainIndices(Grid accumulation, Grid slopes) {
+        if (accumulation.rows() != slopes.rows() || accumulation.cols() != slopes.cols()) {
+            throw new IllegalArgumentException("累积流与坡度栅格大小不一致: " + accumulation.rows() + " x "
+                    + accumulation.cols() + " 与 " + slopes.rows() + " x " + slopes.cols());
+        }
+        this.accumulation = accumulation;
+        this.slopes = slopes;
+        this.rows = slopes.rows();
+        this.cols = slopes.cols();
+        this.cellsize = slopes.getHeader().getCellsize();
+    }
+
+    /**
+     * 设置平地处理方式与最小坡度（度，须为正），默认 CLAMP、{@value #DEFAULT_MIN_SLOPE}°。
+     */
+    public void setFlatHandling(FlatHandling flatHandling, double minSlope) {
+        if (!(minSlope > 0 && minSlope < 90)) {
+            throw new IllegalArgumentException("最小坡度必须在 (0, 90) 度之间: " + minSlope);
+        }
+        this.flatHandling = flatHandling;
+        this.minSlope = minSlope;
+    }
+
+    /**
+     * 计算 TWI、SPI 与 LS，累积流或坡度为 NODATA 的像元均为 NaN。
+     */
+    public Result calculate() {
+        GridHeader header = slopes.getHeader().withNODATA_value(Float.NaN);
+        WritableGrid twi = Grids.create(DataType.FLOAT32, header);
+        WritableGrid spi = Grids.create(DataType.FLOAT32, header);
+        WritableGrid ls = Grids.create(DataType.FLOAT32, header);
+        double minRadians = Math.toRadians(minSlope);
+        double accNodata = accumulation.getHeader().getNODATA_value();
+        double slopeNodata = slopes.getHeader().getNODATA_value();
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            double[] acc = new double[cols];
+            double[] slope = new double[cols];
+            accumulation.readRow(i, acc);
+            slopes.readRow(i, slope);
+            for (int j = 0; j < cols; j++) {
+                double beta = Math.toRadians(slope[j]);
+                boolean valid = acc[j] != accNodata && !Double.isNaN(acc[j])
+                        && slope[j] != slopeNodata && !Double.isNaN(slope[j]);
+                if (valid && beta < minRadians) {
+                    if (flatHandling == FlatHandling.NODATA) {
+                        valid = false;
+                    } else {
+                        beta = minRadians;
+                    }
+                }
+                if (!valid) {
+                    twi.setDouble(i, j, Double.NaN);
+                    spi.setDouble(i, j, Double.NaN);
+                    ls.setDouble(i, j, Double.NaN);
+                    continue;
+                }
+                double area = acc[j] * cellsize;
+                double tan = Math.tan(beta);
+                twi.setDouble(i, j, Math.log(area / tan));
+                spi.setDouble(i, j, area * tan);
+                ls.setDouble(i, j, Math.pow(area / LS_UNIT_LENGTH, LS_AREA_EXPONENT)
+                        * Math.pow(Math.sin(beta) / LS_UNIT_SINE, LS_SLOPE_EXPONENT));
+            }
+        });
+        return new Result(twi, spi, ls);
+    }
+
+    /**
+     * 将三个指数以二进制栅格格式（.hgr）输出到 resultDir，文件名为 TWI、SPI、LS。
+     */
+    public void outputToRaster(Path resultDir, Result result) throws IOException {
+        RasterFile.write(resultDir.resolve("TWI" + RasterFile.SUFFIX), result.getTwi());
+        RasterFile.write(resultDir.resolve("SPI" + RasterFile.SUFFIX), result.getSpi());
+        RasterFile.write(resultDir.resolve("LS" + RasterFile.SUFFIX), result.getLs());
+    }
+
+    /**
+     * {@link #calculate} 的结果，均为 FLOAT32 栅格。
+     */
+    public static final class Result {
+        private final WritableGrid twi;
+        private final WritableGrid spi;
+        private final WritableGrid ls;
+
+        Result(WritableGrid twi, WritableGrid spi, WritableGrid ls) {
+            this.twi = twi;
+            this.spi = spi;
+            this.ls = ls;
+        }
+
+        public WritableGrid getTwi() {
+            return twi;
+        }
+
+        public WritableGrid getSpi() {
+            return spi;
+        }
+
+        public WritableGrid getLs() {
+            return ls;
+        }
+    }
+}
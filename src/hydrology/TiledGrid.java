@@ -0,0 +1,645 @@
+package hydrology;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分块存储在磁盘文件中的栅格（.hgt），内存中只保留有限个分块，适合远大于内存的DEM。
+ * <p>
+ * 文件由 128 字节文件头和等长的分块槽组成。每个分块为 tileSize x tileSize 个像元，四周再带 halo 个像元的重叠边，
+ * 槽内按行优先、小端序存放 (tileSize + 2*halo)^2 个像元。邻域计算访问分块边缘的邻居时，仍然落在同一个分块的重叠边内，
+ * 不会因此换入相邻分块。
+ * <p>
+ * 分块按需读入，最近最少使用（LRU）的分块在缓存满时换出，修改过的分块换出时写回，并同步更新相邻分块在文件中的重叠边。
+ * 每次访问分块（包括经线程本地快速路径的读取）都会记入命中计数并刷新该分块的最近使用时刻。
+ * 读取可并发进行；写入只锁所在的分块，不同分块上的写入（如按行并行的计算阶段）互不阻塞，
+ * 重叠边的同步在相邻分块的锁内进行。锁的顺序固定为先栅格后分块，持有分块锁时不再取栅格锁。
+ * <p>
+ * 文件与分块按 long 编址，导入、按行列访问（getDouble(row, col)、readRow、setDouble(row, col, value)）
+ * 与写回都不受 2^31 个像元的限制。但 {@link Grid} 的一维下标为 int，各计算阶段（坡度、流向、汇流累积、填洼、
+ * 开挖、可视化等）都按 i * stride + j 访问像元，因此整个流程仍只支持像元数不超过 {@link Integer#MAX_VALUE} 的栅格；
+ * 超出时按一维下标访问会抛出 IllegalStateException，而不会静默溢出。
+ */
+public class TiledGrid implements WritableGrid, AutoCloseable {
+
+    public static final String SUFFIX = ".hgt";
+    static final int MAGIC = 0x54524748; // "HGRT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final int DEFAULT_HALO = 1;
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean temporary;
+    private final GridHeader header;
+    private final DataType type;
+    private final int nrows;
+    private final int ncols;
+    private final int tileSize;
+    private final int halo;
+    private final int span; // 含重叠边的分块边长
+    private final int tilesDown;
+    private final int tilesAcross;
+    private final int slotBytes;
+    private final int capacity;
+    private final boolean indexable; // 像元数在 int 下标范围内
+
+    private final HashMap<Long, Tile> cache = new HashMap<>();
+    private volatile long clock; // 每次经 tile() 取分块时递增，作为最近使用时刻
+    private final ThreadLocal<Tile> lastTile = new ThreadLocal<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder writeBacks = new LongAdder();
+    private volatile boolean closed;
+
+    private TiledGrid(Path path, FileChannel channel, boolean temporary, DataType type, GridHeader header,
+                      int tileSize, int halo, long cacheBytes) {
+        if (tileSize <= 0 || halo < 0 || halo >= tileSize) {
+            throw new IllegalArgumentException("无效的分块参数: tileSize=" + tileSize + ", halo=" + halo);
+        }
+        this.path = path;
+        this.channel = channel;
+        this.temporary = temporary;
+        this.header = header;
+        this.type = type;
+        this.nrows = header.getNrows();
+        this.ncols = header.getNcols();
+        this.tileSize = tileSize;
+        this.halo = halo;
+        this.span = tileSize + 2 * halo;
+        this.tilesDown = (nrows + tileSize - 1) / tileSize;
+        this.tilesAcross = (ncols + tileSize - 1) / tileSize;
+        this.indexable = header.cellCount() <= Integer.MAX_VALUE;
+        long bytes = (long) span * span * type.getBytes();
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("分块过大: " + bytes + " 字节");
+        }
+        this.slotBytes = (int) bytes;
+        // 至少容纳 3x3 个分块，保证邻域计算在分块交界处不会来回换入换出
+        this.capacity = (int) Math.max(9, Math.min(Integer.MAX_VALUE, cacheBytes / slotBytes));
+    }
+
+    /**
+     * 新建分块栅格文件（像元初始为 0）。
+     */
+    public static TiledGrid create(Path path, DataType type, GridHeader header, int tileSize, int halo,
+                                   long cacheBytes) throws IOException {
+        return create(path, false, type, header, tileSize, halo, cacheBytes);
+    }
+
+    /**
+     * 在 dir 下新建临时分块栅格，关闭时删除。
+     */
+    public static TiledGrid createTemp(Path dir, DataType type, GridHeader header) throws IOException {
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "grid-", SUFFIX);
+        return create(file, true, type, header, DEFAULT_TILE_SIZE, DEFAULT_HALO, DEFAULT_CACHE_BYTES);
+    }
+
+    private static TiledGrid create(Path path, boolean temporary, DataType type, GridHeader header, int tileSize,
+                                    int halo, long cacheBytes) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            TiledGrid grid = new TiledGrid(path, channel, temporary, type, header, tileSize, halo, cacheBytes);
+            grid.writeHead();
+            // 预留全部分块槽，未写入的部分为稀疏空洞
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.write(last, grid.slotOffset((long) grid.tilesDown * grid.tilesAcross) - 1);
+            return grid;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已有的分块栅格文件。
+     */
+    public static TiledGrid open(Path path, long cacheBytes) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, head, 0);
+            if (head.getInt(0) != MAGIC) {
+                throw new IOException("不是有效的分块栅格文件: " + path);
+            }
+            if (head.getInt(4) != VERSION) {
+                throw new IOException("不支持的分块栅格文件版本 " + head.getInt(4) + ": " + path);
+            }
+            GridHeader header = new GridHeader(head.getInt(12), head.getInt(16), head.getDouble(24),
+                    head.getDouble(32), head.getDouble(40), head.getDouble(48));
+            return new TiledGrid(path, channel, false, DataType.fromCode(head.getInt(8)), header,
+                    head.getInt(56), head.getInt(60), cacheBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 将任意栅格按分块带重叠边写入新文件：每次只读入一个分块行高度（含重叠边）的像元，内存占用与列数成正比。
+     */
+    public static TiledGrid importGrid(Grid source, Path path, int tileSize, int halo, long cacheBytes)
+            throws IOException {
+        return importRows(source::readRow, create(path, source.getType(), source.getHeader(), tileSize, halo, cacheBytes));
+    }
+
+    /**
+     * 将任意栅格导入 dir 下的临时分块文件，关闭时删除。
+     */
+    public static TiledGrid importTemp(Grid source, Path dir) throws IOException {
+        return importRows(source::readRow, createTemp(dir, source.getType(), source.getHeader()));
+    }
+
+    /**
+     * 将二进制栅格文件逐行导入 dir 下的临时分块文件，关闭时删除。不经过整幅映射，像元数不受 int 下标范围限制。
+     */
+    public static TiledGrid importTemp(RasterFile source, Path dir) throws IOException {
+        return importRows(source::readRow, createTemp(dir, source.getType(), source.getHeader()));
+    }
+
+    private static TiledGrid importRows(RowReader source, TiledGrid grid) throws IOException {
+        int tileSize = grid.tileSize;
+        int halo = grid.halo;
+        try {
+            double nodata = grid.header.getNODATA_value();
+            double[][] band = new double[grid.span][grid.ncols];
+            ByteBuffer slot = ByteBuffer.allocate(grid.slotBytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (int tr = 0; tr < grid.tilesDown; tr++) {
+                int row0 = tr * tileSize - halo;
+                for (int i = 0; i < grid.span; i++) {
+                    int row = row0 + i;
+                    if (row >= 0 && row < grid.nrows) {
+                        source.readRow(row, band[i]);
+                    } else {
+                        Arrays.fill(band[i], nodata);
+                    }
+                }
+                for (int tc = 0; tc < grid.tilesAcross; tc++) {
+                    int col0 = tc * tileSize - halo;
+                    slot.clear();
+                    for (int i = 0; i < grid.span; i++) {
+                        for (int j = 0; j < grid.span; j++) {
+                            int col = col0 + j;
+                            grid.put(slot, (i * grid.span + j) * grid.type.getBytes(),
+                                    col >= 0 && col < grid.ncols ? band[i][col] : nodata);
+                        }
+                    }
+                    writeFully(grid.channel, slot, grid.slotOffset((long) tr * grid.tilesAcross + tc));
+                }
+            }
+            return grid;
+        } catch (IOException | RuntimeException e) {
+            grid.close();
+            throw e;
+        }
+    }
+
+    private void writeHead() throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, type.getCode())
+                .putInt(12, nrows).putInt(16, ncols)
+                .putDouble(24, header.getXllcorner()).putDouble(32, header.getYllcorner())
+                .putDouble(40, header.getCellsize()).putDouble(48, header.getNODATA_value())
+                .putInt(56, tileSize).putInt(60, halo);
+        writeFully(channel, head, 0);
+    }
+
+    private long slotOffset(long tileIndex) {
+        return HEADER_SIZE + tileIndex * slotBytes;
+    }
+
+    @Override
+    public GridHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public DataType getType() {
+        return type;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getHalo() {
+        return halo;
+    }
+
+    @Override
+    public double getDouble(int index) {
+        checkIndexable();
+        return getDouble(index / ncols, index % ncols);
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        Tile tile = lastTile.get();
+        if (tile == null || !tile.resident || !tile.covers(row, col)) {
+            tile = tile(tileIndex(row / tileSize, col / tileSize));
+            lastTile.set(tile);
+        } else {
+            tile.touch();
+        }
+        return tile.get(row, col);
+    }
+
+    @Override
+    public void readRow(int row, double[] dst) {
+        int tr = row / tileSize;
+        for (int tc = 0; tc < tilesAcross; tc++) {
+            Tile tile = tile(tileIndex(tr, tc));
+            int end = Math.min(ncols, (tc + 1) * tileSize);
+            for (int col = tc * tileSize; col < end; col++) {
+                dst[col] = tile.get(row, col);
+            }
+        }
+    }
+
+    @Override
+    public void setDouble(int index, double value) {
+        checkIndexable();
+        setDouble(index / ncols, index % ncols, value);
+    }
+
+    @Override
+    public void setDouble(int row, int col, double value) {
+        int tr = row / tileSize;
+        int tc = col / tileSize;
+        Tile owner = lastTile.get();
+        if (owner == null || owner.tileRow != tr || owner.tileCol != tc) {
+            owner = tile(tileIndex(tr, tc));
+        } else {
+            owner.touch();
+        }
+        // 分块可能在取得之后、加锁之前被换出，此时重新取得
+        while (!owner.write(row, col, value)) {
+            owner = tile(tileIndex(tr, tc));
+        }
+        lastTile.set(owner);
+        if (halo == 0) {
+            return;
+        }
+        // 同步已缓存的相邻分块中对应的重叠边（此时不持有任何分块锁）
+        int localRow = row - tr * tileSize;
+        int localCol = col - tc * tileSize;
+        int dr0 = localRow < halo ? -1 : 0;
+        int dr1 = localRow >= tileSize - halo ? 1 : 0;
+        int dc0 = localCol < halo ? -1 : 0;
+        int dc1 = localCol >= tileSize - halo ? 1 : 0;
+        for (int dr = dr0; dr <= dr1; dr++) {
+            for (int dc = dc0; dc <= dc1; dc++) {
+                if ((dr != 0 || dc != 0) && tr + dr >= 0 && tr + dr < tilesDown
+                        && tc + dc >= 0 && tc + dc < tilesAcross) {
+                    Tile neighbor = cachedTile(tileIndex(tr + dr, tc + dc));
+                    if (neighbor != null) {
+                        neighbor.mirror(owner, row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    private long tileIndex(int tileRow, int tileCol) {
+        return (long) tileRow * tilesAcross + tileCol;
+    }
+
+    private void checkIndexable() {
+        if (!indexable) {
+            throw new IllegalStateException("像元数 " + header.cellCount() + " 超出 int 下标范围，只能按行列访问: " + path);
+        }
+    }
+
+    private synchronized Tile cachedTile(long tileIndex) {
+        return cache.get(tileIndex);
+    }
+
+    /**
+     * 取得分块，不在缓存中时从文件读入，必要时换出最久未使用的分块。
+     */
+    private synchronized Tile tile(long tileIndex) {
+        if (closed) {
+            throw new IllegalStateException("分块栅格已关闭: " + path);
+        }
+        long now = ++clock;
+        Tile tile = cache.get(tileIndex);
+        if (tile != null) {
+            hits.increment();
+            tile.lastUsed = now;
+            return tile;
+        }
+        misses.increment();
+        try {
+            while (cache.size() >= capacity) {
+                Tile victim = leastRecentlyUsed();
+                cache.remove(victim.index());
+                evict(victim);
+            }
+            tile = load(tileIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException("分块读写失败: " + path, e);
+        }
+        tile.lastUsed = now;
+        cache.put(tileIndex, tile);
+        return tile;
+    }
+
+    // 最近使用时刻最早的分块；只在未命中时扫描一遍缓存，相对读入一个分块的磁盘开销可以忽略
+    private Tile leastRecentlyUsed() {
+        Tile victim = null;
+        for (Tile tile : cache.values()) {
+            if (victim == null || tile.lastUsed < victim.lastUsed) {
+                victim = tile;
+            }
+        }
+        return victim;
+    }
+
+    private Tile load(long tileIndex) throws IOException {
+        Tile tile = new Tile((int) (tileIndex / tilesAcross), (int) (tileIndex % tilesAcross));
+        readFully(channel, tile.data, slotOffset(tileIndex));
+        // 文件中的重叠边只在相邻分块写回时更新，尚未写回的修改从缓存中的相邻分块补上
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                Tile neighbor = cache.get(tileIndex(tile.tileRow + dr, tile.tileCol + dc));
+                if ((dr != 0 || dc != 0) && neighbor != null && neighbor.dirty
+                        && tile.tileCol + dc >= 0 && tile.tileCol + dc < tilesAcross) {
+                    copyOverlap(neighbor, tile);
+                }
+            }
+        }
+        return tile;
+    }
+
+    private void evict(Tile tile) throws IOException {
+        evictions.increment();
+        synchronized (tile) {
+            tile.resident = false;
+            if (tile.dirty) {
+                writeBack(tile);
+            }
+        }
+    }
+
+    /**
+     * 写回分块，并把其内部边缘像元写入相邻分块在文件中的重叠边。在分块锁内进行，写回期间的写入等待其完成。
+     */
+    private void writeBack(Tile tile) throws IOException {
+        synchronized (tile) {
+            writeFully(channel, tile.data.duplicate().clear(), slotOffset(tile.index()));
+            tile.dirty = false;
+            writeBacks.increment();
+            if (halo == 0) {
+                return;
+            }
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    int tr = tile.tileRow + dr;
+                    int tc = tile.tileCol + dc;
+                    if ((dr == 0 && dc == 0) || tr < 0 || tr >= tilesDown || tc < 0 || tc >= tilesAcross) {
+                        continue;
+                    }
+                    // 已缓存的相邻分块内存中的重叠边已是最新，但它未被修改时不会写回，文件中的重叠边仍需更新
+                    patchHalo(tile, tr, tc);
+                }
+            }
+        }
+    }
+
+    private void patchHalo(Tile source, int tr, int tc) throws IOException {
+        int bytes = type.getBytes();
+        int rowStart = Math.max(source.row0, tr * tileSize - halo);
+        int rowEnd = Math.min(source.row0 + tileSize, tr * tileSize + tileSize + halo);
+        int colStart = Math.max(source.col0, tc * tileSize - halo);
+        int colEnd = Math.min(source.col0 + tileSize, tc * tileSize + tileSize + halo);
+        long slot = slotOffset(tileIndex(tr, tc));
+        ByteBuffer segment = ByteBuffer.allocate((colEnd - colStart) * bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int row = rowStart; row < rowEnd; row++) {
+            segment.clear();
+            for (int col = colStart; col < colEnd; col++) {
+                put(segment, (col - colStart) * bytes, source.get(row, col));
+            }
+            int localRow = row - (tr * tileSize - halo);
+            int localCol = colStart - (tc * tileSize - halo);
+            writeFully(channel, segment, slot + ((long) localRow * span + localCol) * bytes);
+        }
+    }
+
+    private void copyOverlap(Tile from, Tile to) {
+        int rowStart = Math.max(from.row0, to.row0 - halo);
+        int rowEnd = Math.min(from.row0 + tileSize, to.row0 + tileSize + halo);
+        int colStart = Math.max(from.col0, to.col0 - halo);
+        int colEnd = Math.min(from.col0 + tileSize, to.col0 + tileSize + halo);
+        synchronized (from) {
+            for (int row = rowStart; row < rowEnd; row++) {
+                for (int col = colStart; col < colEnd; col++) {
+                    to.set(row, col, from.get(row, col));
+                }
+            }
+        }
+    }
+
+    /**
+     * 将所有修改过的分块写回文件（分块仍保留在缓存中）。
+     */
+    public synchronized void flush() throws IOException {
+        List<Tile> dirty = new ArrayList<>();
+        for (Tile tile : cache.values()) {
+            if (tile.dirty) {
+                dirty.add(tile);
+            }
+        }
+        for (Tile tile : dirty) {
+            writeBack(tile);
+        }
+        channel.force(false);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getWriteBacks() {
+        return writeBacks.sum();
+    }
+
+    /**
+     * 缓存统计信息。
+     */
+    public String getCacheStats() {
+        long h = getHits();
+        long m = getMisses();
+        return String.format("分块缓存：命中 %d，未命中 %d（命中率 %.1f%%），换出 %d，写回 %d，容量 %d 块",
+                h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m), getEvictions(), getWriteBacks(), capacity);
+    }
+
+    /**
+     * 关闭文件：普通文件先写回修改过的分块；临时文件直接删除。
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!temporary) {
+                flush();
+            }
+        } finally {
+            closed = true;
+            for (Tile tile : cache.values()) {
+                synchronized (tile) {
+                    tile.resident = false;
+                }
+            }
+            cache.clear();
+            channel.close();
+            if (temporary) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private double get(ByteBuffer buffer, int offset) {
+        switch (type) {
+            case UINT8: return buffer.get(offset) & 0xFF;
+            case INT16: return buffer.getShort(offset);
+            case INT32: return buffer.getInt(offset);
+            case FLOAT32: return buffer.getFloat(offset);
+            default: return buffer.getDouble(offset);
+        }
+    }
+
+    private void put(ByteBuffer buffer, int offset, double value) {
+        switch (type) {
+            case UINT8: buffer.put(offset, (byte) (int) value); break;
+            case INT16: buffer.putShort(offset, (short) value); break;
+            case INT32: buffer.putInt(offset, (int) value); break;
+            case FLOAT32: buffer.putFloat(offset, (float) value); break;
+            default: buffer.putDouble(offset, value);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                // 稀疏文件末尾尚未写入的部分按 0 处理
+                break;
+            }
+        }
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        void readRow(int row, double[] dst);
+    }
+
+    /**
+     * 缓存中的一个分块（含重叠边）。
+     */
+    private final class Tile {
+        final int tileRow;
+        final int tileCol;
+        final int row0; // 内部区域左上角的全局行号
+        final int col0;
+        final ByteBuffer data;
+        volatile boolean resident = true;
+        volatile boolean dirty;
+        volatile long lastUsed;
+
+        Tile(int tileRow, int tileCol) {
+            this.tileRow = tileRow;
+            this.tileCol = tileCol;
+            this.row0 = tileRow * tileSize;
+            this.col0 = tileCol * tileSize;
+            this.data = ByteBuffer.allocate(slotBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long index() {
+            return tileIndex(tileRow, tileCol);
+        }
+
+        // 线程本地快速路径上的访问：计入命中并刷新最近使用时刻（时刻未变时不写，避免无谓的缓存行争用）
+        void touch() {
+            hits.increment();
+            long now = clock;
+            if (lastUsed != now) {
+                lastUsed = now;
+            }
+        }
+
+        boolean covers(int row, int col) {
+            return row >= row0 - halo && row < row0 + tileSize + halo
+                    && col >= col0 - halo && col < col0 + tileSize + halo;
+        }
+
+        double get(int row, int col) {
+            return TiledGrid.this.get(data, offset(row, col));
+        }
+
+        void set(int row, int col, double value) {
+            put(data, offset(row, col), value);
+        }
+
+        // 写入本分块内部的像元；分块已换出时返回 false
+        synchronized boolean write(int row, int col, double value) {
+            if (!resident) {
+                return false;
+            }
+            set(row, col, value);
+            dirty = true;
+            return true;
+        }
+
+        // 将拥有者分块中的当前值同步到本分块的重叠边。取拥有者的当前值而不是写入的值，
+        // 多个线程写同一像元时最后一次同步得到的仍是拥有者的最终值
+        synchronized void mirror(Tile owner, int row, int col) {
+            if (resident) {
+                set(row, col, owner.get(row, col));
+            }
+        }
+
+        private int offset(int row, int col) {
+            return ((row - row0 + halo) * span + (col - col0 + halo)) * type.getBytes();
+        }
+    }
+}
@@ -7,12 +7,13 @@ import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 public class Visualizer {
 
-    static void imgInt(int[][] data, String filename, String title, IntFunction<Color> mapper) {
-        int width = data[0].length;
-        int height = data.length;
+    static void imgInt(Grid data, String filename, String title, IntFunction<Color> mapper) {
+        int width = data.cols();
+        int height = data.rows();
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
 
@@ -20,25 +21,19 @@ public class Visualizer {
         g.drawString(title, 10, 20);
 
         // 计算最小值和最大值（排除NODATA）
-        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
-        for (int[] row : data) {
-            for (int value : row) {
-                if (value != -9999) { // 排除NODATA值
-                    if (value < min) min = value;
-                    if (value > max) max = value;
-                }
-            }
-        }
+        double[] range = valueRange(data);
+        double min = range[0], max = range[1];
 
         // 绘制数据到图像中
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                if (data[i][j] == -9999) {
+                int index = data.index(i, j);
+                if (data.isNoData(index)) {
                     // NODATA 或无效数据，用黑色表示
                     image.setRGB(j, i, Color.BLACK.getRGB());
                 } else {
                     // 归一化数据值到 [0, 1]
-                    double normalizedValue = ((double)(data[i][j] - min)) / (max - min);
+                    double normalizedValue = (data.getDouble(index) - min) / (max - min);
                     Color color = Visualizer.getPseudoColor(normalizedValue);
                     image.setRGB(j, i, color.getRGB());
                 }
@@ -52,9 +47,9 @@ public class Visualizer {
         saveImage(image, filename);
     }
 
-    static void imgDbl(double[][] data, String filename, String title, ColorMapper mapper) {
-        int width = data[0].length;
-        int height = data.length;
+    static void imgDbl(Grid data, String filename, String title, ColorMapper mapper) {
+        int width = data.cols();
+        int height = data.rows();
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
 
@@ -62,26 +57,19 @@ public class Visualizer {
         g.drawString(title, 10, 20);
 
         // 计算最小值和最大值（排除NODATA）
-        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
-        for (double[] row : data) {
-            for (double value : row) {
-                if (value != -9999) {
-                    if (value < min) min = value;
-                    if (value > max) max = value;
-                }
-            }
-        }
+        double[] range = valueRange(data);
+        double min = range[0], max = range[1];
 
         // 绘制数据到图像中
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                double value = data[i][j];
-                if (value == -9999) {
+                int index = data.index(i, j);
+                if (data.isNoData(index)) {
                     // NODATA 或无效数据，用黑色表示
                     image.setRGB(j, i, Color.BLACK.getRGB());
                 } else {
                     // 根据数据范围映射颜色
-                    double normalizedValue = (value - min) / (max - min);
+                    double normalizedValue = (data.getDouble(index) - min) / (max - min);
                     Color color = mapper.apply(normalizedValue);
                     image.setRGB(j, i, color.getRGB());
                 }
@@ -91,15 +79,13 @@ public class Visualizer {
         // 释放图形上下文
         g.dispose();
 
-        // 保存图像到文件
-
         // 保存图像到文件
         saveImage(image, filename);
     }
 
-    public static void imgBl(boolean[][] data, String filename, String title, double[][] originalData, int NODATA_value) {
-        int cols = data[0].length;
-        int rows = data.length;
+    public static void imgBl(Grid classes, String filename, String title) {
+        int cols = classes.cols();
+        int rows = classes.rows();
         BufferedImage image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
 
@@ -109,14 +95,14 @@ public class Visualizer {
         // 绘制分类结果到图像中
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < cols; j++) {
-                if (Double.isNaN(originalData[i][j]) || originalData[i][j] == NODATA_value) {
-                    g.setColor(Color.BLACK); // NODATA 或无效坡度用黑色表示
-                } else if (data[i][j]) {
-                    g.setColor(Color.RED); // 陡峭区域用红色表示
+                int value = (int) classes.getDouble(i, j);
+                if (value == TerrainClassify.NODATA) {
+                    image.setRGB(j, i, Color.BLACK.getRGB()); // NODATA 或无效坡度用黑色表示
+                } else if (value == TerrainClassify.STEEP) {
+                    image.setRGB(j, i, Color.RED.getRGB()); // 陡峭区域用红色表示
                 } else {
-                    g.setColor(Color.GREEN); // 平缓区域用绿色表示
+                    image.setRGB(j, i, Color.GREEN.getRGB()); // 平缓区域用绿色表示
                 }
-                g.fillRect(j, i, 1, 1);
             }
         }
 
@@ -127,6 +113,22 @@ public class Visualizer {
         saveImage(image, filename);
     }
 
+    /**
+     * 计算栅格中非NODATA像元的最小值和最大值。
+     */
+    private static double[] valueRange(Grid data) {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        int cells = data.rows() * data.cols();
+        for (int index = 0; index < cells; index++) {
+            if (!data.isNoData(index)) {
+                double value = data.getDouble(index);
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+        }
+        return new double[]{min, max};
+    }
+
     /**
      * 根据流向方向返回对应的颜色。
      */
@@ -203,8 +205,9 @@ public class Visualizer {
             File outputfile = new File(filename + ".png");
             ImageIO.write(image, "png", outputfile);
             System.out.println("图像已保存为: " + filename + ".png");
-        } catch (Exception e) {
+        } catch (IOException e) {
             System.out.println("保存图像失败: " + e.getMessage());
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -0,0 +1,17 @@
+package hydrology;
+
+/**
+ * 可写栅格。
+ */
+public interface WritableGrid extends Grid {
+
+    /**
+     * 写入单个像元，数值按栅格的存储类型转换。
+     */
+    void setDouble(int row, int col, double value);
+
+    /**
+     * 按行优先的一维下标写入像元。
+     */
+    void setDouble(int index, double value);
+}